@@ -0,0 +1,308 @@
+package de.hanneseilers.joystickview;
+
+
+import de.hanneseilers.joystickview.JoystickView.StickOrientation;
+
+/**
+ * Quantizes stick states into digital directions (sectors), e.g. for D-pad use.
+ * The circle is divided into N sectors, sector 0 is centered at east (0 degrees)
+ * and sectors follow counter-clockwise. Sector widths are configurable, e.g. narrower
+ * diagonals for an 8-way D-pad.
+ * Angles are classified by a precomputed angle to sector table with one entry per degree
+ * and at most one boundary correction, so classification costs a few array reads.
+ * Two hysteresis bands suppress flickering at boundaries:
+ * <ul>
+ * <li>Magnitude: a direction is entered at the threshold and only released below the
+ * 		threshold minus the magnitude hysteresis.</li>
+ * <li>Angle: the current sector is kept until the angle leaves the sector extended
+ * 		by the angular hysteresis on both sides.</li>
+ * </ul>
+ * Classifying does not allocate objects. Instances are not thread safe.
+ * @author H. Eilers
+ *
+ */
+public class DirectionEngine {
+
+    /** Sector of a stick inside the magnitude threshold. */
+    public static final int NONE = -1;
+
+    private static final int TABLE_SIZE = 360;
+    private static final float MIN_SECTOR_WIDTH = 360.0f / TABLE_SIZE;
+
+    private static final StickOrientation[] ORIENTATIONS_8_WAY = {
+        StickOrientation.EAST, StickOrientation.NORTH_EAST, StickOrientation.NORTH,
+        StickOrientation.NORTH_WEST, StickOrientation.WEST, StickOrientation.SOUT_WEST,
+        StickOrientation.SOUTH, StickOrientation.SOUTH_EAST
+    };
+
+    // Sector layout, angles relative to start of sector 0
+    private float mOffset;
+    private float[] mSectorStarts;
+    private float[] mSectorEnds;
+    private int[] mOrientations;
+    private final int[] mTable = new int[TABLE_SIZE];
+
+    // Settings
+    private float mThreshold = 20.0f;
+    private float mMagnitudeHysteresis = 5.0f;
+    private float mAngularHysteresis = 5.0f;
+
+    // Current sector
+    private int mSector = NONE;
+    private long mTransitionCount;
+
+
+    /**
+     * Constructor.
+     * @param sectorCount	Number of sectors of equal width, from 1 to 360.
+     */
+    public DirectionEngine(int sectorCount){
+        if( sectorCount < 1 || sectorCount > TABLE_SIZE )
+            throw new IllegalArgumentException("sector count must be in range of 1 to " + TABLE_SIZE);
+
+        final float[] vWidths = new float[sectorCount];
+        for( int i = 0; i < sectorCount; i++ )
+            vWidths[i] = 360.0f / sectorCount;
+        setSectorWidths(vWidths);
+    }
+
+    /**
+     * @return	{@link DirectionEngine} with 4 sectors: east, north, west, south.
+     */
+    public static DirectionEngine fourWay(){
+        return new DirectionEngine(4);
+    }
+
+    /**
+     * @param diagonalWidth	Width of diagonal sectors in degrees, 45 for equal sectors.
+     * 						Cardinal sectors get the remaining width.
+     * @return				{@link DirectionEngine} with 8 sectors: east, north east, north,
+     * 						north west, west, south west, south, south east.
+     */
+    public static DirectionEngine eightWay(float diagonalWidth){
+        if( diagonalWidth < MIN_SECTOR_WIDTH || diagonalWidth > 90.0f - MIN_SECTOR_WIDTH )
+            throw new IllegalArgumentException("diagonal width must be in range of 1 to 89 degrees");
+
+        final DirectionEngine vEngine = new DirectionEngine(8);
+        final float[] vWidths = new float[8];
+        for( int i = 0; i < 8; i++ )
+            vWidths[i] = (i % 2 == 0) ? 90.0f - diagonalWidth : diagonalWidth;
+        vEngine.setSectorWidths(vWidths);
+        return vEngine;
+    }
+
+    /**
+     * Sets individual sector widths. Sector 0 is centered at east,
+     * following sectors are placed counter-clockwise. Resets the current sector.
+     * @param widths	Sector widths in degrees, each at least 1 degree, summing up to 360.
+     */
+    public void setSectorWidths(float... widths){
+        if( widths.length < 1 || widths.length > TABLE_SIZE )
+            throw new IllegalArgumentException("sector count must be in range of 1 to " + TABLE_SIZE);
+
+        float vSum = 0.0f;
+        for( int i = 0; i < widths.length; i++ ){
+            if( widths[i] < MIN_SECTOR_WIDTH )
+                throw new IllegalArgumentException("sector widths must be at least " + MIN_SECTOR_WIDTH + " degrees");
+            vSum += widths[i];
+        }
+        if( Math.abs(vSum - 360.0f) > 0.01f )
+            throw new IllegalArgumentException("sector widths must sum up to 360 degrees");
+
+        // sector boundaries
+        final int vCount = widths.length;
+        mOffset = widths[0] / 2.0f;
+        mSectorStarts = new float[vCount];
+        mSectorEnds = new float[vCount];
+        float vStart = 0.0f;
+        for( int i = 0; i < vCount; i++ ){
+            mSectorStarts[i] = vStart;
+            vStart += widths[i];
+            mSectorEnds[i] = vStart;
+        }
+        mSectorEnds[vCount - 1] = 360.0f;
+
+        // table of sectors containing the lower edge of each degree;
+        // a degree contains at most one boundary, since sectors are at least one degree wide
+        int vSector = 0;
+        for( int i = 0; i < TABLE_SIZE; i++ ){
+            while( i >= mSectorEnds[vSector] )
+                vSector++;
+            mTable[i] = vSector;
+        }
+
+        // orientation of sector centers, nearest of 8 directions
+        mOrientations = new int[vCount];
+        for( int i = 0; i < vCount; i++ ){
+            final float vCenter = normalize( (mSectorStarts[i] + mSectorEnds[i]) / 2.0f - mOffset );
+            mOrientations[i] = ORIENTATIONS_8_WAY[ Math.round(vCenter / 45.0f) % 8 ].ordinal();
+        }
+
+        reset();
+    }
+
+    /**
+     * @return	Number of sectors.
+     */
+    public int getSectorCount(){
+        return mSectorStarts.length;
+    }
+
+    /**
+     * @param sector	Sector number.
+     * @return			Center angle of sector in degrees.
+     */
+    public float getSectorCenter(int sector){
+        return normalize( (mSectorStarts[sector] + mSectorEnds[sector]) / 2.0f - mOffset );
+    }
+
+    /**
+     * @param sector	Sector number.
+     * @return			Width of sector in degrees.
+     */
+    public float getSectorWidth(int sector){
+        return mSectorEnds[sector] - mSectorStarts[sector];
+    }
+
+    public float getThreshold(){
+        return mThreshold;
+    }
+
+    /**
+     * @param aThreshold	Minimum magnitude in percent to enter a direction.
+     */
+    public void setThreshold(float aThreshold){
+        if( aThreshold < 0.0f || aThreshold > 100.0f )
+            throw new IllegalArgumentException("threshold must be in range of 0 to 100");
+        mThreshold = aThreshold;
+    }
+
+    public float getMagnitudeHysteresis(){
+        return mMagnitudeHysteresis;
+    }
+
+    /**
+     * @param aMagnitudeHysteresis	Magnitude in percent below the threshold, the current
+     * 								direction is kept until.
+     */
+    public void setMagnitudeHysteresis(float aMagnitudeHysteresis){
+        if( aMagnitudeHysteresis < 0.0f )
+            throw new IllegalArgumentException("magnitude hysteresis must not be negative");
+        mMagnitudeHysteresis = aMagnitudeHysteresis;
+    }
+
+    public float getAngularHysteresis(){
+        return mAngularHysteresis;
+    }
+
+    /**
+     * @param aAngularHysteresis	Angle in degrees the current sector is extended by on both sides.
+     * 								Should be less than half of the narrowest sector.
+     */
+    public void setAngularHysteresis(float aAngularHysteresis){
+        if( aAngularHysteresis < 0.0f || aAngularHysteresis >= 180.0f )
+            throw new IllegalArgumentException("angular hysteresis must be in range of 0 to 180 degrees");
+        mAngularHysteresis = aAngularHysteresis;
+    }
+
+    /**
+     * Classifies a stick state without hysteresis and without changing the current sector.
+     * @param magnitude	Distance from center in percent.
+     * @param angle		Angle in degrees from 0 to 360, 0 is east.
+     * @return			Sector number or {@link #NONE}.
+     */
+    public int classify(float magnitude, float angle){
+        if( magnitude < mThreshold )
+            return NONE;
+        return sectorOf( normalize(angle + mOffset) );
+    }
+
+    /**
+     * Updates the current sector with a stick state, applying hysteresis.
+     * @param magnitude	Distance from center in percent.
+     * @param angle		Angle in degrees from 0 to 360, 0 is east.
+     * @return			Current sector number or {@link #NONE}.
+     */
+    public int update(float magnitude, float angle){
+        int vSector;
+        if( mSector == NONE ){
+            vSector = classify(magnitude, angle);
+        } else if( magnitude < mThreshold - mMagnitudeHysteresis ){
+            vSector = NONE;
+        } else {
+            final float vAngle = normalize(angle + mOffset);
+            vSector = isInSector(mSector, vAngle, mAngularHysteresis) ? mSector : sectorOf(vAngle);
+        }
+
+        if( vSector != mSector ){
+            mSector = vSector;
+            mTransitionCount++;
+        }
+        return vSector;
+    }
+
+    /**
+     * @return	Current sector number or {@link #NONE}.
+     */
+    public int getSector(){
+        return mSector;
+    }
+
+    /**
+     * @param sector	Sector number or {@link #NONE}.
+     * @return			{@link StickOrientation} ordinal of the sector center.
+     */
+    public int getOrientationOrdinal(int sector){
+        return sector == NONE ? StickOrientation.NONE.ordinal() : mOrientations[sector];
+    }
+
+    /**
+     * @return	Number of sector changes since the last reset.
+     */
+    public long getTransitionCount(){
+        return mTransitionCount;
+    }
+
+    /**
+     * Resets the current sector to {@link #NONE} and the transition count.
+     */
+    public void reset(){
+        mSector = NONE;
+        mTransitionCount = 0;
+    }
+
+    /**
+     * @param angle	Angle relative to start of sector 0, from 0 to 360.
+     * @return		Sector containing the angle.
+     */
+    private int sectorOf(float angle){
+        int vIndex = (int) angle;
+        if( vIndex >= TABLE_SIZE )
+            vIndex = 0;
+        final int vSector = mTable[vIndex];
+        return angle >= mSectorEnds[vSector] ? vSector + 1 : vSector;
+    }
+
+    /**
+     * @param sector	Sector number.
+     * @param angle		Angle relative to start of sector 0, from 0 to 360.
+     * @param margin	Angle in degrees the sector is extended by on both sides.
+     * @return			{@code true} if angle is inside extended sector.
+     */
+    private boolean isInSector(int sector, float angle, float margin){
+        final float vDelta = normalize(angle - mSectorStarts[sector]);
+        return vDelta < getSectorWidth(sector) + margin || vDelta >= 360.0f - margin;
+    }
+
+    /**
+     * @return	Angle normalized to 0 (inclusive) to 360 (exclusive).
+     */
+    private static float normalize(float angle){
+        if( angle >= 360.0f )
+            angle -= 360.0f;
+        else if( angle < 0.0f )
+            angle += 360.0f;
+        return angle >= 360.0f ? 0.0f : angle;
+    }
+
+}
@@ -0,0 +1,160 @@
+package de.hanneseilers.joystickview;
+
+
+/**
+ * Decides which stick states are emitted to listeners.
+ * Can suppress states with unchanged rounded positions, states that changed
+ * less than a minimum delta, states that follow the last emitted state
+ * within a minimum interval and all states without a direction transition.
+ * States with a changed orientation or {@link DirectionEngine} sector and the
+ * centered state after a move are always emitted, so listeners never miss a release.
+ * {@link JoystickView} additionally forces the rest state after a release or cancel with
+ * {@link #force(JoystickState)}, even if rounding already reported 0,0 before.
+ * All filters are disabled by default. Instances are not thread safe.
+ * @author H. Eilers
+ *
+ */
+public class EmissionFilter {
+
+    private boolean mSkipUnchanged;
+    private float mMinDelta;
+    private long mMinInterval;
+    private boolean mTransitionsOnly;
+
+    // Last emitted state
+    private boolean mHasLast;
+    private float mLastXPos, mLastYPos;
+    private int mLastOrientation;
+    private int mLastSector;
+    private long mLastTime;
+
+    // Statistics
+    private long mEmittedCount;
+    private long mSuppressedCount;
+
+
+    public boolean isSkipUnchanged(){
+        return mSkipUnchanged;
+    }
+
+    /**
+     * @param aSkipUnchanged	{@code true} to suppress states with same rounded position
+     * 							as the last emitted state.
+     */
+    public void setSkipUnchanged(boolean aSkipUnchanged){
+        mSkipUnchanged = aSkipUnchanged;
+    }
+
+    public float getMinDelta(){
+        return mMinDelta;
+    }
+
+    /**
+     * @param aMinDelta	Minimum change of x or y position in percent to emit a state.
+     * 					0 to disable.
+     */
+    public void setMinDelta(float aMinDelta){
+        if( aMinDelta < 0.0f )
+            throw new IllegalArgumentException("min delta must not be negative");
+        mMinDelta = aMinDelta;
+    }
+
+    public long getMinInterval(){
+        return mMinInterval;
+    }
+
+    /**
+     * @param aMinInterval	Minimum time in milliseconds between two emitted states.
+     * 						0 to disable.
+     */
+    public void setMinInterval(long aMinInterval){
+        if( aMinInterval < 0 )
+            throw new IllegalArgumentException("min interval must not be negative");
+        mMinInterval = aMinInterval;
+    }
+
+    public boolean isTransitionsOnly(){
+        return mTransitionsOnly;
+    }
+
+    /**
+     * @param aTransitionsOnly	{@code true} to emit only states with a changed orientation or
+     * 							{@link DirectionEngine} sector, e.g. for D-pad use.
+     */
+    public void setTransitionsOnly(boolean aTransitionsOnly){
+        mTransitionsOnly = aTransitionsOnly;
+    }
+
+    /**
+     * Checks if a state should be emitted and updates statistics.
+     * @param state	{@link JoystickState} to check.
+     * @return		{@code true} if state should be emitted.
+     */
+    public boolean accept(JoystickState state){
+        if( mHasLast && !isForced(state) ){
+            final float vDeltaX = Math.abs( state.getX() - mLastXPos );
+            final float vDeltaY = Math.abs( state.getY() - mLastYPos );
+
+            if( mTransitionsOnly
+                    || (mSkipUnchanged && vDeltaX == 0.0f && vDeltaY == 0.0f)
+                    || (mMinDelta > 0.0f && vDeltaX < mMinDelta && vDeltaY < mMinDelta)
+                    || (mMinInterval > 0 && state.getTimestamp() - mLastTime < mMinInterval) ){
+                mSuppressedCount++;
+                return false;
+            }
+        }
+
+        force(state);
+        return true;
+    }
+
+    /**
+     * Records a state that is emitted regardless of filters,
+     * e.g. the rest state after a release or cancel.
+     * @param state	Emitted {@link JoystickState}.
+     */
+    public void force(JoystickState state){
+        mHasLast = true;
+        mLastXPos = state.getX();
+        mLastYPos = state.getY();
+        mLastOrientation = state.getOrientationOrdinal();
+        mLastSector = state.getSector();
+        mLastTime = state.getTimestamp();
+        mEmittedCount++;
+    }
+
+    /**
+     * @return	{@code true} if state must be emitted regardless of filters:
+     * 			orientation or sector changed or stick returned to center.
+     */
+    private boolean isForced(JoystickState state){
+        if( state.getOrientationOrdinal() != mLastOrientation || state.getSector() != mLastSector )
+            return true;
+        return state.getX() == 0.0f && state.getY() == 0.0f
+                && (mLastXPos != 0.0f || mLastYPos != 0.0f);
+    }
+
+    /**
+     * @return	Number of emitted states.
+     */
+    public long getEmittedCount(){
+        return mEmittedCount;
+    }
+
+    /**
+     * @return	Number of suppressed states.
+     */
+    public long getSuppressedCount(){
+        return mSuppressedCount;
+    }
+
+    /**
+     * Resets statistics and last emitted state.
+     */
+    public void reset(){
+        mHasLast = false;
+        mEmittedCount = 0;
+        mSuppressedCount = 0;
+    }
+
+}
@@ -0,0 +1,178 @@
+package de.hanneseilers.joystickview;
+
+
+import java.util.concurrent.locks.LockSupport;
+
+import de.hanneseilers.joystickview.JoystickView.OnJoystickStateListener;
+
+/**
+ * Publishes the latest {@link JoystickView} state at a fixed rate on a dedicated thread,
+ * independent of how often touch events arrive.
+ * Ticks are scheduled on absolute times, so delays do not accumulate. If a tick is
+ * late by more than one period, the skipped ticks are counted as missed and not
+ * published afterwards.
+ * The state is handed over from the UI thread without locking.
+ * @author H. Eilers
+ *
+ */
+public class FixedRateSampler {
+
+    private static final String THREAD_NAME = "JoystickView-Sampler";
+
+    private final JoystickView mView;
+    private final OnJoystickStateListener mListener;
+    private volatile long mPeriodNanos;
+    private volatile Thread mThread;
+
+    // Statistics, written by sampler thread only
+    private volatile long mTickCount;
+    private volatile long mMissedTickCount;
+    private volatile long mMaxJitterNanos;
+    private volatile long mTotalJitterNanos;
+
+
+    /**
+     * Constructor.
+     * @param view		{@link JoystickView} to sample.
+     * @param rate		Sampling rate in Hz.
+     * @param listener	{@link OnJoystickStateListener} to publish samples to.
+     * 					Called on the sampler thread.
+     */
+    public FixedRateSampler(JoystickView view, float rate, OnJoystickStateListener listener){
+        if( view == null || listener == null )
+            throw new IllegalArgumentException("view and listener must not be null");
+        mView = view;
+        mListener = listener;
+        setRate(rate);
+    }
+
+    /**
+     * Sets the sampling rate. Takes effect with the next tick.
+     * @param rate	Sampling rate in Hz.
+     */
+    public void setRate(float rate){
+        if( !(rate > 0.0f) )
+            throw new IllegalArgumentException("rate must be positive");
+        mPeriodNanos = (long) (1000000000.0 / rate);
+    }
+
+    /**
+     * @return	Sampling rate in Hz.
+     */
+    public float getRate(){
+        return (float) (1000000000.0 / mPeriodNanos);
+    }
+
+    /**
+     * Starts sampling. Does nothing if already started.
+     */
+    public synchronized void start(){
+        if( mThread != null )
+            return;
+
+        mThread = new Thread( mLoop, THREAD_NAME );
+        mThread.setDaemon( true );
+        mThread.setPriority( Thread.MAX_PRIORITY );
+        mThread.start();
+    }
+
+    /**
+     * Stops sampling.
+     */
+    public synchronized void stop(){
+        if( mThread != null ){
+            LockSupport.unpark( mThread );
+            mThread = null;
+        }
+    }
+
+    /**
+     * @return	{@code true} if sampler is running.
+     */
+    public boolean isRunning(){
+        return mThread != null;
+    }
+
+    /**
+     * @return	Number of published samples.
+     */
+    public long getTickCount(){
+        return mTickCount;
+    }
+
+    /**
+     * @return	Number of ticks skipped because the sampler was late by more than one period.
+     */
+    public long getMissedTickCount(){
+        return mMissedTickCount;
+    }
+
+    /**
+     * @return	Maximum delay of a tick behind its scheduled time in nanoseconds.
+     */
+    public long getMaxJitterNanos(){
+        return mMaxJitterNanos;
+    }
+
+    /**
+     * @return	Mean delay of ticks behind their scheduled time in nanoseconds.
+     */
+    public long getMeanJitterNanos(){
+        final long vTicks = mTickCount;
+        return vTicks > 0 ? mTotalJitterNanos / vTicks : 0;
+    }
+
+    /**
+     * Resets statistics. Should only be called while the sampler is stopped.
+     */
+    public void resetStatistics(){
+        mTickCount = 0;
+        mMissedTickCount = 0;
+        mMaxJitterNanos = 0;
+        mTotalJitterNanos = 0;
+    }
+
+    /**
+     * Sampler thread loop.
+     */
+    private final Runnable mLoop = new Runnable() {
+        @Override
+        public void run() {
+            final Thread vSelf = Thread.currentThread();
+            final JoystickState vState = new JoystickState();
+            long vNextTick = System.nanoTime();
+
+            while( mThread == vSelf ){
+                // wait for scheduled tick
+                long vNow = System.nanoTime();
+                while( vNow < vNextTick ){
+                    LockSupport.parkNanos( vNextTick - vNow );
+                    if( mThread != vSelf )
+                        return;
+                    vNow = System.nanoTime();
+                }
+
+                // statistics
+                final long vPeriod = mPeriodNanos;
+                final long vJitter = vNow - vNextTick;
+                if( vJitter >= vPeriod ){
+                    final long vMissed = vJitter / vPeriod;
+                    mMissedTickCount += vMissed;
+                    vNextTick += vMissed * vPeriod;
+                }
+                final long vTickJitter = vNow - vNextTick;
+                if( vTickJitter > mMaxJitterNanos )
+                    mMaxJitterNanos = vTickJitter;
+                mTotalJitterNanos += vTickJitter;
+                mTickCount++;
+
+                // publish latest state
+                mView.readState(vState);
+                mListener.onJoystickStateChanged(vState);
+
+                vNextTick += vPeriod;
+            }
+        }
+    };
+
+}
@@ -0,0 +1,68 @@
+package de.hanneseilers.joystickview;
+
+
+import android.graphics.RadialGradient;
+import android.graphics.Shader;
+
+/**
+ * Small process wide cache of stick {@link RadialGradient} shaders,
+ * keyed by center, radius and colors.
+ * Avoids allocating a new shader on every size or color change and shares
+ * shaders between {@link JoystickView} instances of the same size and style.
+ * Least recently used entries are replaced if the cache is full.
+ * @author H. Eilers
+ *
+ */
+final class GradientCache {
+
+    private static final int CAPACITY = 16;
+
+    private static final float[] sCenterX = new float[CAPACITY];
+    private static final float[] sCenterY = new float[CAPACITY];
+    private static final float[] sRadius = new float[CAPACITY];
+    private static final int[] sInnerColor = new int[CAPACITY];
+    private static final int[] sOuterColor = new int[CAPACITY];
+    private static final long[] sLastUse = new long[CAPACITY];
+    private static final Shader[] sShaders = new Shader[CAPACITY];
+    private static long sUseCounter;
+
+    private GradientCache(){}
+
+    /**
+     * @param centerX		Gradient center x position.
+     * @param centerY		Gradient center y position.
+     * @param radius		Gradient radius.
+     * @param innerColor	Inner color.
+     * @param outerColor	Outer color.
+     * @return				Cached or new {@link Shader}.
+     */
+    static synchronized Shader get(float centerX, float centerY, float radius, int innerColor, int outerColor){
+        int vLeastRecent = 0;
+        for( int i = 0; i < CAPACITY; i++ ){
+            if( sShaders[i] != null && sRadius[i] == radius
+                    && sCenterX[i] == centerX && sCenterY[i] == centerY
+                    && sInnerColor[i] == innerColor && sOuterColor[i] == outerColor ){
+                sLastUse[i] = ++sUseCounter;
+                return sShaders[i];
+            }
+            if( sLastUse[i] < sLastUse[vLeastRecent] )
+                vLeastRecent = i;
+        }
+
+        // radius must be positive for gradients
+        final Shader vShader = new RadialGradient(
+                centerX, centerY, Math.max(radius, 1.0f),
+                innerColor, outerColor,
+                Shader.TileMode.MIRROR );
+
+        sCenterX[vLeastRecent] = centerX;
+        sCenterY[vLeastRecent] = centerY;
+        sRadius[vLeastRecent] = radius;
+        sInnerColor[vLeastRecent] = innerColor;
+        sOuterColor[vLeastRecent] = outerColor;
+        sLastUse[vLeastRecent] = ++sUseCounter;
+        sShaders[vLeastRecent] = vShader;
+        return vShader;
+    }
+
+}
@@ -0,0 +1,154 @@
+package de.hanneseilers.joystickview;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import de.hanneseilers.joystickview.JoystickView.OnJoystickBatchListener;
+import de.hanneseilers.joystickview.JoystickView.OnJoystickStateListener;
+
+/**
+ * Listener writing {@link JoystickView} states as binary frames of
+ * {@link JoystickFrameEncoder} to a {@link WritableByteChannel}, e.g. a connected
+ * {@link java.nio.channels.DatagramChannel} or a {@link java.nio.channels.FileChannel}.
+ * Every state or batch is written as one frame through a reused direct buffer,
+ * so writing does not allocate objects.
+ * Listener callbacks cannot throw {@link IOException}, so write errors are counted
+ * and the last one is kept, see {@link #getLastError()}.
+ * Frames a full non blocking channel does not accept at all are dropped and counted
+ * separately. Only datagram channels write either whole frames or nothing. If a stream
+ * channel, e.g. a {@link java.nio.channels.SocketChannel}, accepts part of a frame, the
+ * remainder is kept and written before the next frame, so the peer stays in sync.
+ * Following frames are dropped until the remainder is written.
+ * @author H. Eilers
+ *
+ */
+public class JoystickChannelSink implements OnJoystickStateListener, OnJoystickBatchListener {
+
+    private final WritableByteChannel mChannel;
+    private final JoystickFrameEncoder mEncoder = new JoystickFrameEncoder();
+    private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(
+            JoystickFrameEncoder.frameSize(JoystickFrameEncoder.MAX_SAMPLES) );
+    private final ByteBuffer mRemainder = ByteBuffer.allocateDirect( mBuffer.capacity() );
+
+    private volatile long mFrameCount;
+    private volatile long mDroppedFrameCount;
+    private volatile long mErrorCount;
+    private volatile IOException mLastError;
+
+
+    /**
+     * Constructor.
+     * @param channel	{@link WritableByteChannel} to write frames to.
+     */
+    public JoystickChannelSink(WritableByteChannel channel){
+        if( channel == null )
+            throw new IllegalArgumentException("channel must not be null");
+        mChannel = channel;
+        mRemainder.limit(0);
+    }
+
+    @Override
+    public synchronized void onJoystickStateChanged(JoystickState state) {
+        mBuffer.clear();
+        mEncoder.encode(state, mBuffer);
+        write();
+    }
+
+    @Override
+    public synchronized void onJoystickBatch(JoystickState[] samples, int count) {
+        int vOffset = 0;
+        while( vOffset < count ){
+            mBuffer.clear();
+            vOffset += mEncoder.encode(samples, vOffset, count - vOffset, mBuffer);
+            write();
+        }
+    }
+
+    /**
+     * Writes the encoded frame in the buffer to the channel.
+     * A remainder of the previous frame is written first.
+     */
+    private void write(){
+        mBuffer.flip();
+        try{
+            if( mRemainder.hasRemaining() ){
+                if( !writeFully(mRemainder) ){
+                    // peer still has to receive the previous frame, drop this one
+                    mDroppedFrameCount++;
+                    return;
+                }
+                mFrameCount++;
+            }
+
+            final int vSize = mBuffer.remaining();
+            if( !writeFully(mBuffer) ){
+                if( mBuffer.remaining() == vSize ){
+                    // non blocking channel is full, drop frame
+                    mDroppedFrameCount++;
+                } else {
+                    // partially written to a stream, keep remainder
+                    mRemainder.clear();
+                    mRemainder.put(mBuffer);
+                    mRemainder.flip();
+                }
+                return;
+            }
+            mFrameCount++;
+        } catch (IOException e) {
+            mErrorCount++;
+            mLastError = e;
+        }
+    }
+
+    /**
+     * Writes a buffer until it is empty or the channel does not accept more bytes.
+     * @param buffer	{@link ByteBuffer} to write.
+     * @return			{@code true} if the buffer was written completely.
+     */
+    private boolean writeFully(ByteBuffer buffer) throws IOException {
+        while( buffer.hasRemaining() ){
+            if( mChannel.write(buffer) == 0 )
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return	{@link JoystickFrameEncoder} used to encode frames, e.g. to set the sequence number.
+     */
+    public JoystickFrameEncoder getEncoder(){
+        return mEncoder;
+    }
+
+    /**
+     * @return	Number of written frames.
+     */
+    public long getFrameCount(){
+        return mFrameCount;
+    }
+
+    /**
+     * @return	Number of frames dropped because a non blocking channel was full
+     * 			or the remainder of a partially written frame was still pending.
+     */
+    public long getDroppedFrameCount(){
+        return mDroppedFrameCount;
+    }
+
+    /**
+     * @return	Number of frames that could not be written because of an error.
+     */
+    public long getErrorCount(){
+        return mErrorCount;
+    }
+
+    /**
+     * @return	Last write error or {@code null}.
+     */
+    public IOException getLastError(){
+        return mLastError;
+    }
+
+}
@@ -0,0 +1,311 @@
+package de.hanneseilers.joystickview;
+
+
+import de.hanneseilers.joystickview.JoystickView.StickOrientation;
+
+/**
+ * Joystick math without Android framework dependencies.
+ * Clamps stick positions to the outer border circle, normalizes them to
+ * -100% to 100%, inverts axes, applies an optional {@link OutputPipeline},
+ * rounds to the position precision and classifies the {@link StickOrientation},
+ * optionally with a {@link DirectionEngine}.
+ * Used by {@link JoystickView} and {@link MultiJoystickView}, and usable
+ * on a plain JVM for tests and benchmarks.
+ * Instances are not thread safe.
+ * @author H. Eilers
+ *
+ */
+public class JoystickEngine {
+
+    private static final int NONE = StickOrientation.NONE.ordinal();
+    private static final int NORTH = StickOrientation.NORTH.ordinal();
+    private static final int NORTH_EAST = StickOrientation.NORTH_EAST.ordinal();
+    private static final int EAST = StickOrientation.EAST.ordinal();
+    private static final int SOUTH_EAST = StickOrientation.SOUTH_EAST.ordinal();
+    private static final int SOUTH = StickOrientation.SOUTH.ordinal();
+    private static final int SOUTH_WEST = StickOrientation.SOUT_WEST.ordinal();
+    private static final int WEST = StickOrientation.WEST.ordinal();
+    private static final int NORTH_WEST = StickOrientation.NORTH_WEST.ordinal();
+
+    // Geometry
+    private float mCenterX, mCenterY;
+    private float mOuterRadius, mOuterRadiusSq;
+
+    // Settings
+    private boolean mInvertXAxis, mInvertYAxis;
+    private int mPositionPrecision;
+    private float mPositionScale;
+    private OutputPipeline mOutputPipeline;
+    private DirectionEngine mDirectionEngine;
+
+    // Clamped stick position of last processed sample
+    private float mStickX, mStickY;
+
+
+    /**
+     * Constructor.
+     * Uses a position precision of 2 and no axis inversion.
+     */
+    public JoystickEngine(){
+        setPositionPrecision(2);
+    }
+
+    /**
+     * Sets the geometry of the stick area.
+     * @param centerX		X position of stick area center.
+     * @param centerY		Y position of stick area center.
+     * @param outerRadius	Radius the stick center can move from the area center.
+     */
+    public void setGeometry(float centerX, float centerY, float outerRadius){
+        mCenterX = centerX;
+        mCenterY = centerY;
+        mOuterRadius = outerRadius;
+        mOuterRadiusSq = outerRadius * outerRadius;
+        mStickX = centerX;
+        mStickY = centerY;
+    }
+
+    public float getCenterX(){
+        return mCenterX;
+    }
+
+    public float getCenterY(){
+        return mCenterY;
+    }
+
+    public float getOuterRadius(){
+        return mOuterRadius;
+    }
+
+    public boolean isInvertXAxis(){
+        return mInvertXAxis;
+    }
+
+    public void setInvertXAxis(boolean aInvertXAxis){
+        mInvertXAxis = aInvertXAxis;
+    }
+
+    public boolean isInvertYAxis(){
+        return mInvertYAxis;
+    }
+
+    public void setInvertYAxis(boolean aInvertYAxis){
+        mInvertYAxis = aInvertYAxis;
+    }
+
+    public int getPositionPrecision(){
+        return mPositionPrecision;
+    }
+
+    /**
+     * @param aPositionPrecision	Number of decimal places of positions in percent.
+     */
+    public void setPositionPrecision(int aPositionPrecision){
+        mPositionPrecision = aPositionPrecision;
+        mPositionScale = (float) Math.pow(10, aPositionPrecision);
+    }
+
+    /**
+     * @return	{@link OutputPipeline} or {@code null}.
+     */
+    public OutputPipeline getOutputPipeline(){
+        return mOutputPipeline;
+    }
+
+    /**
+     * @param aOutputPipeline	{@link OutputPipeline} to process relative positions with,
+     * 							or {@code null} to disable output processing.
+     */
+    public void setOutputPipeline(OutputPipeline aOutputPipeline){
+        mOutputPipeline = aOutputPipeline;
+        if( aOutputPipeline != null )
+            aOutputPipeline.reset();
+    }
+
+    /**
+     * @return	{@link DirectionEngine} or {@code null}.
+     */
+    public DirectionEngine getDirectionEngine(){
+        return mDirectionEngine;
+    }
+
+    /**
+     * @param aDirectionEngine	{@link DirectionEngine} to classify orientations and sectors with,
+     * 							or {@code null} to classify orientations by position signs.
+     */
+    public void setDirectionEngine(DirectionEngine aDirectionEngine){
+        mDirectionEngine = aDirectionEngine;
+        if( aDirectionEngine != null )
+            aDirectionEngine.reset();
+    }
+
+    /**
+     * Resets stick position to center and the state of the {@link OutputPipeline}
+     * and {@link DirectionEngine}.
+     * The next sample passes the pipeline filters and rate limit unchanged,
+     * so processing the center after a reset always results in 0,0.
+     */
+    public void reset(){
+        mStickX = mCenterX;
+        mStickY = mCenterY;
+        if( mOutputPipeline != null )
+            mOutputPipeline.reset();
+        if( mDirectionEngine != null )
+            mDirectionEngine.reset();
+    }
+
+    /**
+     * @return	Clamped x position of stick center of the last processed sample.
+     */
+    public float getStickX(){
+        return mStickX;
+    }
+
+    /**
+     * @return	Clamped y position of stick center of the last processed sample.
+     */
+    public float getStickY(){
+        return mStickY;
+    }
+
+    /**
+     * Processes a stick position.
+     * If the position is outside the outer border circle, it is adjusted
+     * to be on the outer border circle. The clamped position is available
+     * through {@link #getStickX()} and {@link #getStickY()}.
+     * @param x		X position of stick center in view coordinates.
+     * @param y		Y position of stick center in view coordinates.
+     * @param time	Sample time in milliseconds.
+     * @param out	{@link JoystickState} to write the resulting state into.
+     */
+    public void process(float x, float y, long time, JoystickState out){
+        float vX = x - mCenterX;
+        float vY = y - mCenterY;
+
+        // check if stick position is outside control radius
+        final float vDistSq = vX*vX + vY*vY;
+        if( vDistSq > mOuterRadiusSq ){
+            final float vScale = clampScale(vDistSq);
+            vX *= vScale;
+            vY *= vScale;
+        }
+        mStickX = mCenterX + vX;
+        mStickY = mCenterY + vY;
+
+        toState(vX, vY, time, true, out);
+    }
+
+    /**
+     * Calculates the state of a stick position like {@link #process(float, float, long, JoystickState)}
+     * without changing the stick position, without the stateful {@link OutputPipeline}
+     * and without {@link DirectionEngine} hysteresis, e.g. for predicted positions.
+     * @param x		X position of stick center in view coordinates.
+     * @param y		Y position of stick center in view coordinates.
+     * @param time	Sample time in milliseconds.
+     * @param out	{@link JoystickState} to write the resulting state into.
+     */
+    public void project(float x, float y, long time, JoystickState out){
+        float vX = x - mCenterX;
+        float vY = y - mCenterY;
+        final float vDistSq = vX*vX + vY*vY;
+        if( vDistSq > mOuterRadiusSq ){
+            final float vScale = clampScale(vDistSq);
+            vX *= vScale;
+            vY *= vScale;
+        }
+        toState(vX, vY, time, false, out);
+    }
+
+    /**
+     * @param distSq	Squared distance to center, greater than squared outer radius.
+     * @return			Factor to scale an offset onto the outer border circle.
+     * 					Only computes a square root if clamping is needed.
+     */
+    private float clampScale(float distSq){
+        return mOuterRadius > 0.0f ? mOuterRadius / (float) Math.sqrt(distSq) : 0.0f;
+    }
+
+    /**
+     * Converts a clamped stick offset from the area center into a state.
+     * @param x			Clamped x offset.
+     * @param y			Clamped y offset.
+     * @param time		Sample time in milliseconds.
+     * @param track		{@code true} to update the state of {@link OutputPipeline}
+     * 					and {@link DirectionEngine}.
+     * @param out		{@link JoystickState} to write the resulting state into.
+     */
+    private void toState(float x, float y, long time, boolean track, JoystickState out){
+        // calculate relative stick position
+        float vX, vY;
+        if( mOuterRadius > 0.0f ){
+            vX = x / mOuterRadius;
+            vY = y / mOuterRadius;
+        } else {
+            vX = 0.0f;
+            vY = 0.0f;
+        }
+
+        // check if to invert axis
+        if( mInvertXAxis )
+            vX = -vX;
+        if( !mInvertYAxis )				// android view direction is from top to bottom!
+            vY = -vY;
+
+        // output processing
+        if( track && mOutputPipeline != null ){
+            mOutputPipeline.process(vX, vY, time);
+            vX = mOutputPipeline.getX();
+            vY = mOutputPipeline.getY();
+        }
+
+        // magnitude and angle of unrounded position
+        final float vMagnitude = (float) Math.sqrt( vX*vX + vY*vY ) * 100.0f;
+        float vAngle = (float) Math.toDegrees( Math.atan2(vY, vX) );
+        if( vAngle < 0.0f )
+            vAngle += 360.0f;
+        else
+            vAngle += 0.0f;				// normalizes -0.0 to 0.0
+
+        // round position and scale from -100% to 100%
+        vX = Math.round( vX * 100.0f * mPositionScale ) / mPositionScale;
+        vY = Math.round( vY * 100.0f * mPositionScale ) / mPositionScale;
+
+        // direction
+        if( mDirectionEngine != null ){
+            final int vSector = track ? mDirectionEngine.update(vMagnitude, vAngle)
+                    : mDirectionEngine.classify(vMagnitude, vAngle);
+            out.set(vX, vY, vMagnitude, vAngle, mDirectionEngine.getOrientationOrdinal(vSector), vSector, time);
+        } else {
+            out.set(vX, vY, vMagnitude, vAngle, classifyOrientation(vX, vY), time);
+        }
+    }
+
+    /**
+     * Classifies the orientation of a relative stick position by the signs of its axes.
+     * Pure cardinal orientations are only reported for exactly zero axes,
+     * use a {@link DirectionEngine} for D-pad like classification.
+     * @param x	Relative x position.
+     * @param y	Relative y position.
+     * @return	{@link StickOrientation} ordinal.
+     */
+    public static int classifyOrientation(float x, float y){
+        if( x == 0.0f && y > 0.0f )
+            return NORTH;
+        else if( x > 0.0f && y > 0.0f )
+            return NORTH_EAST;
+        else if( x > 0.0f && y == 0.0f )
+            return EAST;
+        else if( x > 0.0f && y < 0.0f )
+            return SOUTH_EAST;
+        else if( x == 0.0f && y < 0.0f )
+            return SOUTH;
+        else if( x < 0.0f && y < 0.0f )
+            return SOUTH_WEST;
+        else if( x < 0.0f && y == 0.0f )
+            return WEST;
+        else if( x < 0.0f && y > 0.0f )
+            return NORTH_WEST;
+        return NONE;
+    }
+
+}
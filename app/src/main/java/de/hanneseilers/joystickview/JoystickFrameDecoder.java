@@ -0,0 +1,108 @@
+package de.hanneseilers.joystickview;
+
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes binary frames written by {@link JoystickFrameEncoder} into reused
+ * {@link JoystickState} samples. Magnitude and angle are recalculated from the
+ * decoded positions. Counts frames missing in the sequence, e.g. lost datagrams.
+ * Instances are not thread safe.
+ * @author H. Eilers
+ *
+ */
+public class JoystickFrameDecoder {
+
+    private static final int ORIENTATION_COUNT = JoystickView.StickOrientation.values().length;
+
+    private boolean mHasSequence;
+    private int mLastSequence;
+    private long mLostFrameCount;
+
+
+    /**
+     * Decodes one frame.
+     * @param in	{@link ByteBuffer} to read frame from, starting at its position.
+     * 				The position is moved behind the frame.
+     * @param out	{@link JoystickState} array to decode samples into.
+     * 				Must hold {@link JoystickFrameEncoder#MAX_SAMPLES} samples to decode any frame.
+     * @return		Number of decoded samples.
+     */
+    public int decode(ByteBuffer in, JoystickState[] out){
+        if( in.remaining() < JoystickFrameEncoder.HEADER_SIZE )
+            throw new IllegalArgumentException("incomplete frame header");
+
+        final ByteOrder vOrder = in.order();
+        in.order( ByteOrder.BIG_ENDIAN );
+        try{
+
+            if( in.getShort() != JoystickFrameEncoder.MAGIC )
+                throw new IllegalArgumentException("not a joystick frame");
+            final byte vVersion = in.get();
+            if( vVersion != JoystickFrameEncoder.VERSION )
+                throw new IllegalArgumentException("unsupported frame version " + vVersion);
+
+            final int vCount = in.get() & 0xFF;
+            final int vSequence = in.getInt();
+            final long vBaseTime = in.getLong();
+
+            if( in.remaining() < vCount * JoystickFrameEncoder.SAMPLE_SIZE )
+                throw new IllegalArgumentException("incomplete frame");
+            if( out.length < vCount )
+                throw new IllegalArgumentException("output array too small");
+
+            // sequence gaps
+            if( mHasSequence && vSequence - mLastSequence > 1 )
+                mLostFrameCount += vSequence - mLastSequence - 1;
+            mHasSequence = true;
+            mLastSequence = vSequence;
+
+            for( int i = 0; i < vCount; i++ ){
+                final float vXPos = in.getShort() / 100.0f;
+                final float vYPos = in.getShort() / 100.0f;
+                final long vTime = vBaseTime + (in.getShort() & 0xFFFF);
+                final int vOrientation = in.get();
+                in.get();
+                if( vOrientation < 0 || vOrientation >= ORIENTATION_COUNT )
+                    throw new IllegalArgumentException("invalid orientation " + vOrientation);
+
+                final float vMagnitude = (float) Math.sqrt( vXPos*vXPos + vYPos*vYPos );
+                float vAngle = (float) Math.toDegrees( Math.atan2(vYPos, vXPos) );
+                if( vAngle < 0.0f )
+                    vAngle += 360.0f;
+
+                if( out[i] == null )
+                    out[i] = new JoystickState();
+                out[i].set(vXPos, vYPos, vMagnitude, vAngle, vOrientation, vTime);
+            }
+            return vCount;
+
+        } finally {
+            in.order( vOrder );
+        }
+    }
+
+    /**
+     * @return	Sequence number of the last decoded frame.
+     */
+    public int getLastSequence(){
+        return mLastSequence;
+    }
+
+    /**
+     * @return	Number of frames missing in the sequence of decoded frames.
+     */
+    public long getLostFrameCount(){
+        return mLostFrameCount;
+    }
+
+    /**
+     * Resets sequence tracking.
+     */
+    public void reset(){
+        mHasSequence = false;
+        mLostFrameCount = 0;
+    }
+
+}
@@ -0,0 +1,145 @@
+package de.hanneseilers.joystickview;
+
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes {@link JoystickState} samples into compact binary frames, e.g. to stream
+ * them over a socket or into a file. Frames are written directly into a caller
+ * supplied {@link ByteBuffer} without allocations. Use {@link JoystickFrameDecoder}
+ * to read them.
+ * <p>
+ * Frame layout in big endian byte order:
+ * <pre>
+ * header (16 bytes):
+ *   short  magic ({@link #MAGIC})
+ *   byte   version ({@link #VERSION})
+ *   byte   number of samples (1 to {@link #MAX_SAMPLES})
+ *   int    frame sequence number
+ *   long   timestamp of first sample in milliseconds
+ * sample (8 bytes):
+ *   short  x position in 1/100 percent (-10000 to 10000)
+ *   short  y position in 1/100 percent (-10000 to 10000)
+ *   short  time since first sample in milliseconds (unsigned)
+ *   byte   {@link JoystickView.StickOrientation} ordinal
+ *   byte   reserved
+ * </pre>
+ * Instances are not thread safe.
+ * @author H. Eilers
+ *
+ */
+public class JoystickFrameEncoder {
+
+    public static final short MAGIC = 0x4A53;
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int SAMPLE_SIZE = 8;
+    public static final int MAX_SAMPLES = 255;
+
+    private static final int MAX_TIME_OFFSET = 0xFFFF;
+
+    private int mSequence;
+
+
+    /**
+     * @param samples	Number of samples.
+     * @return			Size of a frame with the given number of samples in bytes.
+     */
+    public static int frameSize(int samples){
+        return HEADER_SIZE + samples * SAMPLE_SIZE;
+    }
+
+    /**
+     * @return	Sequence number of the next frame.
+     */
+    public int getSequence(){
+        return mSequence;
+    }
+
+    /**
+     * @param aSequence	Sequence number of the next frame.
+     */
+    public void setSequence(int aSequence){
+        mSequence = aSequence;
+    }
+
+    /**
+     * Encodes a frame with one sample.
+     * @param state	{@link JoystickState} to encode.
+     * @param out	{@link ByteBuffer} to write frame to, starting at its position.
+     * @return		Number of written bytes.
+     */
+    public int encode(JoystickState state, ByteBuffer out){
+        if( out.remaining() < frameSize(1) )
+            throw new IllegalArgumentException("buffer too small");
+
+        final ByteOrder vOrder = out.order();
+        out.order( ByteOrder.BIG_ENDIAN );
+        putHeader(out, 1, state.getTimestamp());
+        putSample(out, state, state.getTimestamp());
+        out.order( vOrder );
+        return frameSize(1);
+    }
+
+    /**
+     * Encodes a frame with several samples.
+     * Stops before a sample that is more than 65535 ms newer than the first sample
+     * or if {@link #MAX_SAMPLES} are reached. Remaining samples have to be encoded
+     * into a further frame.
+     * @param samples	{@link JoystickState} samples, oldest first.
+     * @param offset	Index of first sample to encode.
+     * @param count		Number of samples to encode.
+     * @param out		{@link ByteBuffer} to write frame to, starting at its position.
+     * @return			Number of encoded samples.
+     */
+    public int encode(JoystickState[] samples, int offset, int count, ByteBuffer out){
+        if( count <= 0 )
+            return 0;
+
+        // count samples fitting into frame
+        final long vBaseTime = samples[offset].getTimestamp();
+        int vCount = 1;
+        while( vCount < count && vCount < MAX_SAMPLES ){
+            final long vTimeOffset = samples[offset + vCount].getTimestamp() - vBaseTime;
+            if( vTimeOffset < 0 || vTimeOffset > MAX_TIME_OFFSET )
+                break;
+            vCount++;
+        }
+        if( out.remaining() < frameSize(vCount) )
+            throw new IllegalArgumentException("buffer too small");
+
+        final ByteOrder vOrder = out.order();
+        out.order( ByteOrder.BIG_ENDIAN );
+        putHeader(out, vCount, vBaseTime);
+        for( int i = 0; i < vCount; i++ )
+            putSample(out, samples[offset + i], vBaseTime);
+        out.order( vOrder );
+        return vCount;
+    }
+
+    private void putHeader(ByteBuffer out, int count, long baseTime){
+        out.putShort( MAGIC );
+        out.put( VERSION );
+        out.put( (byte) count );
+        out.putInt( mSequence++ );
+        out.putLong( baseTime );
+    }
+
+    private static void putSample(ByteBuffer out, JoystickState state, long baseTime){
+        out.putShort( quantize(state.getX()) );
+        out.putShort( quantize(state.getY()) );
+        out.putShort( (short) Math.max(0, Math.min(MAX_TIME_OFFSET, state.getTimestamp() - baseTime)) );
+        out.put( (byte) state.getOrientationOrdinal() );
+        out.put( (byte) 0 );
+    }
+
+    /**
+     * @param value	Position in percent.
+     * @return		Position in 1/100 percent.
+     */
+    private static short quantize(float value){
+        return (short) Math.max( -10000, Math.min(10000, Math.round(value * 100.0f)) );
+    }
+
+}
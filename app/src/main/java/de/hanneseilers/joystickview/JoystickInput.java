@@ -0,0 +1,166 @@
+package de.hanneseilers.joystickview;
+
+
+import android.content.res.TypedArray;
+import android.view.View;
+import de.hanneseilers.joystickview.JoystickView.OnJoystickTriggerListener;
+import de.hanneseilers.joystickview.R;
+
+/**
+ * Input path shared by {@link JoystickView} and {@link JoystickSurfaceView}.
+ * Processes stick positions with a {@link JoystickEngine}, evaluates {@link JoystickTrigger}s,
+ * publishes the resulting state and decides by an {@link EmissionFilter} if it is emitted.
+ * The rest state after {@link #reset()} is always emitted.
+ * Only used on the UI thread, except for reading the published state.
+ * @author H. Eilers
+ *
+ */
+final class JoystickInput {
+
+    final JoystickEngine mEngine = new JoystickEngine();
+    final JoystickState mState = new JoystickState();
+    final StateSeqLock mPublishedState = new StateSeqLock();
+    final EmissionFilter mEmissionFilter = new EmissionFilter();
+
+    // Triggers, copy on write
+    private JoystickTrigger[] mTriggers = new JoystickTrigger[0];
+
+    private boolean mForceEmit;
+
+
+    /**
+     * Reads input attributes: axis inversion, precision, emission filter,
+     * {@link DirectionEngine} and {@link OutputPipeline}.
+     * @param attr	{@link TypedArray} of {@link R.styleable#JoystickView}.
+     */
+    void readAttributes(TypedArray attr){
+        mEngine.setInvertXAxis( attr.getBoolean(R.styleable.JoystickView_invertXAxis, false) );
+        mEngine.setInvertYAxis( attr.getBoolean(R.styleable.JoystickView_invertYAxis, false) );
+        mEngine.setPositionPrecision( attr.getInt(R.styleable.JoystickView_positionPrecision, 2) );
+
+        mEmissionFilter.setSkipUnchanged( attr.getBoolean(R.styleable.JoystickView_emitOnlyChanges, false) );
+        mEmissionFilter.setMinDelta( attr.getFloat(R.styleable.JoystickView_emitMinDelta, 0.0f) );
+        mEmissionFilter.setMinInterval( attr.getInt(R.styleable.JoystickView_emitMinInterval, 0) );
+        mEmissionFilter.setTransitionsOnly( attr.getBoolean(R.styleable.JoystickView_emitOnlyTransitions, false) );
+
+        // direction engine
+        final int vSectors = attr.getInt(R.styleable.JoystickView_directionSectors, 0);
+        if( vSectors > 0 ){
+            final DirectionEngine vDirection = new DirectionEngine(vSectors);
+            vDirection.setThreshold( attr.getFloat(R.styleable.JoystickView_directionThreshold, vDirection.getThreshold()) );
+            vDirection.setAngularHysteresis( attr.getFloat(R.styleable.JoystickView_directionHysteresis, vDirection.getAngularHysteresis()) );
+            mEngine.setDirectionEngine(vDirection);
+        }
+
+        // output pipeline
+        final float vDeadZone = attr.getFloat(R.styleable.JoystickView_deadZone, 0.0f);
+        final float vExpo = attr.getFloat(R.styleable.JoystickView_expo, 0.0f);
+        final int vFilter = attr.getInt(R.styleable.JoystickView_outputFilter, OutputPipeline.FILTER_NONE);
+        final float vRateLimit = attr.getFloat(R.styleable.JoystickView_rateLimit, 0.0f);
+        if( vDeadZone > 0.0f || vExpo > 0.0f || vFilter != OutputPipeline.FILTER_NONE || vRateLimit > 0.0f ){
+            final OutputPipeline vPipeline = new OutputPipeline();
+            vPipeline.setMode( attr.getInt(R.styleable.JoystickView_deadZoneMode, OutputPipeline.MODE_RADIAL) );
+            vPipeline.setDeadZone(vDeadZone);
+            vPipeline.setExpo(vExpo);
+            if( vFilter == OutputPipeline.FILTER_EMA )
+                vPipeline.setEmaFilter( attr.getFloat(R.styleable.JoystickView_emaAlpha, 0.5f) );
+            else if( vFilter == OutputPipeline.FILTER_ONE_EURO )
+                vPipeline.setOneEuroFilter(
+                        attr.getFloat(R.styleable.JoystickView_oneEuroMinCutoff, 1.0f),
+                        attr.getFloat(R.styleable.JoystickView_oneEuroBeta, 0.0f),
+                        attr.getFloat(R.styleable.JoystickView_oneEuroDerivateCutoff, 1.0f) );
+            vPipeline.setRateLimit(vRateLimit);
+            mEngine.setOutputPipeline(vPipeline);
+        }
+    }
+
+    /**
+     * Processes a stick position, evaluates triggers and publishes the state.
+     * @param x			X position of stick center in view coordinates.
+     * @param y			Y position of stick center in view coordinates.
+     * @param time		Sample time in milliseconds.
+     * @param pressed	{@code true} if the stick is held by a pointer.
+     * @param view		{@link View} performing haptic feedback of triggers.
+     */
+    void process(float x, float y, long time, boolean pressed, View view){
+        mEngine.process(x, y, time, mState);
+        if( mTriggers.length > 0 )
+            evaluateTriggers(pressed, view);
+        mPublishedState.write(mState);
+    }
+
+    /**
+     * Resets the engine for a stick returning to rest.
+     * The next processed state is the rest state and bypasses the {@link EmissionFilter}.
+     */
+    void reset(){
+        mEngine.reset();
+        mForceEmit = true;
+    }
+
+    /**
+     * Checks if the current state should be emitted to listeners.
+     * @return	{@code true} if the state is the rest state after {@link #reset()}
+     * 			or accepted by the {@link EmissionFilter}.
+     */
+    boolean acceptEmission(){
+        if( mForceEmit ){
+            markEmitted();
+            return true;
+        }
+        return mEmissionFilter.accept(mState);
+    }
+
+    /**
+     * Records that the current state was emitted without the {@link EmissionFilter},
+     * e.g. as part of a batch.
+     */
+    void markEmitted(){
+        if( mForceEmit ){
+            mForceEmit = false;
+            mEmissionFilter.force(mState);
+        }
+    }
+
+    /**
+     * Registers a {@link JoystickTrigger}.
+     * @param trigger	{@link JoystickTrigger} to evaluate.
+     * @param listener	{@link OnJoystickTriggerListener} to notify or {@code null}.
+     */
+    void addTrigger(JoystickTrigger trigger, OnJoystickTriggerListener listener){
+        if( trigger.mListener != null && trigger.mListener != listener )
+            throw new IllegalStateException("trigger is already registered");
+        trigger.mListener = listener;
+        trigger.reset();
+        mTriggers = ListenerArrays.add(mTriggers, trigger);
+    }
+
+    /**
+     * Removes a registered {@link JoystickTrigger}.
+     * @param trigger	{@link JoystickTrigger} to remove.
+     */
+    void removeTrigger(JoystickTrigger trigger){
+        mTriggers = ListenerArrays.remove(mTriggers, trigger);
+        trigger.mListener = null;
+    }
+
+    /**
+     * Evaluates all triggers for the current state, performs haptic feedback
+     * and notifies listeners of fired triggers.
+     */
+    private void evaluateTriggers(boolean pressed, View view){
+        final JoystickTrigger[] vTriggers = mTriggers;
+        for( int i = 0; i < vTriggers.length; i++ ){
+            final JoystickTrigger vTrigger = vTriggers[i];
+            final int vEdge = vTrigger.evaluate(mState, pressed);
+            if( vEdge == 0 )
+                continue;
+
+            if( vTrigger.getHapticFeedback() != JoystickTrigger.NO_HAPTIC_FEEDBACK )
+                view.performHapticFeedback( vTrigger.getHapticFeedback() );
+            if( vTrigger.mListener != null )
+                vTrigger.mListener.onJoystickTrigger(vTrigger, vEdge, mState);
+        }
+    }
+
+}
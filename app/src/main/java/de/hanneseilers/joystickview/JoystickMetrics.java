@@ -0,0 +1,207 @@
+package de.hanneseilers.joystickview;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import android.os.Trace;
+import android.view.MotionEvent;
+
+/**
+ * Latency and throughput metrics of a {@link JoystickView}.
+ * Metrics are only collected if {@link #ENABLED} is set, which is read once from the
+ * system property {@code joystickview.metrics} (set it with
+ * {@code System.setProperty("joystickview.metrics", "true")} before the first
+ * {@link JoystickView} is created). If disabled, no metrics objects are created and
+ * all instrumentation is skipped by a static final check.
+ * If enabled, {@link Trace} sections are written as well.
+ * <p>
+ * Latencies are collected in histograms with power of two buckets in microseconds
+ * for these stages:
+ * <ul>
+ * <li>{@link #STAGE_INPUT_TO_STATE}: touch event time to processed stick state.
+ * 		Compares the event time with {@link System#nanoTime()}, which assumes both use
+ * 		{@code CLOCK_MONOTONIC} as on Android. On a plain JVM, e.g. in unit tests,
+ * 		the stage is meaningless. Event times have millisecond resolution.</li>
+ * <li>{@link #STAGE_STATE_TO_DISPATCH}: state posted to listener notification started.</li>
+ * <li>{@link #STAGE_DISPATCH_TO_RETURN}: listener notification started to all listeners returned.</li>
+ * <li>{@link #STAGE_DRAW}: duration of {@link JoystickView#onDraw(android.graphics.Canvas)}.</li>
+ * </ul>
+ * Recording does not allocate objects.
+ * @author H. Eilers
+ *
+ */
+public final class JoystickMetrics {
+
+    /** {@code true} if metrics are collected. */
+    public static final boolean ENABLED = Boolean.getBoolean("joystickview.metrics");
+
+    public static final int STAGE_INPUT_TO_STATE = 0;
+    public static final int STAGE_STATE_TO_DISPATCH = 1;
+    public static final int STAGE_DISPATCH_TO_RETURN = 2;
+    public static final int STAGE_DRAW = 3;
+    public static final int STAGE_COUNT = 4;
+
+    /** Number of histogram buckets. Bucket i counts latencies below 2^(i+1) microseconds. */
+    public static final int BUCKET_COUNT = 32;
+
+    private final AtomicLongArray mHistograms = new AtomicLongArray(STAGE_COUNT * BUCKET_COUNT);
+    private final AtomicLong mEventCount = new AtomicLong();
+
+
+    /**
+     * Counts a processed input event.
+     */
+    void recordEvent(){
+        mEventCount.incrementAndGet();
+    }
+
+    /**
+     * Records a latency.
+     * @param stage	Stage, one of the STAGE_* constants.
+     * @param nanos	Latency in nanoseconds.
+     */
+    void record(int stage, long nanos){
+        final long vMicros = Math.max(nanos / 1000, 1);
+        final int vBucket = Math.min( 63 - Long.numberOfLeadingZeros(vMicros), BUCKET_COUNT - 1 );
+        mHistograms.incrementAndGet(stage * BUCKET_COUNT + vBucket);
+    }
+
+    /**
+     * @param event	{@link MotionEvent}.
+     * @return		Event time in nanoseconds ({@code CLOCK_MONOTONIC} time base)
+     * 				from {@link MotionEvent#getEventTime()} in milliseconds.
+     * 				{@code MotionEvent#getEventTimeNanos()} (API 34) is not used,
+     * 				since calling it by reflection allocates on every event.
+     */
+    static long eventTimeNanos(MotionEvent event){
+        return event.getEventTime() * 1000000L;
+    }
+
+    /**
+     * Begins a {@link Trace} section.
+     * @param name	Section name.
+     */
+    static void beginSection(String name){
+        Trace.beginSection(name);
+    }
+
+    /**
+     * Ends the last {@link Trace} section of the calling thread.
+     */
+    static void endSection(){
+        Trace.endSection();
+    }
+
+    /**
+     * Copies current metrics into a snapshot.
+     * @param out	{@link Snapshot} to copy metrics into.
+     */
+    void snapshot(Snapshot out){
+        final long vNow = System.nanoTime();
+        final long vEventCount = mEventCount.get();
+
+        if( out.mSnapshotTime != 0 && vNow > out.mSnapshotTime )
+            out.mEventRate = (vEventCount - out.mEventCount) * 1e9f / (vNow - out.mSnapshotTime);
+        out.mSnapshotTime = vNow;
+        out.mEventCount = vEventCount;
+
+        for( int i = 0; i < STAGE_COUNT * BUCKET_COUNT; i++ )
+            out.mHistograms[i] = mHistograms.get(i);
+    }
+
+    /**
+     * Resets all metrics.
+     */
+    void reset(){
+        mEventCount.set(0);
+        for( int i = 0; i < STAGE_COUNT * BUCKET_COUNT; i++ )
+            mHistograms.set(i, 0);
+    }
+
+    /**
+     * Pollable copy of {@link JoystickMetrics}.
+     * Reuse one instance to poll without allocations; the event rate is
+     * calculated since the previous snapshot into the same instance.
+     * @author H. Eilers
+     *
+     */
+    public static class Snapshot {
+        private final long[] mHistograms = new long[STAGE_COUNT * BUCKET_COUNT];
+        private long mSnapshotTime;
+        private long mEventCount;
+        private float mEventRate;
+        long mCoalescedCount;
+        long mDroppedSampleCount;
+
+        /**
+         * @return	Number of processed input events.
+         */
+        public long getEventCount(){
+            return mEventCount;
+        }
+
+        /**
+         * @return	Input events per second since the previous snapshot.
+         */
+        public float getEventRate(){
+            return mEventRate;
+        }
+
+        /**
+         * @return	Number of states replaced by newer states before listener notification.
+         */
+        public long getCoalescedCount(){
+            return mCoalescedCount;
+        }
+
+        /**
+         * @return	Number of batch samples dropped because a batch was full.
+         */
+        public long getDroppedSampleCount(){
+            return mDroppedSampleCount;
+        }
+
+        /**
+         * @param stage		Stage, one of the STAGE_* constants.
+         * @param bucket	Bucket index from 0 to {@link JoystickMetrics#BUCKET_COUNT} - 1.
+         * @return			Number of latencies below 2^(bucket+1) and at least 2^bucket microseconds.
+         */
+        public long getBucket(int stage, int bucket){
+            return mHistograms[stage * BUCKET_COUNT + bucket];
+        }
+
+        /**
+         * @param stage	Stage, one of the STAGE_* constants.
+         * @return		Number of recorded latencies of a stage.
+         */
+        public long getCount(int stage){
+            long vCount = 0;
+            for( int i = 0; i < BUCKET_COUNT; i++ )
+                vCount += mHistograms[stage * BUCKET_COUNT + i];
+            return vCount;
+        }
+
+        /**
+         * @param stage			Stage, one of the STAGE_* constants.
+         * @param percentile	Percentile from 0 to 100.
+         * @return				Upper bound of the latency percentile in microseconds,
+         * 						0 if no latencies were recorded.
+         */
+        public long getPercentile(int stage, float percentile){
+            final long vCount = getCount(stage);
+            if( vCount == 0 )
+                return 0;
+
+            final long vRank = (long) Math.ceil( vCount * percentile / 100.0 );
+            long vSum = 0;
+            for( int i = 0; i < BUCKET_COUNT; i++ ){
+                vSum += mHistograms[stage * BUCKET_COUNT + i];
+                if( vSum >= vRank )
+                    return 1L << (i + 1);
+            }
+            return 1L << BUCKET_COUNT;
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package de.hanneseilers.joystickview;
+
+
+import de.hanneseilers.joystickview.JoystickView.StickOrientation;
+
+/**
+ * Mutable snapshot of a {@link JoystickView} stick state.
+ * Instances are reused to avoid allocations. A state passed to a listener
+ * is only valid during the callback, copy it with {@link #set(JoystickState)}
+ * to keep it.
+ * @author H. Eilers
+ *
+ */
+public class JoystickState {
+
+    private static final StickOrientation[] ORIENTATIONS = StickOrientation.values();
+
+    private float mXPos, mYPos;
+    private float mMagnitude, mAngle;
+    private int mOrientation;
+    private int mSector = DirectionEngine.NONE;
+    private long mTimestamp;
+
+
+    /**
+     * Sets state values.
+     * @param x				Stick x position in range of -100% to 100%.
+     * @param y				Stick y position in range of -100% to 100%.
+     * @param magnitude		Distance from center in range of 0% to 100%.
+     * @param angle			Angle in degrees.
+     * @param orientation	{@link StickOrientation} ordinal.
+     * @param timestamp		Timestamp in milliseconds ({@link android.os.SystemClock#uptimeMillis()} time base).
+     */
+    public void set(float x, float y, float magnitude, float angle, int orientation, long timestamp){
+        set(x, y, magnitude, angle, orientation, DirectionEngine.NONE, timestamp);
+    }
+
+    /**
+     * Sets state values including a direction sector.
+     * @param x				Stick x position in range of -100% to 100%.
+     * @param y				Stick y position in range of -100% to 100%.
+     * @param magnitude		Distance from center in range of 0% to 100%.
+     * @param angle			Angle in degrees.
+     * @param orientation	{@link StickOrientation} ordinal.
+     * @param sector		{@link DirectionEngine} sector or {@link DirectionEngine#NONE}.
+     * @param timestamp		Timestamp in milliseconds ({@link android.os.SystemClock#uptimeMillis()} time base).
+     */
+    public void set(float x, float y, float magnitude, float angle, int orientation, int sector, long timestamp){
+        mXPos = x;
+        mYPos = y;
+        mMagnitude = magnitude;
+        mAngle = angle;
+        mOrientation = orientation;
+        mSector = sector;
+        mTimestamp = timestamp;
+    }
+
+    /**
+     * Copies values of another state.
+     * @param state	{@link JoystickState} to copy.
+     */
+    public void set(JoystickState state){
+        set(state.mXPos, state.mYPos, state.mMagnitude, state.mAngle, state.mOrientation, state.mSector, state.mTimestamp);
+    }
+
+    /**
+     * @return	{@link Float} stick x position in range of -100% to 100%.
+     */
+    public float getX(){
+        return mXPos;
+    }
+
+    /**
+     * @return	{@link Float} stick y position in range of -100% to 100%.
+     */
+    public float getY(){
+        return mYPos;
+    }
+
+    /**
+     * @return	{@link Float} distance of stick to center in range of 0% to 100%.
+     */
+    public float getMagnitude(){
+        return mMagnitude;
+    }
+
+    /**
+     * @return	{@link Float} stick angle in degrees from 0 to 360.
+     * 			0 is east, angles increase counter-clockwise.
+     */
+    public float getAngle(){
+        return mAngle;
+    }
+
+    /**
+     * @return	{@link StickOrientation} ordinal.
+     */
+    public int getOrientationOrdinal(){
+        return mOrientation;
+    }
+
+    /**
+     * @return	{@link StickOrientation} stick orientation.
+     */
+    public StickOrientation getOrientation(){
+        return ORIENTATIONS[mOrientation];
+    }
+
+    /**
+     * @return	{@link DirectionEngine} sector or {@link DirectionEngine#NONE}
+     * 			if no direction engine is used or the stick is inside its threshold.
+     */
+    public int getSector(){
+        return mSector;
+    }
+
+    /**
+     * @return	Timestamp of state in milliseconds.
+     */
+    public long getTimestamp(){
+        return mTimestamp;
+    }
+
+    /**
+     * @param ordinal	{@link StickOrientation} ordinal.
+     * @return			{@link StickOrientation} without allocating a values array.
+     */
+    static StickOrientation orientationOf(int ordinal){
+        return ORIENTATIONS[ordinal];
+    }
+
+    @Override
+    public String toString() {
+        return "JoystickState[x=" + mXPos + ", y=" + mYPos + ", magnitude=" + mMagnitude
+                + ", angle=" + mAngle + ", orientation=" + getOrientation() + ", sector=" + mSector + "]";
+    }
+
+}
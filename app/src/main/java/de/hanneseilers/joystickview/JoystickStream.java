@@ -0,0 +1,332 @@
+package de.hanneseilers.joystickview;
+
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pull based stream of all processed stick states.
+ * States are published by a single writer thread into a preallocated ring buffer.
+ * Consumers open a {@link Cursor} with a backpressure strategy and poll states
+ * at their own pace, on their own thread:
+ * <ul>
+ * <li>{@link #BACKPRESSURE_LATEST}: only the newest state, older states are skipped.</li>
+ * <li>{@link #BACKPRESSURE_DROP_OLDEST}: up to N pending states, older states are skipped.</li>
+ * <li>{@link #BACKPRESSURE_DROP_NEWEST}: up to N pending states, states arriving while
+ * 		N states are pending are skipped.</li>
+ * <li>{@link #BACKPRESSURE_SAMPLE}: the newest state at most once every N milliseconds.</li>
+ * </ul>
+ * Publishing and polling do not lock and do not allocate. A consumer that falls
+ * behind by more than the ring capacity loses the overwritten states in any case.
+ * @author H. Eilers
+ *
+ */
+public class JoystickStream {
+
+    public static final int BACKPRESSURE_LATEST = 0;
+    public static final int BACKPRESSURE_DROP_OLDEST = 1;
+    public static final int BACKPRESSURE_DROP_NEWEST = 2;
+    public static final int BACKPRESSURE_SAMPLE = 3;
+
+    // Slot layout: stamp, timestamp, x and y bits, magnitude and angle bits, sector and orientation
+    private static final int SLOT_SIZE = 5;
+    private static final long STAMP_WRITING = -1;
+
+    private final AtomicLongArray mSlots;
+    private final int mCapacity;
+    private final int mMask;
+
+    // Sequence number of next state to publish
+    private volatile long mHead;
+
+    private volatile Cursor[] mCursors = new Cursor[0];
+
+
+    /**
+     * Constructor.
+     * @param capacity	Ring buffer capacity in states, rounded up to a power of two.
+     */
+    public JoystickStream(int capacity){
+        if( capacity <= 0 || capacity > (1 << 24) )
+            throw new IllegalArgumentException("capacity must be in range of 1 to 2^24");
+        int vCapacity = 1;
+        while( vCapacity < capacity )
+            vCapacity <<= 1;
+        mCapacity = vCapacity;
+        mMask = mCapacity - 1;
+        mSlots = new AtomicLongArray(mCapacity * SLOT_SIZE);
+    }
+
+    /**
+     * @return	Ring buffer capacity in states.
+     */
+    public int getCapacity(){
+        return mCapacity;
+    }
+
+    /**
+     * @return	{@code true} if cursors are open.
+     */
+    public boolean hasCursors(){
+        return mCursors.length > 0;
+    }
+
+    /**
+     * Publishes a state and wakes up waiting consumers.
+     * Must only be called by a single writer thread.
+     * @param state	{@link JoystickState} to publish.
+     */
+    void publish(JoystickState state){
+        final long vSequence = mHead;
+        final int vOffset = (int) (vSequence & mMask) * SLOT_SIZE;
+
+        mSlots.set(vOffset, STAMP_WRITING);
+        mSlots.set(vOffset + 1, state.getTimestamp());
+        mSlots.set(vOffset + 2, pack(state.getX(), state.getY()));
+        mSlots.set(vOffset + 3, pack(state.getMagnitude(), state.getAngle()));
+        mSlots.set(vOffset + 4, ((long) state.getSector() << 32) | state.getOrientationOrdinal());
+        mSlots.set(vOffset, vSequence + 1);
+        mHead = vSequence + 1;
+
+        final Cursor[] vCursors = mCursors;
+        for( int i = 0; i < vCursors.length; i++ ){
+            final Thread vWaiter = vCursors[i].mWaiter;
+            if( vWaiter != null )
+                LockSupport.unpark(vWaiter);
+        }
+    }
+
+    /**
+     * Reads a published state.
+     * @param sequence	Sequence number of state.
+     * @param out		{@link JoystickState} to copy state into.
+     * @return			{@code false} if state was already overwritten.
+     */
+    private boolean read(long sequence, JoystickState out){
+        final int vOffset = (int) (sequence & mMask) * SLOT_SIZE;
+        if( mSlots.get(vOffset) != sequence + 1 )
+            return false;
+
+        final long vTimestamp = mSlots.get(vOffset + 1);
+        final long vXY = mSlots.get(vOffset + 2);
+        final long vMagnitudeAngle = mSlots.get(vOffset + 3);
+        final long vSectorOrientation = mSlots.get(vOffset + 4);
+        if( mSlots.get(vOffset) != sequence + 1 )
+            return false;
+
+        out.set(high(vXY), low(vXY), high(vMagnitudeAngle), low(vMagnitudeAngle),
+                (int) vSectorOrientation, (int) (vSectorOrientation >> 32), vTimestamp);
+        return true;
+    }
+
+    private static long pack(float high, float low){
+        return ((long) Float.floatToRawIntBits(high) << 32) | (Float.floatToRawIntBits(low) & 0xFFFFFFFFL);
+    }
+
+    private static float high(long packed){
+        return Float.intBitsToFloat( (int) (packed >>> 32) );
+    }
+
+    private static float low(long packed){
+        return Float.intBitsToFloat( (int) packed );
+    }
+
+    /**
+     * Opens a cursor starting at the next published state. May be called from any thread.
+     * @param strategy	Backpressure strategy, one of the BACKPRESSURE_* constants.
+     * @param parameter	Maximum number of pending states for {@link #BACKPRESSURE_DROP_OLDEST}
+     * 					and {@link #BACKPRESSURE_DROP_NEWEST} (at most the capacity),
+     * 					interval in milliseconds for {@link #BACKPRESSURE_SAMPLE},
+     * 					ignored for {@link #BACKPRESSURE_LATEST}.
+     * @return			{@link Cursor}.
+     */
+    public synchronized Cursor openCursor(int strategy, long parameter){
+        switch( strategy ){
+            case BACKPRESSURE_LATEST:
+                break;
+            case BACKPRESSURE_DROP_OLDEST:
+            case BACKPRESSURE_DROP_NEWEST:
+                if( parameter <= 0 || parameter > mCapacity )
+                    throw new IllegalArgumentException("buffer size must be in range of 1 to " + mCapacity);
+                break;
+            case BACKPRESSURE_SAMPLE:
+                if( parameter <= 0 )
+                    throw new IllegalArgumentException("interval must be positive");
+                break;
+            default:
+                throw new IllegalArgumentException("unknown strategy " + strategy);
+        }
+
+        final Cursor vCursor = new Cursor(strategy, parameter, mHead);
+        mCursors = ListenerArrays.add(mCursors, vCursor);
+        return vCursor;
+    }
+
+    private synchronized void close(Cursor cursor){
+        mCursors = ListenerArrays.remove(mCursors, cursor);
+    }
+
+    /**
+     * Read position of one consumer in a {@link JoystickStream}.
+     * A cursor must only be polled by one thread at a time.
+     * @author H. Eilers
+     *
+     */
+    public class Cursor {
+        private final int mStrategy;
+        private final long mParameter;
+
+        // Sequence number of next state to read
+        private long mNext;
+
+        // Drop newest window: states from window end to skip target are dropped
+        private long mWindowEnd = -1;
+        private long mSkipTarget;
+
+        // Sample strategy
+        private long mLastDelivery;
+
+        private volatile Thread mWaiter;
+        private volatile boolean mClosed;
+        private long mDeliveredCount;
+        private long mDroppedCount;
+
+        private Cursor(int strategy, long parameter, long start){
+            mStrategy = strategy;
+            mParameter = strategy == BACKPRESSURE_SAMPLE ? parameter * 1000000L : parameter;
+            mNext = start;
+        }
+
+        /**
+         * Polls the next state according to the backpressure strategy. Does not block.
+         * @param out	{@link JoystickState} to copy state into.
+         * @return		{@code true} if a state was copied.
+         */
+        public boolean poll(JoystickState out){
+            while( !mClosed ){
+                final long vHead = mHead;
+                if( mNext >= vHead )
+                    return false;
+
+                final long vSequence = nextSequence(vHead);
+                if( vSequence < 0 )
+                    return false;
+
+                if( read(vSequence, out) ){
+                    mDroppedCount += vSequence - mNext;
+                    mNext = vSequence + 1;
+                    mDeliveredCount++;
+                    return true;
+                }
+
+                // overwritten by writer, continue at oldest available state
+                final long vOldest = mHead - mCapacity + 1;
+                if( vOldest > mNext ){
+                    mDroppedCount += vOldest - mNext;
+                    mNext = vOldest;
+                    mWindowEnd = -1;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param head	Current head sequence, greater than next sequence.
+         * @return		Sequence to read next, -1 if no state should be delivered yet.
+         */
+        private long nextSequence(long head){
+            switch( mStrategy ){
+                case BACKPRESSURE_LATEST:
+                    return head - 1;
+
+                case BACKPRESSURE_DROP_OLDEST:
+                    return Math.max( mNext, head - mParameter );
+
+                case BACKPRESSURE_DROP_NEWEST:
+                    if( mWindowEnd >= 0 && mNext >= mWindowEnd ){
+                        // window delivered, skip states that arrived while it was full
+                        mDroppedCount += mSkipTarget - mNext;
+                        mNext = mSkipTarget;
+                        mWindowEnd = -1;
+                        if( mNext >= head )
+                            return -1;
+                    }
+                    if( mWindowEnd < 0 && head - mNext > mParameter ){
+                        mWindowEnd = mNext + mParameter;
+                        mSkipTarget = head;
+                    }
+                    return mNext;
+
+                default:
+                    final long vNow = System.nanoTime();
+                    if( mLastDelivery != 0 && vNow - mLastDelivery < mParameter )
+                        return -1;
+                    mLastDelivery = vNow;
+                    return head - 1;
+            }
+        }
+
+        /**
+         * Polls the next state, waiting until one is available.
+         * @param out		{@link JoystickState} to copy state into.
+         * @param timeout	Maximum time to wait in milliseconds.
+         * @return			{@code true} if a state was copied, {@code false} on timeout,
+         * 					interrupt or if the cursor was closed.
+         */
+        public boolean poll(JoystickState out, long timeout){
+            final long vDeadline = System.nanoTime() + timeout * 1000000L;
+            while( true ){
+                if( poll(out) )
+                    return true;
+
+                long vWait = vDeadline - System.nanoTime();
+                if( vWait <= 0 || mClosed || Thread.currentThread().isInterrupted() )
+                    return false;
+
+                // waiter is set before checking the head, so a publish in between unparks
+                mWaiter = Thread.currentThread();
+                if( mNext >= mHead ){
+                    LockSupport.parkNanos(this, vWait);
+                } else if( mStrategy == BACKPRESSURE_SAMPLE ){
+                    // states pending, wait for the next sample interval
+                    vWait = Math.min( vWait, Math.max(mLastDelivery + mParameter - System.nanoTime(), 1) );
+                    LockSupport.parkNanos(this, vWait);
+                }
+                mWaiter = null;
+            }
+        }
+
+        /**
+         * @return	Number of states available to poll, before applying the backpressure strategy.
+         */
+        public long getPendingCount(){
+            return Math.max( mHead - mNext, 0 );
+        }
+
+        /**
+         * @return	Number of delivered states.
+         */
+        public long getDeliveredCount(){
+            return mDeliveredCount;
+        }
+
+        /**
+         * @return	Number of states skipped by the backpressure strategy or overwritten before polling.
+         */
+        public long getDroppedCount(){
+            return mDroppedCount;
+        }
+
+        /**
+         * Closes the cursor and wakes up a waiting consumer.
+         */
+        public void close(){
+            mClosed = true;
+            JoystickStream.this.close(this);
+            final Thread vWaiter = mWaiter;
+            if( vWaiter != null )
+                LockSupport.unpark(vWaiter);
+        }
+    }
+
+}
@@ -0,0 +1,391 @@
+package de.hanneseilers.joystickview;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Paint.Style;
+import de.hanneseilers.joystickview.R;
+
+/**
+ * Style attributes, drawing objects and drawing of a {@link JoystickView}.
+ * Styles read from attributes are shared: equal attribute values resolve to the same
+ * instance from a process wide cache, so views inflated with the same attributes share
+ * their {@link Paint}s and size dependent {@link Geometry}. Shared styles are immutable.
+ * A view that is customized by setters edits a private copy (copy on write).
+ * Shared styles must only be used on the UI thread.
+ * @author H. Eilers
+ *
+ */
+final class JoystickStyle {
+
+    // Style properties, used as bit mask of style changes
+    static final int STYLE_BACKGROUND = 1;
+    static final int STYLE_OUTER_BORDER = 1 << 1;
+    static final int STYLE_CROSS = 1 << 2;
+    static final int STYLE_STICK = 1 << 3;
+    static final int STYLE_STICK_INNER = 1 << 4;
+    static final int STYLE_STICK_BORDER = 1 << 5;
+    static final int STYLE_GRADIENT = 1 << 6;
+    static final int STYLE_GEOMETRY = 1 << 7;
+    static final int STYLE_STATIC_LAYER = STYLE_BACKGROUND | STYLE_OUTER_BORDER
+            | STYLE_CROSS | STYLE_GEOMETRY;
+    static final int STYLE_ALL = 0xFF;
+
+    private static final int CACHE_SIZE = 32;
+    private static final int GEOMETRY_CACHE_SIZE = 4;
+
+    private static final Map<JoystickStyle, JoystickStyle> sCache =
+            new LinkedHashMap<JoystickStyle, JoystickStyle>(CACHE_SIZE, 0.75f, true){
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<JoystickStyle, JoystickStyle> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    // Attributes
+    boolean mShowOuterBorder, mShowCross, mStickUseGradient, mShowStickBorder;
+    float mOuterBorderWidth, mCrossWidth, mStickBorderWidth;
+    float mStickSize;
+
+    int mOuterBorderColor, mCrossColor;
+    int mStickColor, mStickBorderColor, mStickInnerColor;
+    int mStickGradientOuterColor, mStickGradientInnerColor;
+    int mBackgroundColor;
+
+    int mBackgroundStyle;
+
+    // Drawing objects
+    Paint mPaintBackground;
+    Paint mPaintOuterBorder, mPaintStickBorder;
+    Paint mPaintCross;
+    Paint mPaintStickCircle, mPaintStickInnerCircle;
+
+    private boolean mShared;
+
+    // Recently used geometries, most recent first
+    private final Geometry[] mGeometries = new Geometry[GEOMETRY_CACHE_SIZE];
+
+
+    private JoystickStyle(){}
+
+    /**
+     * Reads style attributes and returns the shared style with equal attribute values.
+     * @param attr	{@link TypedArray} of {@link R.styleable#JoystickView}.
+     * @return		Shared {@link JoystickStyle}.
+     */
+    static JoystickStyle obtain(TypedArray attr){
+        final JoystickStyle vStyle = new JoystickStyle();
+
+        vStyle.mShowOuterBorder = attr.getBoolean(R.styleable.JoystickView_showOuterBorder, true);
+        vStyle.mOuterBorderWidth = attr.getDimension(R.styleable.JoystickView_outerBorderWidth, 1.5f);
+        vStyle.mOuterBorderColor = attr.getColor(R.styleable.JoystickView_outerBorderColor, Color.DKGRAY);
+
+        vStyle.mShowCross = attr.getBoolean(R.styleable.JoystickView_showCross, true);
+        vStyle.mCrossWidth = attr.getDimension(R.styleable.JoystickView_crossWidth, 1.0f);
+        vStyle.mCrossColor = attr.getColor(R.styleable.JoystickView_crossColor, Color.DKGRAY);
+
+        vStyle.mStickSize = attr.getFloat(R.styleable.JoystickView_stickSize, 15.0f);
+        vStyle.mStickColor = attr.getColor(R.styleable.JoystickView_stickColor, Color.LTGRAY);
+        vStyle.mStickInnerColor = attr.getColor(R.styleable.JoystickView_stickInnerColor, Color.GRAY);
+        vStyle.mStickUseGradient = attr.getBoolean(R.styleable.JoystickView_stickUseGradient, false);
+        vStyle.mStickGradientInnerColor = attr.getColor(R.styleable.JoystickView_stickInnerColor, Color.LTGRAY);
+        vStyle.mStickGradientOuterColor = attr.getColor(R.styleable.JoystickView_stickGradientOuterColor, Color.GRAY);
+
+        vStyle.mShowStickBorder = attr.getBoolean(R.styleable.JoystickView_showStickBorder, true);
+        vStyle.mStickBorderWidth = attr.getDimension(R.styleable.JoystickView_stickBorderWidth, 1.0f);
+        vStyle.mStickBorderColor = attr.getColor(R.styleable.JoystickView_stickBorderColor, Color.DKGRAY);
+
+        vStyle.mBackgroundStyle = attr.getInt(R.styleable.JoystickView_backgroundStyle, 0);
+        vStyle.mBackgroundColor = attr.getColor(R.styleable.JoystickView_backgroundColor, Color.BLACK);
+
+        synchronized( sCache ){
+            final JoystickStyle vShared = sCache.get(vStyle);
+            if( vShared != null )
+                return vShared;
+
+            // drawing objects are only created for new styles
+            vStyle.createPaints();
+            vStyle.updatePaints(STYLE_ALL);
+            vStyle.mShared = true;
+            sCache.put(vStyle, vStyle);
+            return vStyle;
+        }
+    }
+
+    /**
+     * @return	{@code true} if style is shared and must not be changed.
+     */
+    boolean isShared(){
+        return mShared;
+    }
+
+    /**
+     * @return	Private, editable copy of this style.
+     */
+    JoystickStyle copy(){
+        final JoystickStyle vCopy = new JoystickStyle();
+
+        vCopy.mShowOuterBorder = mShowOuterBorder;
+        vCopy.mShowCross = mShowCross;
+        vCopy.mStickUseGradient = mStickUseGradient;
+        vCopy.mShowStickBorder = mShowStickBorder;
+        vCopy.mOuterBorderWidth = mOuterBorderWidth;
+        vCopy.mCrossWidth = mCrossWidth;
+        vCopy.mStickBorderWidth = mStickBorderWidth;
+        vCopy.mStickSize = mStickSize;
+        vCopy.mOuterBorderColor = mOuterBorderColor;
+        vCopy.mCrossColor = mCrossColor;
+        vCopy.mStickColor = mStickColor;
+        vCopy.mStickBorderColor = mStickBorderColor;
+        vCopy.mStickInnerColor = mStickInnerColor;
+        vCopy.mStickGradientOuterColor = mStickGradientOuterColor;
+        vCopy.mStickGradientInnerColor = mStickGradientInnerColor;
+        vCopy.mBackgroundColor = mBackgroundColor;
+        vCopy.mBackgroundStyle = mBackgroundStyle;
+
+        vCopy.mPaintBackground = new Paint(mPaintBackground);
+        vCopy.mPaintOuterBorder = new Paint(mPaintOuterBorder);
+        vCopy.mPaintStickBorder = new Paint(mPaintStickBorder);
+        vCopy.mPaintCross = new Paint(mPaintCross);
+        vCopy.mPaintStickCircle = new Paint(mPaintStickCircle);
+        vCopy.mPaintStickInnerCircle = new Paint(mPaintStickInnerCircle);
+        return vCopy;
+    }
+
+    /**
+     * Initiates drawing objects.
+     */
+    private void createPaints(){
+        mPaintBackground = new Paint( Paint.ANTI_ALIAS_FLAG );
+        mPaintBackground.setStyle( Style.FILL );
+
+        mPaintOuterBorder = new Paint( Paint.ANTI_ALIAS_FLAG );
+        mPaintOuterBorder.setStyle( Style.STROKE );
+
+        mPaintCross = new Paint( Paint.ANTI_ALIAS_FLAG );
+
+        mPaintStickBorder = new Paint( Paint.ANTI_ALIAS_FLAG );
+        mPaintStickBorder.setStyle( Style.STROKE );
+
+        mPaintStickCircle = new Paint( Paint.ANTI_ALIAS_FLAG );
+        mPaintStickCircle.setStyle( Style.FILL );
+
+        mPaintStickInnerCircle = new Paint( Paint.ANTI_ALIAS_FLAG );
+        mPaintStickInnerCircle.setStyle( Style.FILL );
+    }
+
+    /**
+     * Updates only the drawing objects affected by style changes.
+     * @param changes	Bit mask of changed style properties (STYLE_* constants).
+     */
+    void updatePaints(int changes){
+        if( (changes & STYLE_BACKGROUND) != 0 )
+            mPaintBackground.setColor( mBackgroundColor );
+
+        if( (changes & STYLE_OUTER_BORDER) != 0 ){
+            mPaintOuterBorder.setColor( mOuterBorderColor );
+            mPaintOuterBorder.setStrokeWidth( mOuterBorderWidth );
+        }
+
+        if( (changes & STYLE_CROSS) != 0 ){
+            mPaintCross.setStrokeWidth( mCrossWidth );
+            mPaintCross.setColor( mCrossColor );
+        }
+
+        if( (changes & STYLE_STICK_BORDER) != 0 ){
+            mPaintStickBorder.setColor( mStickBorderColor );
+            mPaintStickBorder.setStrokeWidth( mStickBorderWidth );
+        }
+
+        if( (changes & STYLE_STICK) != 0 )
+            mPaintStickCircle.setColor( mStickColor );
+
+        if( (changes & STYLE_STICK_INNER) != 0 )
+            mPaintStickInnerCircle.setColor( mStickInnerColor );
+    }
+
+    /**
+     * Draws the static layers of a stick area: background, outer border and cross.
+     * @param canvas		{@link Canvas} to draw on.
+     * @param centerX		X position of area center.
+     * @param centerY		Y position of area center.
+     * @param radius		Outer border radius.
+     * @param crossLines	Cross lines of the area.
+     */
+    void drawStaticLayers(Canvas canvas, float centerX, float centerY, float radius, float[] crossLines){
+        if( mBackgroundStyle > 0 )
+            canvas.drawCircle(centerX, centerY, radius, mPaintBackground);
+        if( mShowOuterBorder )
+            canvas.drawCircle(centerX, centerY, radius, mPaintOuterBorder);
+        if( mShowCross )
+            canvas.drawLines(crossLines, mPaintCross);
+    }
+
+    /**
+     * Draws a stick.
+     * @param canvas		{@link Canvas} to draw on.
+     * @param x				X position of stick center.
+     * @param y				Y position of stick center.
+     * @param radius		Stick radius.
+     * @param innerRadius	Radius of inner stick circle.
+     * @param stickCircle	{@link Paint} of the stick circle, may carry a gradient shader of the view.
+     */
+    void drawStick(Canvas canvas, float x, float y, float radius, float innerRadius, Paint stickCircle){
+        canvas.drawCircle(x, y, radius, stickCircle);
+        canvas.drawCircle(x, y, innerRadius, mPaintStickInnerCircle);
+        if( mShowStickBorder )
+            canvas.drawCircle(x, y, radius, mPaintStickBorder);
+    }
+
+    /**
+     * Removes cached geometries after changes of geometry attributes.
+     */
+    void invalidateGeometry(){
+        synchronized( mGeometries ){
+            for( int i = 0; i < mGeometries.length; i++ )
+                mGeometries[i] = null;
+        }
+    }
+
+    /**
+     * Returns the geometry of this style for a view size, from a small per style cache.
+     * @param w				View width.
+     * @param h				View height.
+     * @param paddingStart	View start padding.
+     * @param paddingEnd	View end padding.
+     * @return				{@link Geometry}.
+     */
+    Geometry getGeometry(int w, int h, int paddingStart, int paddingEnd){
+        synchronized( mGeometries ){
+            Geometry vGeometry = null;
+            int i = 0;
+            for( ; i < mGeometries.length; i++ ){
+                final Geometry vCached = mGeometries[i];
+                if( vCached == null )
+                    break;
+                if( vCached.matches(w, h, paddingStart, paddingEnd) ){
+                    vGeometry = vCached;
+                    break;
+                }
+            }
+            if( vGeometry == null ){
+                vGeometry = new Geometry(this, w, h, paddingStart, paddingEnd);
+                i = Math.min(i, mGeometries.length - 1);
+            }
+
+            // move to front
+            System.arraycopy(mGeometries, 0, mGeometries, 1, i);
+            mGeometries[0] = vGeometry;
+            return vGeometry;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if( this == o )
+            return true;
+        if( !(o instanceof JoystickStyle) )
+            return false;
+
+        final JoystickStyle vStyle = (JoystickStyle) o;
+        return mShowOuterBorder == vStyle.mShowOuterBorder
+                && mShowCross == vStyle.mShowCross
+                && mStickUseGradient == vStyle.mStickUseGradient
+                && mShowStickBorder == vStyle.mShowStickBorder
+                && Float.compare(mOuterBorderWidth, vStyle.mOuterBorderWidth) == 0
+                && Float.compare(mCrossWidth, vStyle.mCrossWidth) == 0
+                && Float.compare(mStickBorderWidth, vStyle.mStickBorderWidth) == 0
+                && Float.compare(mStickSize, vStyle.mStickSize) == 0
+                && mOuterBorderColor == vStyle.mOuterBorderColor
+                && mCrossColor == vStyle.mCrossColor
+                && mStickColor == vStyle.mStickColor
+                && mStickBorderColor == vStyle.mStickBorderColor
+                && mStickInnerColor == vStyle.mStickInnerColor
+                && mStickGradientOuterColor == vStyle.mStickGradientOuterColor
+                && mStickGradientInnerColor == vStyle.mStickGradientInnerColor
+                && mBackgroundColor == vStyle.mBackgroundColor
+                && mBackgroundStyle == vStyle.mBackgroundStyle;
+    }
+
+    @Override
+    public int hashCode() {
+        int vHash = (mShowOuterBorder ? 1 : 0) | (mShowCross ? 2 : 0)
+                | (mStickUseGradient ? 4 : 0) | (mShowStickBorder ? 8 : 0);
+        vHash = 31 * vHash + Float.floatToIntBits(mOuterBorderWidth);
+        vHash = 31 * vHash + Float.floatToIntBits(mCrossWidth);
+        vHash = 31 * vHash + Float.floatToIntBits(mStickBorderWidth);
+        vHash = 31 * vHash + Float.floatToIntBits(mStickSize);
+        vHash = 31 * vHash + mOuterBorderColor;
+        vHash = 31 * vHash + mCrossColor;
+        vHash = 31 * vHash + mStickColor;
+        vHash = 31 * vHash + mStickBorderColor;
+        vHash = 31 * vHash + mStickInnerColor;
+        vHash = 31 * vHash + mStickGradientOuterColor;
+        vHash = 31 * vHash + mStickGradientInnerColor;
+        vHash = 31 * vHash + mBackgroundColor;
+        vHash = 31 * vHash + mBackgroundStyle;
+        return vHash;
+    }
+
+    /**
+     * Immutable dimensions of a style for one view size.
+     * @author H. Eilers
+     *
+     */
+    static final class Geometry {
+        private final int mWidth, mHeight, mPaddingStart, mPaddingEnd;
+
+        final float mViewCenterX, mViewCenterY;
+        final float mStickRadius, mStickInnerCircleRadius;
+        final float mOuterBorderRadius;
+
+        /** Shared, must not be modified. */
+        final float[] mCrossLines = new float[8];
+
+        Geometry(JoystickStyle style, int w, int h, int paddingStart, int paddingEnd){
+            mWidth = w;
+            mHeight = h;
+            mPaddingStart = paddingStart;
+            mPaddingEnd = paddingEnd;
+
+            // View
+            mViewCenterX = w / 2.0f;
+            mViewCenterY = h / 2.0f;
+
+            int vShortestSide = w;
+            if( w > h )
+                vShortestSide = h;
+
+            // Stick
+            mStickRadius = vShortestSide * (style.mStickSize/100.0f);
+            mStickInnerCircleRadius = mStickRadius * 0.6f;
+
+            // Outer Border
+            mOuterBorderRadius = ((vShortestSide - paddingStart - paddingEnd) / 2.0f)
+                    - mStickRadius - style.mOuterBorderWidth;
+
+            // Cross
+            mCrossLines[0] = mViewCenterX - mOuterBorderRadius;
+            mCrossLines[1] = mViewCenterY;
+            mCrossLines[2] = mViewCenterX + mOuterBorderRadius;
+            mCrossLines[3] = mViewCenterY;
+            mCrossLines[4] = mViewCenterX;
+            mCrossLines[5] = mViewCenterY + mOuterBorderRadius;
+            mCrossLines[6] = mViewCenterX;
+            mCrossLines[7] = mViewCenterY - mOuterBorderRadius;
+        }
+
+        boolean matches(int w, int h, int paddingStart, int paddingEnd){
+            return mWidth == w && mHeight == h
+                    && mPaddingStart == paddingStart && mPaddingEnd == paddingEnd;
+        }
+    }
+
+}
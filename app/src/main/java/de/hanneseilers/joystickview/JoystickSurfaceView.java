@@ -0,0 +1,490 @@
+package de.hanneseilers.joystickview;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.Shader;
+import android.support.v4.view.MotionEventCompat;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+import de.hanneseilers.joystickview.JoystickView.OnJoystickStateListener;
+import de.hanneseilers.joystickview.JoystickView.OnJoystickTriggerListener;
+import de.hanneseilers.joystickview.JoystickView.OnPositionChangedListener;
+import de.hanneseilers.joystickview.R;
+
+/**
+ * Joystick view that renders on a dedicated render thread.
+ * Touch input runs through the same input path as in {@link JoystickView}: output pipeline,
+ * direction engine, triggers, emission filter and a rest state that is always emitted on
+ * release and cancel. Drawing uses the same style and geometry, but is independent of the
+ * UI thread load. The UI thread publishes the stick position lock-free and wakes the
+ * render thread, which draws at most at the configured frame rate.
+ * Uses the same attributes as {@link JoystickView}, except for attributes of features
+ * drawn or animated on the UI thread (floating, spring return, frame synchronization,
+ * historical sampling, static layer caching and prediction).
+ * Like any {@link SurfaceView} the surface is placed behind the window by default,
+ * set {@code zOrderOnTop} to place a transparent surface on top of the window.
+ * @author H. Eilers
+ *
+ */
+public class JoystickSurfaceView extends SurfaceView implements SurfaceHolder.Callback {
+
+    // Style, private copy whose paints are only used by the render thread after construction
+    private final JoystickStyle mStyle;
+    private float mHitSlop = 10.0f;
+
+    // Geometry, replaced on size changes
+    private volatile SurfaceGeometry mGeometry;
+
+    // Touch and state, only used by UI thread
+    private int mActivePointer = MotionEvent.INVALID_POINTER_ID;
+    private long mEventTime;
+    private final JoystickInput mInput = new JoystickInput();
+    private PositionDispatcher mPositionDispatcher = new PositionDispatcher();
+
+    // Published to other threads
+    private final AtomicLong mPublishedStickCenter = new AtomicLong();
+
+    // Rendering
+    private volatile long mFrameInterval = 1000000000L / 60;
+    private RenderThread mRenderThread;
+
+
+    /**
+     * Constructor
+     * @param context	{@link Context}.
+     * @param attrs		{@link AttributeSet}.
+     */
+    public JoystickSurfaceView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        // get attributes
+        TypedArray vAttr = context.getTheme().obtainStyledAttributes(
+                attrs, R.styleable.JoystickView, 0 , 0);
+
+        final boolean vZOrderOnTop;
+        try{
+
+            mStyle = JoystickStyle.obtain(vAttr).copy();
+            mInput.readAttributes(vAttr);
+            setHitSlop( vAttr.getFloat(R.styleable.JoystickView_hitSlop, mHitSlop) );
+            vZOrderOnTop = vAttr.getBoolean(R.styleable.JoystickView_zOrderOnTop, false);
+
+        } finally {
+            vAttr.recycle();
+        }
+
+        if( vZOrderOnTop ){
+            setZOrderOnTop(true);
+            getHolder().setFormat( PixelFormat.TRANSPARENT );
+        }
+        getHolder().addCallback(this);
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        mRenderThread = new RenderThread(holder);
+        mRenderThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        final SurfaceGeometry vGeometry = new SurfaceGeometry(
+                mStyle.getGeometry(width, height, getPaddingStart(), getPaddingEnd()) );
+        mInput.mEngine.setGeometry(vGeometry.mCenterX, vGeometry.mCenterY, vGeometry.mOuterBorderRadius);
+        mGeometry = vGeometry;
+
+        // a held stick is released, listeners must not keep a position of the old geometry
+        if( mActivePointer != MotionEvent.INVALID_POINTER_ID ){
+            mActivePointer = MotionEvent.INVALID_POINTER_ID;
+            centerStick(vGeometry);
+        } else {
+            mInput.mEngine.reset();
+            publishStickCenter(vGeometry.mCenterX, vGeometry.mCenterY);
+        }
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // surface must not be used after returning
+        final RenderThread vThread = mRenderThread;
+        mRenderThread = null;
+        if( vThread != null )
+            vThread.quit();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mPositionDispatcher.release();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        final SurfaceGeometry vGeometry = mGeometry;
+        if( vGeometry == null )
+            return true;
+
+        final int vAction = MotionEventCompat.getActionMasked(event);
+        int vPointerIndex;
+        float xPos;
+        float yPos;
+
+        mEventTime = event.getEventTime();
+
+        switch(vAction){
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // ignore further pointers while stick is grabbed
+                if( mActivePointer != MotionEvent.INVALID_POINTER_ID )
+                    break;
+
+                // get touch position
+                vPointerIndex = MotionEventCompat.getActionIndex(event);
+                xPos = MotionEventCompat.getX(event, vPointerIndex);
+                yPos = MotionEventCompat.getY(event, vPointerIndex);
+
+                // check if touch is in stick radius plus hit slop
+                final float vDX = xPos - mInput.mEngine.getStickX();
+                final float vDY = yPos - mInput.mEngine.getStickY();
+                if( vDX*vDX + vDY*vDY <= vGeometry.mStickHitRadiusSq ){
+                    mActivePointer = MotionEventCompat.getPointerId(event, vPointerIndex);
+                    setStickCenter(xPos, yPos);
+                }
+                break;
+
+            case MotionEvent.ACTION_MOVE:
+                if( mActivePointer != MotionEvent.INVALID_POINTER_ID ){
+                    vPointerIndex = MotionEventCompat.findPointerIndex(event, mActivePointer);
+                    if( vPointerIndex >= 0 )
+                        setStickCenter( MotionEventCompat.getX(event, vPointerIndex),
+                                MotionEventCompat.getY(event, vPointerIndex) );
+                }
+                break;
+
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mActivePointer = MotionEvent.INVALID_POINTER_ID;
+                centerStick(vGeometry);
+                break;
+
+            case MotionEvent.ACTION_POINTER_UP:
+                vPointerIndex = MotionEventCompat.getActionIndex(event);
+                if( MotionEventCompat.getPointerId(event, vPointerIndex) == mActivePointer ){
+                    mActivePointer = MotionEvent.INVALID_POINTER_ID;
+                    centerStick(vGeometry);
+                }
+                break;
+        }
+
+        return true;
+    }
+
+    /**
+     * Sets the position of the stick, publishes it to the render thread and notifies listeners.
+     * @param centerX	X position of stick center.
+     * @param centerY	Y position of stick center.
+     */
+    private void setStickCenter(float centerX, float centerY){
+        mInput.process(centerX, centerY, mEventTime, mActivePointer != MotionEvent.INVALID_POINTER_ID, this);
+        publishStickCenter( mInput.mEngine.getStickX(), mInput.mEngine.getStickY() );
+
+        if( mInput.acceptEmission() )
+            mPositionDispatcher.post(mInput.mState);
+    }
+
+    /**
+     * Moves the stick to center and notifies listeners.
+     * Filter states of the output pipeline are reset first, so the rest state is always 0,0.
+     * The rest state bypasses the {@link EmissionFilter}.
+     * @param geometry	Current {@link SurfaceGeometry}.
+     */
+    private void centerStick(SurfaceGeometry geometry){
+        mInput.reset();
+        setStickCenter(geometry.mCenterX, geometry.mCenterY);
+    }
+
+    /**
+     * Publishes a stick position to the render thread without locking and wakes it up.
+     * @param x	X position of stick center.
+     * @param y	Y position of stick center.
+     */
+    private void publishStickCenter(float x, float y){
+        mPublishedStickCenter.set( ((long) Float.floatToRawIntBits(x) << 32)
+                | (Float.floatToRawIntBits(y) & 0xFFFFFFFFL) );
+
+        final RenderThread vThread = mRenderThread;
+        if( vThread != null )
+            vThread.requestFrame();
+    }
+
+    /**
+     * Registers a {@link OnPositionChangedListener}.
+     * @param listener	{@link OnPositionChangedListener} to register.
+     */
+    public void setOnPositionChangedListener(OnPositionChangedListener listener){
+        mPositionDispatcher.addPositionListener(listener);
+    }
+
+    /**
+     * Removes a registered {@link OnPositionChangedListener}.
+     * @param listener	{@link OnPositionChangedListener} to remove.
+     */
+    public void removeOnPositionChangedListener(OnPositionChangedListener listener){
+        mPositionDispatcher.removePositionListener(listener);
+    }
+
+    /**
+     * Registers a {@link OnJoystickStateListener}.
+     * @param listener	{@link OnJoystickStateListener} to register.
+     */
+    public void addOnJoystickStateListener(OnJoystickStateListener listener){
+        mPositionDispatcher.addStateListener(listener);
+    }
+
+    /**
+     * Removes a registered {@link OnJoystickStateListener}.
+     * @param listener	{@link OnJoystickStateListener} to remove.
+     */
+    public void removeOnJoystickStateListener(OnJoystickStateListener listener){
+        mPositionDispatcher.removeStateListener(listener);
+    }
+
+    /**
+     * Registers a {@link JoystickTrigger}, see
+     * {@link JoystickView#addTrigger(JoystickTrigger, OnJoystickTriggerListener)}.
+     * Must be called on the UI thread.
+     * @param trigger	{@link JoystickTrigger} to evaluate.
+     * @param listener	{@link OnJoystickTriggerListener} to notify, or {@code null} if the
+     * 					trigger only performs haptic feedback.
+     */
+    public void addTrigger(JoystickTrigger trigger, OnJoystickTriggerListener listener){
+        mInput.addTrigger(trigger, listener);
+    }
+
+    /**
+     * Removes a registered {@link JoystickTrigger}. Must be called on the UI thread.
+     * @param trigger	{@link JoystickTrigger} to remove.
+     */
+    public void removeTrigger(JoystickTrigger trigger){
+        mInput.removeTrigger(trigger);
+    }
+
+    /**
+     * @return	{@link EmissionFilter} deciding which states are emitted to listeners.
+     */
+    public EmissionFilter getEmissionFilter(){
+        return mInput.mEmissionFilter;
+    }
+
+    public float getHitSlop(){
+        return mHitSlop;
+    }
+
+    /**
+     * @param aHitSlop	Additional touch radius around the stick in percent of the stick radius.
+     * 					Applied on the next size change.
+     */
+    public void setHitSlop(float aHitSlop){
+        if( aHitSlop < 0.0f )
+            throw new IllegalArgumentException("hit slop must not be negative");
+        mHitSlop = aHitSlop;
+    }
+
+    /**
+     * Sets the {@link PositionDispatcher} used to notify listeners.
+     * Already registered listeners are not moved to the new dispatcher.
+     * @param dispatcher	{@link PositionDispatcher}.
+     */
+    public void setPositionDispatcher(PositionDispatcher dispatcher){
+        if( dispatcher == null )
+            throw new IllegalArgumentException("dispatcher must not be null");
+        mPositionDispatcher.release();
+        mPositionDispatcher = dispatcher;
+    }
+
+    /**
+     * Copies the latest stick state. May be called from any thread.
+     * @param out	{@link JoystickState} to copy state into.
+     * @return		Sequence number of the copied state.
+     */
+    public int readState(JoystickState out){
+        return mInput.mPublishedState.read(out);
+    }
+
+    /**
+     * @return	{@link JoystickEngine} calculating stick positions of this view,
+     * 			e.g. to set an {@link OutputPipeline} or {@link DirectionEngine}.
+     */
+    public JoystickEngine getEngine(){
+        return mInput.mEngine;
+    }
+
+    /**
+     * @return	Maximum number of frames per second drawn by the render thread.
+     */
+    public float getFrameRate(){
+        return 1e9f / mFrameInterval;
+    }
+
+    /**
+     * @param aFrameRate	Maximum number of frames per second drawn by the render thread.
+     * 						Frames are only drawn if the stick moved.
+     */
+    public void setFrameRate(float aFrameRate){
+        if( !(aFrameRate > 0.0f) )
+            throw new IllegalArgumentException("frame rate must be positive");
+        mFrameInterval = (long) (1e9f / aFrameRate);
+    }
+
+    /**
+     * @return	Number of frames drawn by the current render thread.
+     */
+    public long getRenderedFrameCount(){
+        final RenderThread vThread = mRenderThread;
+        return vThread != null ? vThread.mFrameCount : 0;
+    }
+
+    /**
+     * Draws one frame.
+     * @param canvas	{@link Canvas} of the surface.
+     * @param geometry	{@link SurfaceGeometry} to draw.
+     * @param stickX	X position of stick center.
+     * @param stickY	Y position of stick center.
+     */
+    private void drawFrame(Canvas canvas, SurfaceGeometry geometry, float stickX, float stickY){
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+
+        final JoystickStyle.Geometry vGeometry = geometry.mGeometry;
+        mStyle.drawStaticLayers(canvas, vGeometry.mViewCenterX, vGeometry.mViewCenterY,
+                vGeometry.mOuterBorderRadius, vGeometry.mCrossLines);
+
+        // style is a private copy, so the shader can be set on its paint
+        mStyle.mPaintStickCircle.setShader( geometry.mStickShader );
+        mStyle.drawStick(canvas, stickX, stickY, vGeometry.mStickRadius, vGeometry.mStickInnerCircleRadius,
+                mStyle.mPaintStickCircle);
+    }
+
+    /**
+     * Immutable dimensions of the stick area for one surface size,
+     * based on the shared {@link JoystickStyle.Geometry}.
+     * @author H. Eilers
+     *
+     */
+    private class SurfaceGeometry {
+        private final JoystickStyle.Geometry mGeometry;
+        private final float mCenterX, mCenterY;
+        private final float mOuterBorderRadius;
+        private final float mStickHitRadiusSq;
+        private final Shader mStickShader;
+
+        SurfaceGeometry(JoystickStyle.Geometry geometry){
+            mGeometry = geometry;
+            mCenterX = geometry.mViewCenterX;
+            mCenterY = geometry.mViewCenterY;
+            mOuterBorderRadius = geometry.mOuterBorderRadius;
+
+            final float vStickHitRadius = geometry.mStickRadius * (1.0f + mHitSlop/100.0f);
+            mStickHitRadiusSq = vStickHitRadius * vStickHitRadius;
+
+            mStickShader = mStyle.mStickUseGradient && geometry.mStickRadius > 0.0f
+                    ? GradientCache.get(mCenterX, mCenterY, geometry.mStickRadius,
+                            mStyle.mStickGradientInnerColor, mStyle.mStickGradientOuterColor)
+                    : null;
+        }
+    }
+
+    /**
+     * Render thread of one surface lifetime.
+     * Sleeps until a frame is requested and draws at most one frame per frame interval.
+     * @author H. Eilers
+     *
+     */
+    private class RenderThread extends Thread {
+        private final SurfaceHolder mHolder;
+        private volatile boolean mRunning = true;
+        private volatile boolean mFrameRequested = true;
+        private volatile long mFrameCount;
+
+        RenderThread(SurfaceHolder holder){
+            super("JoystickSurfaceView-Render");
+            mHolder = holder;
+        }
+
+        /**
+         * Requests a frame. Does not lock, may be called from any thread.
+         */
+        void requestFrame(){
+            mFrameRequested = true;
+            LockSupport.unpark(this);
+        }
+
+        /**
+         * Stops rendering and waits for the thread to finish.
+         */
+        void quit(){
+            mRunning = false;
+            LockSupport.unpark(this);
+
+            boolean vInterrupted = false;
+            while( isAlive() ){
+                try{
+                    join();
+                } catch (InterruptedException e) {
+                    vInterrupted = true;
+                }
+            }
+            if( vInterrupted )
+                Thread.currentThread().interrupt();
+        }
+
+        @Override
+        public void run() {
+            long vNextFrameTime = System.nanoTime();
+
+            while( mRunning ){
+                if( !mFrameRequested ){
+                    LockSupport.park(this);
+                    continue;
+                }
+
+                // frame pacing
+                final long vWait = vNextFrameTime - System.nanoTime();
+                if( vWait > 0 ){
+                    LockSupport.parkNanos(this, vWait);
+                    continue;
+                }
+                mFrameRequested = false;
+
+                final SurfaceGeometry vGeometry = mGeometry;
+                if( vGeometry == null )
+                    continue;
+
+                final long vStickCenter = mPublishedStickCenter.get();
+                final Canvas vCanvas = mHolder.lockCanvas();
+                if( vCanvas == null )
+                    continue;
+                try{
+                    drawFrame(vCanvas, vGeometry,
+                            Float.intBitsToFloat( (int) (vStickCenter >>> 32) ),
+                            Float.intBitsToFloat( (int) vStickCenter ));
+                } finally {
+                    mHolder.unlockCanvasAndPost(vCanvas);
+                }
+
+                mFrameCount++;
+                vNextFrameTime = System.nanoTime() + mFrameInterval;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+package de.hanneseilers.joystickview;
+
+
+import de.hanneseilers.joystickview.JoystickView.OnJoystickTriggerListener;
+
+/**
+ * Condition on stick states a listener subscribes to, e.g. crossing 90% magnitude,
+ * entering or leaving the dead zone, entering a set of {@link DirectionEngine} sectors
+ * or releasing the stick.
+ * A trigger fires on edges of its condition: when the condition becomes true
+ * ({@link #EDGE_ENTER}) or false ({@link #EDGE_LEAVE}). Conditions are reduced to
+ * primitive comparisons when the trigger is created, so evaluating a trigger for
+ * every sample is cheap and does not allocate objects.
+ * Triggers are evaluated by {@link JoystickView} for every processed sample, see
+ * {@link JoystickView#addTrigger(JoystickTrigger, OnJoystickTriggerListener)}.
+ * Instances are not thread safe and can only be added to one view.
+ * @author H. Eilers
+ *
+ */
+public class JoystickTrigger {
+
+    public static final int EDGE_ENTER = 1;
+    public static final int EDGE_LEAVE = 1 << 1;
+    public static final int EDGE_BOTH = EDGE_ENTER | EDGE_LEAVE;
+
+    /** Haptic feedback disabled. */
+    public static final int NO_HAPTIC_FEEDBACK = -1;
+
+    private static final int CONDITION_MAGNITUDE_ABOVE = 0;
+    private static final int CONDITION_MAGNITUDE_BELOW = 1;
+    private static final int CONDITION_SECTORS = 2;
+    private static final int CONDITION_SECTOR_CHANGE = 3;
+    private static final int CONDITION_PRESSED = 4;
+
+    private static final int MAX_SECTORS = 360;
+
+    // Compiled condition
+    private final int mCondition;
+    private final int mEdges;
+    private float mEnterThreshold, mLeaveThreshold;
+    private final long[] mSectorMask;
+
+    private int mHapticFeedback = NO_HAPTIC_FEEDBACK;
+    OnJoystickTriggerListener mListener;
+
+    // Evaluation state
+    private boolean mActive;
+    private int mLastSector;
+
+
+    private JoystickTrigger(int condition, int edges, float threshold, long[] sectorMask){
+        if( (edges & EDGE_BOTH) == 0 || (edges & ~EDGE_BOTH) != 0 )
+            throw new IllegalArgumentException("edges must be a combination of EDGE_ENTER and EDGE_LEAVE");
+        mCondition = condition;
+        mEdges = edges;
+        mEnterThreshold = threshold;
+        mLeaveThreshold = threshold;
+        mSectorMask = sectorMask;
+        reset();
+    }
+
+    /**
+     * @param threshold	Magnitude in percent.
+     * @param edges		Edges to fire on: {@link #EDGE_ENTER} when the magnitude rises to the
+     * 					threshold, {@link #EDGE_LEAVE} when it falls below again, or {@link #EDGE_BOTH}.
+     * @return			{@link JoystickTrigger} for magnitudes at or above a threshold.
+     */
+    public static JoystickTrigger magnitudeAbove(float threshold, int edges){
+        return new JoystickTrigger(CONDITION_MAGNITUDE_ABOVE, edges, threshold, null);
+    }
+
+    /**
+     * The condition is true at rest, so entering fires when the stick returns into the zone.
+     * @param threshold	Magnitude in percent, e.g. the dead zone size.
+     * @param edges		Edges to fire on: {@link #EDGE_ENTER} when the magnitude falls below the
+     * 					threshold, {@link #EDGE_LEAVE} when it rises to it, or {@link #EDGE_BOTH}.
+     * @return			{@link JoystickTrigger} for magnitudes below a threshold.
+     */
+    public static JoystickTrigger magnitudeBelow(float threshold, int edges){
+        return new JoystickTrigger(CONDITION_MAGNITUDE_BELOW, edges, threshold, null);
+    }
+
+    /**
+     * Requires a {@link DirectionEngine}.
+     * @param edges		Edges to fire on: {@link #EDGE_ENTER} when the stick enters one of the
+     * 					sectors from outside the set, {@link #EDGE_LEAVE} when it leaves the set,
+     * 					or {@link #EDGE_BOTH}.
+     * @param sectors	{@link DirectionEngine} sector numbers.
+     * @return			{@link JoystickTrigger} for a set of sectors.
+     */
+    public static JoystickTrigger sectors(int edges, int... sectors){
+        final long[] vMask = new long[(MAX_SECTORS + 63) / 64];
+        for( int i = 0; i < sectors.length; i++ ){
+            final int vSector = sectors[i];
+            if( vSector < 0 || vSector >= MAX_SECTORS )
+                throw new IllegalArgumentException("sector must be in range of 0 to " + (MAX_SECTORS - 1));
+            vMask[vSector >>> 6] |= 1L << vSector;
+        }
+        return new JoystickTrigger(CONDITION_SECTORS, edges, 0.0f, vMask);
+    }
+
+    /**
+     * Requires a {@link DirectionEngine}. Fires {@link #EDGE_ENTER} on every sector change,
+     * including changes to and from {@link DirectionEngine#NONE}.
+     * @return	{@link JoystickTrigger} for sector changes.
+     */
+    public static JoystickTrigger sectorChange(){
+        return new JoystickTrigger(CONDITION_SECTOR_CHANGE, EDGE_ENTER, 0.0f, null);
+    }
+
+    /**
+     * @param edges	Edges to fire on: {@link #EDGE_ENTER} when the stick is grabbed,
+     * 				{@link #EDGE_LEAVE} when it is released, or {@link #EDGE_BOTH}.
+     * @return		{@link JoystickTrigger} for the stick being held by a pointer.
+     */
+    public static JoystickTrigger pressed(int edges){
+        return new JoystickTrigger(CONDITION_PRESSED, edges, 0.0f, null);
+    }
+
+    /**
+     * @return	{@link JoystickTrigger} firing when the stick is released.
+     */
+    public static JoystickTrigger release(){
+        return pressed(EDGE_LEAVE);
+    }
+
+    /**
+     * Sets a hysteresis band for magnitude conditions, so noise around the
+     * threshold does not fire repeatedly.
+     * @param aHysteresis	Magnitude in percent the condition stays true beyond the threshold.
+     */
+    public void setHysteresis(float aHysteresis){
+        if( aHysteresis < 0.0f )
+            throw new IllegalArgumentException("hysteresis must not be negative");
+        if( mCondition == CONDITION_MAGNITUDE_ABOVE )
+            mLeaveThreshold = mEnterThreshold - aHysteresis;
+        else if( mCondition == CONDITION_MAGNITUDE_BELOW )
+            mLeaveThreshold = mEnterThreshold + aHysteresis;
+        else
+            throw new IllegalStateException("hysteresis only applies to magnitude triggers");
+    }
+
+    public int getHapticFeedback(){
+        return mHapticFeedback;
+    }
+
+    /**
+     * @param aHapticFeedback	{@link android.view.HapticFeedbackConstants} constant performed
+     * 							by the view when the trigger fires, or {@link #NO_HAPTIC_FEEDBACK}.
+     */
+    public void setHapticFeedback(int aHapticFeedback){
+        mHapticFeedback = aHapticFeedback;
+    }
+
+    /**
+     * @return	Edges the trigger fires on.
+     */
+    public int getEdges(){
+        return mEdges;
+    }
+
+    /**
+     * @return	{@code true} if the condition was true for the last evaluated state.
+     */
+    public boolean isActive(){
+        return mActive;
+    }
+
+    /**
+     * Resets the condition to the stick at rest.
+     */
+    public void reset(){
+        mActive = mCondition == CONDITION_MAGNITUDE_BELOW;
+        mLastSector = DirectionEngine.NONE;
+    }
+
+    /**
+     * Evaluates the condition for a state.
+     * @param state		{@link JoystickState} to evaluate.
+     * @param pressed	{@code true} if the stick is held by a pointer.
+     * @return			Fired edge, {@link #EDGE_ENTER} or {@link #EDGE_LEAVE},
+     * 					or 0 if the trigger did not fire.
+     */
+    public int evaluate(JoystickState state, boolean pressed){
+        final boolean vActive;
+        switch( mCondition ){
+            case CONDITION_MAGNITUDE_ABOVE:
+                vActive = state.getMagnitude() >= (mActive ? mLeaveThreshold : mEnterThreshold);
+                break;
+
+            case CONDITION_MAGNITUDE_BELOW:
+                vActive = state.getMagnitude() < (mActive ? mLeaveThreshold : mEnterThreshold);
+                break;
+
+            case CONDITION_SECTORS:
+                final int vSector = state.getSector();
+                vActive = vSector >= 0 && (mSectorMask[vSector >>> 6] & (1L << vSector)) != 0;
+                break;
+
+            case CONDITION_SECTOR_CHANGE:
+                if( state.getSector() == mLastSector )
+                    return 0;
+                mLastSector = state.getSector();
+                return EDGE_ENTER;
+
+            default:
+                vActive = pressed;
+        }
+
+        if( vActive == mActive )
+            return 0;
+        mActive = vActive;
+        return (vActive ? EDGE_ENTER : EDGE_LEAVE) & mEdges;
+    }
+
+}
@@ -1,19 +1,16 @@
 package de.hanneseilers.joystickview;
 
 
-import java.util.ArrayList;
-import java.util.List;
-
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Paint.Style;
-import android.graphics.RadialGradient;
 import android.graphics.Shader;
 import android.support.v4.view.MotionEventCompat;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.View;
 import de.hanneseilers.joystickview.R;
@@ -26,43 +23,89 @@ import de.hanneseilers.joystickview.R;
  */
 public class JoystickView extends View {
 
-    // Attributes
-    private boolean mShowOuterBorder, mShowCross, mStickUseGradient, mShowStickBorder;
-    private boolean mInvertXAxis, mInvertYAxis;
-    private float mOuterBorderWidth, mCrossWidth, mStickBorderWidth;
-    private float mStickSize;
-
-    private int mOuterBorderColor, mCrossColor;
-    private int mStickColor, mStickBorderColor, mStickInnerColor;
-    private int mStickGradientOuterColor, mStickGradientInnerColor;
-    private int mBackgroundColor;
+    // Style, shared with other views until customized
+    private JoystickStyle mStyle;
 
-    private int mBackgroundStyle;
-    private int mPositionPrecision;
-
-    // Drawing objects
-    private Paint mPaintBackground;
-    private Paint mPaintOuterBorder, mPaintStickBorder;
-    private Paint mPaintCross;
-    private Paint mPaintStickCircle, mPaintStickInnerCircle;
+    private int mStyleEditDepth;
+    private int mPendingStyleChanges;
 
     // Dimensions
     private float mViewCenterX, mViewCenterY;
     private float mOuterBorderRadius;
     private float[] mCrossLines;
     private float mStickCenterX, mStickCenterY;
+
+    // Floating mode, origin is the current center of the stick area
+    private boolean mFloating, mTrailingOrigin;
+    private final float[] mFloatingBounds = { 0.0f, 0.0f, 1.0f, 1.0f };
+    private float mOriginX, mOriginY;
+    private boolean mOriginMoved;
     private float mStickRadius, mStickInnerCircleRadius;
+
+    // Hit testing, squared radii cached on size changes
+    private float mHitSlop = 10.0f;
+    private boolean mGrabAnywhere;
+    private float mStickHitRadiusSq, mAreaHitRadiusSq;
+
+    // Stick circle paint of this view, carries the gradient shader
+    private final Paint mPaintStickCircle = new Paint( Paint.ANTI_ALIAS_FLAG );
     private Shader mStickCircleShader;
 
+    // Static layer cache (background, outer border, cross)
+    private boolean mStaticLayerCaching;
+    private boolean mStaticLayerDirty = true;
+    private Bitmap mStaticLayer;
+
     // Active touch pointer
     private int mActivePointer = MotionEvent.INVALID_POINTER_ID;
 
     // Relative position and orientation
-    private float mStickRelativeXPos, mStickRelativeYPos;
-    private StickOrientation mStickOrientation = StickOrientation.NONE;
+    private final JoystickInput mInput = new JoystickInput();
+    private final JoystickEngine mEngine = mInput.mEngine;
+    private final JoystickState mState = mInput.mState;
+    private long mEventTime;
+
+    // Historical samples
+    private boolean mHistoricalSampling;
+    private JoystickState[] mBatch = new JoystickState[0];
+
+    // Frame synchronized mode
+    private boolean mFrameSynchronized;
+    private boolean mFramePending;
+    private float mFrameOldCenterX, mFrameOldCenterY;
+    private int mFrameBatchCount;
+    private long mFrameInputTime;
+    private float mLastFrameLatency, mMaxFrameLatency, mTotalFrameLatency;
+    private long mFrameCount;
 
     // Listeners
-    List<OnPositionChangedListener> mOnPositionChangedListeners = new ArrayList<OnPositionChangedListener>();
+    private PositionDispatcher mPositionDispatcher = new PositionDispatcher();
+
+    // Metrics, only created if JoystickMetrics.ENABLED
+    private final JoystickMetrics mMetrics = JoystickMetrics.ENABLED ? new JoystickMetrics() : null;
+
+    // Pull based state stream, created on first use
+    private static final int STREAM_CAPACITY = 256;
+    private volatile JoystickStream mStream;
+
+    // Input recording
+    private SessionRecording mSessionRecording;
+
+    // Spring return to center
+    private boolean mSpringReturn;
+    private float mSpringStiffness = 400.0f;
+    private float mSpringDampingRatio = 1.0f;
+    private long mReturnEmitInterval = 16000000L;
+    private boolean mReturning;
+    private float mReturnVelocityX, mReturnVelocityY;
+    private long mReturnFrameTime, mReturnEmitTime;
+
+    // Position prediction, predictor only created if enabled
+    private static final int PREDICTION_SAMPLES = 8;
+    private PositionPredictor mPredictor;
+    private float mPredictionLookAhead;
+    private final JoystickState mPredictedState = new JoystickState();
+    private final StateSeqLock mPublishedPrediction = new StateSeqLock();
 
 
     /**
@@ -79,131 +122,306 @@ public class JoystickView extends View {
 
         try{
 
-            mShowOuterBorder = vAttr.getBoolean(R.styleable.JoystickView_showOuterBorder, true);
-            mOuterBorderWidth = vAttr.getDimension(R.styleable.JoystickView_outerBorderWidth, 1.5f);
-            mOuterBorderColor = vAttr.getColor(R.styleable.JoystickView_outerBorderColor, Color.DKGRAY);
+            mStyle = JoystickStyle.obtain(vAttr);
 
-            mShowCross = vAttr.getBoolean(R.styleable.JoystickView_showCross, true);
-            mCrossWidth = vAttr.getDimension(R.styleable.JoystickView_crossWidth, 1.0f);
-            mCrossColor = vAttr.getColor(R.styleable.JoystickView_crossColor, Color.DKGRAY);
+            mInput.readAttributes(vAttr);
 
-            mStickSize = vAttr.getFloat(R.styleable.JoystickView_stickSize, 15.0f);
-            mStickColor = vAttr.getColor(R.styleable.JoystickView_stickColor, Color.LTGRAY);
-            mStickInnerColor = vAttr.getColor(R.styleable.JoystickView_stickInnerColor, Color.GRAY);
-            mStickUseGradient = vAttr.getBoolean(R.styleable.JoystickView_stickUseGradient, false);
-            mStickGradientInnerColor = vAttr.getColor(R.styleable.JoystickView_stickInnerColor, Color.LTGRAY);
-            mStickGradientOuterColor = vAttr.getColor(R.styleable.JoystickView_stickGradientOuterColor, Color.GRAY);
+            mHistoricalSampling = vAttr.getBoolean(R.styleable.JoystickView_historicalSampling, false);
+            mStaticLayerCaching = vAttr.getBoolean(R.styleable.JoystickView_staticLayerCaching, false);
+            mFrameSynchronized = vAttr.getBoolean(R.styleable.JoystickView_frameSynchronized, false);
+            setHitSlop( vAttr.getFloat(R.styleable.JoystickView_hitSlop, mHitSlop) );
+            mGrabAnywhere = vAttr.getBoolean(R.styleable.JoystickView_grabAnywhere, false);
+            mFloating = vAttr.getBoolean(R.styleable.JoystickView_floating, false);
+            mTrailingOrigin = vAttr.getBoolean(R.styleable.JoystickView_trailingOrigin, false);
+            setPredictionLookAhead( vAttr.getFloat(R.styleable.JoystickView_predictionLookAhead, 0.0f) );
 
-            mShowStickBorder = vAttr.getBoolean(R.styleable.JoystickView_showStickBorder, true);
-            mStickBorderWidth = vAttr.getDimension(R.styleable.JoystickView_stickBorderWidth, 1.0f);
-            mStickBorderColor = vAttr.getColor(R.styleable.JoystickView_stickBorderColor, Color.DKGRAY);
+            mSpringReturn = vAttr.getBoolean(R.styleable.JoystickView_springReturn, false);
+            setSpringStiffness( vAttr.getFloat(R.styleable.JoystickView_springStiffness, mSpringStiffness) );
+            setSpringDampingRatio( vAttr.getFloat(R.styleable.JoystickView_springDampingRatio, mSpringDampingRatio) );
+            setReturnEmissionRate( vAttr.getFloat(R.styleable.JoystickView_returnEmissionRate, 60.0f) );
 
-            mInvertXAxis = vAttr.getBoolean(R.styleable.JoystickView_invertXAxis, false);
-            mInvertYAxis = vAttr.getBoolean(R.styleable.JoystickView_invertYAxis, false);
+        } finally {
+            vAttr.recycle();
+        }
 
-            mBackgroundStyle = vAttr.getInt(R.styleable.JoystickView_backgroundStyle, 0);
-            mBackgroundColor = vAttr.getColor(R.styleable.JoystickView_backgroundColor, Color.BLACK);
+        mPaintStickCircle.set( mStyle.mPaintStickCircle );
+        updateStickShader();
 
-            mPositionPrecision = vAttr.getInt(R.styleable.JoystickView_positionPrecision, 2);
+        if( JoystickMetrics.ENABLED )
+            mPositionDispatcher.setMetrics(mMetrics);
+    }
 
-        } finally {
-            vAttr.recycle();
+    /**
+     * Updates drawing objects affected by style changes.
+     * @param changes	Bit mask of changed style properties (STYLE_* constants of {@link JoystickStyle}).
+     */
+    private void updatePaints(int changes){
+        if( !mStyle.isShared() )
+            mStyle.updatePaints(changes);
+
+        if( (changes & JoystickStyle.STYLE_STICK) != 0 ){
+            mPaintStickCircle.set( mStyle.mPaintStickCircle );
+            mPaintStickCircle.setShader( mStickCircleShader );
         }
 
-        // init drawing objects
-        init();
+        if( (changes & (JoystickStyle.STYLE_GRADIENT | JoystickStyle.STYLE_GEOMETRY)) != 0 )
+            updateStickShader();
+
+        if( (changes & JoystickStyle.STYLE_STATIC_LAYER) != 0 )
+            mStaticLayerDirty = true;
+    }
+
+    /**
+     * Returns the style for editing. A shared style is copied first,
+     * so that other views using it are not affected.
+     * @return	Private {@link JoystickStyle} of this view.
+     */
+    private JoystickStyle editStyle(){
+        if( mStyle.isShared() )
+            mStyle = mStyle.copy();
+        return mStyle;
     }
 
     /**
-     * Initiates drawing objects.
+     * Calculates squared hit radii of stick and stick area.
      */
-    private void init(){
-        mPaintBackground = new Paint( Paint.ANTI_ALIAS_FLAG );
-        mPaintBackground.setStyle( Style.FILL );
-        mPaintBackground.setColor( mBackgroundColor );
+    private void updateHitRadii(){
+        final float vStickHitRadius = mStickRadius * (1.0f + mHitSlop/100.0f);
+        mStickHitRadiusSq = vStickHitRadius * vStickHitRadius;
+        final float vAreaHitRadius = mOuterBorderRadius + vStickHitRadius;
+        mAreaHitRadiusSq = vAreaHitRadius * vAreaHitRadius;
+    }
 
-        mPaintOuterBorder = new Paint( Paint.ANTI_ALIAS_FLAG );
-        mPaintOuterBorder.setColor( mOuterBorderColor );
-        mPaintOuterBorder.setStyle( Style.STROKE );
-        mPaintOuterBorder.setStrokeWidth( mOuterBorderWidth );
+    /**
+     * Gets stick gradient shader from {@link GradientCache} or removes it.
+     * The shader is set to the stick paint of this view, because style paints may be shared.
+     */
+    private void updateStickShader(){
+        if( mStyle.mStickUseGradient && mStickRadius > 0.0f ){
+            mStickCircleShader = GradientCache.get(
+                    mViewCenterX, mViewCenterY, mStickRadius,
+                    mStyle.mStickGradientInnerColor, mStyle.mStickGradientOuterColor );
+        } else {
+            mStickCircleShader = null;
+        }
+        mPaintStickCircle.setShader( mStickCircleShader );
+    }
 
-        mPaintCross = new Paint( Paint.ANTI_ALIAS_FLAG );
-        mPaintCross.setStrokeWidth( mCrossWidth );
-        mPaintCross.setColor( mCrossColor );
+    /**
+     * Starts a style edit transaction.
+     * Style changes are collected and applied at once by {@link #commitStyleEdit()}.
+     * Transactions may be nested.
+     */
+    public void beginStyleEdit(){
+        mStyleEditDepth++;
+    }
 
-        mPaintStickBorder = new Paint( Paint.ANTI_ALIAS_FLAG );
-        mPaintStickBorder.setStyle( Style.STROKE );
-        mPaintStickBorder.setColor( mStickBorderColor );
-        mPaintStickBorder.setStrokeWidth( mStickBorderWidth );
+    /**
+     * Ends a style edit transaction and applies all collected style changes.
+     */
+    public void commitStyleEdit(){
+        if( mStyleEditDepth == 0 )
+            throw new IllegalStateException("commitStyleEdit() without beginStyleEdit()");
+
+        mStyleEditDepth--;
+        if( mStyleEditDepth == 0 && mPendingStyleChanges != 0 ){
+            final int vChanges = mPendingStyleChanges;
+            mPendingStyleChanges = 0;
+            applyStyleChanges(vChanges);
+        }
+    }
 
-        mPaintStickCircle = new Paint( Paint.ANTI_ALIAS_FLAG );
-        mPaintStickCircle.setStyle( Style.FILL );
-        mPaintStickCircle.setColor( mStickColor );
+    /**
+     * Applies style changes or collects them while a style edit is in progress.
+     * @param changes	Bit mask of changed style properties (STYLE_* constants of {@link JoystickStyle}).
+     */
+    private void onStyleChanged(int changes){
+        if( mStyleEditDepth > 0 ){
+            mPendingStyleChanges |= changes;
+            return;
+        }
+        applyStyleChanges(changes);
+    }
 
-        mPaintStickInnerCircle = new Paint( Paint.ANTI_ALIAS_FLAG );
-        mPaintStickInnerCircle.setStyle( Style.FILL );
-        mPaintStickInnerCircle.setColor( mStickInnerColor );
+    /**
+     * Applies style changes. Geometry is only recalculated and layout only
+     * requested if a change affects geometry.
+     * @param changes	Bit mask of changed style properties (STYLE_* constants of {@link JoystickStyle}).
+     */
+    private void applyStyleChanges(int changes){
+        if( (changes & JoystickStyle.STYLE_GEOMETRY) != 0 ){
+            mStyle.invalidateGeometry();
+            updateGeometry(getWidth(), getHeight());
+            requestLayout();
+        }
+        updatePaints(changes);
+        invalidate();
     }
 
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
+        updateGeometry(w, h);
+        updatePaints( JoystickStyle.STYLE_GEOMETRY );
 
-        // View
-        mViewCenterX = w / 2.0f;
-        mViewCenterY = h / 2.0f;
+        // Static layer
+        if( mStaticLayerCaching )
+            buildStaticLayer(w, h);
+    }
+
+    /**
+     * Calculates view dimensions.
+     * A stick that is held or returning keeps its normalized position and the origin keeps
+     * its relative position in the view. The position is processed again and listeners are notified.
+     * @param w	View width.
+     * @param h	View height.
+     */
+    private void updateGeometry(int w, int h){
+        final JoystickStyle.Geometry vGeometry = mStyle.getGeometry(w, h, getPaddingStart(), getPaddingEnd());
+
+        // normalized stick and origin position of an active gesture
+        final boolean vActive = (mActivePointer != MotionEvent.INVALID_POINTER_ID || mReturning)
+                && mOuterBorderRadius > 0.0f && mViewCenterX > 0.0f && mViewCenterY > 0.0f;
+        float vStickX = 0.0f, vStickY = 0.0f, vOriginX = 1.0f, vOriginY = 1.0f;
+        if( vActive ){
+            vStickX = (mStickCenterX - mOriginX) / mOuterBorderRadius;
+            vStickY = (mStickCenterY - mOriginY) / mOuterBorderRadius;
+            vOriginX = mOriginX / mViewCenterX;
+            vOriginY = mOriginY / mViewCenterY;
+        }
 
-        int vShortestSide = w;
-        if( w > h )
-            vShortestSide = h;
+        // View
+        mViewCenterX = vGeometry.mViewCenterX;
+        mViewCenterY = vGeometry.mViewCenterY;
 
         // Stick
-        mStickCenterX = mViewCenterX;
-        mStickCenterY = mViewCenterY;
-        mStickRadius = vShortestSide * (mStickSize/100.0f);
-        mStickInnerCircleRadius = mStickRadius * 0.6f;
-
-        mStickCircleShader = new RadialGradient(
-                mStickCenterX, mStickCenterY, mStickRadius,
-                mStickGradientInnerColor, mStickGradientOuterColor,
-                Shader.TileMode.MIRROR );
-        if( mStickUseGradient )
-            mPaintStickCircle.setShader( mStickCircleShader );
+        mOriginX = mViewCenterX * vOriginX;
+        mOriginY = mViewCenterY * vOriginY;
+        mStickCenterX = mOriginX;
+        mStickCenterY = mOriginY;
+        mStickRadius = vGeometry.mStickRadius;
+        mStickInnerCircleRadius = vGeometry.mStickInnerCircleRadius;
+
+        // Outer Border and Cross
+        mOuterBorderRadius = vGeometry.mOuterBorderRadius;
+        mCrossLines = vGeometry.mCrossLines;
+
+        updateHitRadii();
+
+        mEngine.setGeometry(mOriginX, mOriginY, mOuterBorderRadius);
+        if( mSessionRecording != null )
+            mSessionRecording.setGeometry(mViewCenterX, mViewCenterY, mOuterBorderRadius);
+
+        if( vActive )
+            setStickCenter(mOriginX + vStickX * mOuterBorderRadius, mOriginY + vStickY * mOuterBorderRadius);
+    }
+
+    /**
+     * Draws the static layers: background, outer border and cross.
+     * @param canvas	{@link Canvas} to draw on.
+     */
+    private void drawStaticLayers(Canvas canvas){
+        mStyle.drawStaticLayers(canvas, mViewCenterX, mViewCenterY, mOuterBorderRadius, mCrossLines);
+    }
 
-        // Outer Border
-        mOuterBorderRadius = ((vShortestSide - getPaddingStart() - getPaddingEnd()) / 2.0f)
-                - mStickRadius - mOuterBorderWidth;
+    /**
+     * Renders the static layers into a cached {@link Bitmap}.
+     * @param w	View width.
+     * @param h	View height.
+     */
+    private void buildStaticLayer(int w, int h){
+        if( w <= 0 || h <= 0 )
+            return;
+
+        if( mStaticLayer == null || mStaticLayer.getWidth() != w || mStaticLayer.getHeight() != h ){
+            releaseStaticLayer();
+            mStaticLayer = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        } else {
+            mStaticLayer.eraseColor(Color.TRANSPARENT);
+        }
 
-        // Cross
-        mCrossLines = new float[]{
-                mViewCenterX - mOuterBorderRadius, mViewCenterY,
-                mViewCenterX + mOuterBorderRadius, mViewCenterY,
-                mViewCenterX, mViewCenterY + mOuterBorderRadius,
-                mViewCenterX, mViewCenterY - mOuterBorderRadius
-        };
+        drawStaticLayers( new Canvas(mStaticLayer) );
+        mStaticLayerDirty = false;
+    }
+
+    /**
+     * Releases cached static layer.
+     */
+    private void releaseStaticLayer(){
+        if( mStaticLayer != null ){
+            mStaticLayer.recycle();
+            mStaticLayer = null;
+        }
+        mStaticLayerDirty = true;
+    }
+
+    /**
+     * Invalidates the area covered by the stick at its old and its new position.
+     * Invalidates the whole view if static layers are not cached.
+     * @param oldCenterX	Old x position of stick center.
+     * @param oldCenterY	Old y position of stick center.
+     */
+    private void invalidateStick(float oldCenterX, float oldCenterY){
+        if( !mStaticLayerCaching || mOriginMoved ){
+            mOriginMoved = false;
+            invalidate();
+            return;
+        }
+
+        final float vExtent = mStickRadius + mStyle.mStickBorderWidth + 1.0f;
+        invalidate( (int) Math.floor( Math.min(oldCenterX, mStickCenterX) - vExtent ),
+                (int) Math.floor( Math.min(oldCenterY, mStickCenterY) - vExtent ),
+                (int) Math.ceil( Math.max(oldCenterX, mStickCenterX) + vExtent ),
+                (int) Math.ceil( Math.max(oldCenterY, mStickCenterY) + vExtent ) );
     }
 
     @Override
-    protected void onDraw(Canvas canvas) {
-        super.onDraw(canvas);
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if( mReturning ){
+            stopReturn();
+            centerStick();
+        }
+        cancelFrame();
+        mPositionDispatcher.release();
+        releaseStaticLayer();
+    }
 
-        // Background
-        if( mBackgroundStyle > 0 )
-            canvas.drawCircle(mViewCenterX, mViewCenterY, mOuterBorderRadius, mPaintBackground);
+    @Override
+    protected void onDraw(Canvas canvas) {
+        long vDrawStart = 0;
+        if( JoystickMetrics.ENABLED ){
+            vDrawStart = System.nanoTime();
+            JoystickMetrics.beginSection("JoystickView#onDraw");
+        }
 
-        // Outer Border
-        canvas.drawCircle(mViewCenterX, mViewCenterY, mOuterBorderRadius, mPaintOuterBorder);
+        super.onDraw(canvas);
 
-        // Cross
-        if( isCross() ){
-            canvas.drawLines(mCrossLines, mPaintCross);
+        // Static layers, moved to floating origin by translation
+        final float vOriginOffsetX = mOriginX - mViewCenterX;
+        final float vOriginOffsetY = mOriginY - mViewCenterY;
+        if( mStaticLayerCaching ){
+            if( mStaticLayerDirty )
+                buildStaticLayer(getWidth(), getHeight());
+            if( mStaticLayer != null )
+                canvas.drawBitmap(mStaticLayer, vOriginOffsetX, vOriginOffsetY, null);
+        } else if( vOriginOffsetX != 0.0f || vOriginOffsetY != 0.0f ){
+            final int vSaveCount = canvas.save();
+            canvas.translate(vOriginOffsetX, vOriginOffsetY);
+            drawStaticLayers(canvas);
+            canvas.restoreToCount(vSaveCount);
+        } else {
+            drawStaticLayers(canvas);
         }
 
         // Stick
-        canvas.drawCircle(mStickCenterX, mStickCenterY, mStickRadius, mPaintStickCircle);
-        canvas.drawCircle(mStickCenterX, mStickCenterY, mStickInnerCircleRadius, mPaintStickInnerCircle);
-        if( isStickBorder() )
-            canvas.drawCircle(mStickCenterX, mStickCenterY, mStickRadius, mPaintStickBorder);
+        mStyle.drawStick(canvas, mStickCenterX, mStickCenterY, mStickRadius, mStickInnerCircleRadius,
+                mPaintStickCircle);
+
+        if( JoystickMetrics.ENABLED ){
+            JoystickMetrics.endSection();
+            mMetrics.record(JoystickMetrics.STAGE_DRAW, System.nanoTime() - vDrawStart);
+        }
     }
 
     @Override
@@ -213,22 +431,46 @@ public class JoystickView extends View {
         float xPos;
         float yPos;
 
+        mEventTime = event.getEventTime();
+        if( JoystickMetrics.ENABLED )
+            JoystickMetrics.beginSection("JoystickView#onTouchEvent");
+
         switch(vAction){
             case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // ignore further pointers while stick is grabbed
+                if( mActivePointer != MotionEvent.INVALID_POINTER_ID )
+                    break;
+
+                // a returning stick can be grabbed again
+                stopReturn();
+
                 // get touch position
                 vPointerIndex = MotionEventCompat.getActionIndex(event);
                 xPos = MotionEventCompat.getX(event, vPointerIndex);
                 yPos = MotionEventCompat.getY(event, vPointerIndex);
 
-                // calculate distance to stick
-                float vRadiusToStick = (float) Math.sqrt(
-                        Math.pow(xPos - mStickCenterX, 2)
-                                + Math.pow(yPos - mStickCenterY, 2) );
+                // in floating mode touches in bounds place the origin at the touch position
+                if( mFloating ){
+                    if( isInFloatingBounds(xPos, yPos) ){
+                        mActivePointer = MotionEventCompat.getPointerId(event, vPointerIndex);
+                        resetPrediction();
+                        placeOrigin(xPos, yPos);
+                        setStickCenter(xPos, yPos);
+                    }
+                    break;
+                }
 
-                // check if touch is in stick radius (+10%)
-                if( vRadiusToStick <= (mStickRadius + 0.1*mStickRadius) ){
+                // check if touch is in stick radius plus hit slop or anywhere in stick area
+                final float vDX = xPos - mStickCenterX;
+                final float vDY = yPos - mStickCenterY;
+                final float vAreaDX = xPos - mOriginX;
+                final float vAreaDY = yPos - mOriginY;
+                if( vDX*vDX + vDY*vDY <= mStickHitRadiusSq
+                        || (mGrabAnywhere && vAreaDX*vAreaDX + vAreaDY*vAreaDY <= mAreaHitRadiusSq) ){
                     // set pointer active and move stick
                     mActivePointer = MotionEventCompat.getPointerId(event, vPointerIndex);
+                    resetPrediction();
                     setStickCenter(xPos, yPos);
                 }
 
@@ -243,18 +485,26 @@ public class JoystickView extends View {
                     xPos = MotionEventCompat.getX(event, vPointerIndex);
                     yPos = MotionEventCompat.getY(event, vPointerIndex);
 
-                    setStickCenter(xPos, yPos);
+                    if( mHistoricalSampling && event.getHistorySize() > 0 )
+                        setStickCenterBatch(event, vPointerIndex, xPos, yPos);
+                    else
+                        setStickCenter(xPos, yPos);
 
                 }
                 break;
 
             case MotionEvent.ACTION_UP:
                 mActivePointer = MotionEvent.INVALID_POINTER_ID;
-                setStickCenter(mViewCenterX, mViewCenterY);
+                resetPrediction();
+                returnToCenter();
                 break;
 
             case MotionEvent.ACTION_CANCEL:
+                // always re-center immediately, a cancelled gesture must not latch a position
                 mActivePointer = MotionEvent.INVALID_POINTER_ID;
+                stopReturn();
+                resetPrediction();
+                centerStick();
                 break;
 
             case MotionEvent.ACTION_POINTER_UP:
@@ -262,11 +512,18 @@ public class JoystickView extends View {
 
                 if( MotionEventCompat.getPointerId(event, vPointerIndex) == mActivePointer ){
                     mActivePointer = MotionEvent.INVALID_POINTER_ID;
-                    setStickCenter(mViewCenterX, mViewCenterY);
+                    resetPrediction();
+                    returnToCenter();
                 }
                 break;
         }
 
+        if( JoystickMetrics.ENABLED ){
+            JoystickMetrics.endSection();
+            mMetrics.recordEvent();
+            mMetrics.record(JoystickMetrics.STAGE_INPUT_TO_STATE,
+                    System.nanoTime() - JoystickMetrics.eventTimeNanos(event));
+        }
 
         return true;
     }
@@ -279,66 +536,349 @@ public class JoystickView extends View {
      * @param centerY	Y position of stick center.
      */
     private void setStickCenter(float centerX, float centerY){
-        // calculate radius to view center
-        float vX = centerX - mViewCenterX;
-        float vY = centerY - mViewCenterY;
-        float vDist = (float) Math.sqrt(
-                Math.pow(vX, 2) + Math.pow(vY, 2));
+        final float vOldCenterX = mStickCenterX;
+        final float vOldCenterY = mStickCenterY;
+        updateStickCenter(centerX, centerY, mEventTime);
+
+        if( mFrameSynchronized ){
+            if( mHistoricalSampling ){
+                ensureBatchCapacity(mFrameBatchCount + 1);
+                mBatch[mFrameBatchCount++].set(mState);
+            }
+            scheduleFrame(vOldCenterX, vOldCenterY);
+            return;
+        }
+
+        invalidateStick(vOldCenterX, vOldCenterY);
+
+        // notify listener
+        notifyOnPositionChangedListener();
+    }
+
+    /**
+     * Moves the stick to center immediately and notifies listeners.
+     * In floating mode the origin returns to the view center.
+     * Filter states of the output pipeline are reset first, so the rest state is always 0,0.
+     * The rest state bypasses the {@link EmissionFilter}.
+     */
+    private void centerStick(){
+        if( mFloating )
+            setOrigin(mViewCenterX, mViewCenterY);
+        mInput.reset();
+        setStickCenter(mOriginX, mOriginY);
+    }
+
+    /**
+     * Moves the origin of the stick area inside the floating bounds,
+     * so that the whole stick area stays inside them if possible.
+     * @param x	X position of new origin.
+     * @param y	Y position of new origin.
+     */
+    private void placeOrigin(float x, float y){
+        final float vExtent = mOuterBorderRadius + mStickRadius + mStyle.mOuterBorderWidth;
+        setOrigin( clampToBounds(x, mFloatingBounds[0] * getWidth(), mFloatingBounds[2] * getWidth(), vExtent),
+                clampToBounds(y, mFloatingBounds[1] * getHeight(), mFloatingBounds[3] * getHeight(), vExtent) );
+    }
 
-        // check if new stick position is outside cotrol radius
-        if( vDist > mOuterBorderRadius ){
-            // adjust position
-            float vScale = mOuterBorderRadius / vDist;
-            centerX = mViewCenterX + vScale * vX;
-            centerY = mViewCenterY + vScale * vY;
+    /**
+     * Moves the origin of the stick area.
+     * The stick moves with the origin until the next sample is processed.
+     * @param x	X position of new origin.
+     * @param y	Y position of new origin.
+     */
+    private void setOrigin(float x, float y){
+        if( x == mOriginX && y == mOriginY )
+            return;
+
+        mStickCenterX += x - mOriginX;
+        mStickCenterY += y - mOriginY;
+        mOriginX = x;
+        mOriginY = y;
+        mOriginMoved = true;
+        mEngine.setGeometry(x, y, mOuterBorderRadius);
+    }
+
+    /**
+     * @param value		Position to clamp.
+     * @param min		Lower bound.
+     * @param max		Upper bound.
+     * @param extent	Distance to keep from bounds.
+     * @return			Clamped position, middle of bounds if they are too small for the extent.
+     */
+    private static float clampToBounds(float value, float min, float max, float extent){
+        if( max - min < 2.0f * extent )
+            return (min + max) / 2.0f;
+        return Math.max( min + extent, Math.min(max - extent, value) );
+    }
+
+    /**
+     * @param x	Touch x position.
+     * @param y	Touch y position.
+     * @return	{@code true} if touch position is inside floating bounds.
+     */
+    private boolean isInFloatingBounds(float x, float y){
+        return x >= mFloatingBounds[0] * getWidth() && x <= mFloatingBounds[2] * getWidth()
+                && y >= mFloatingBounds[1] * getHeight() && y <= mFloatingBounds[3] * getHeight();
+    }
+
+    /**
+     * Moves the released stick back to center, either immediately or
+     * animated by a spring if spring return is enabled.
+     */
+    private void returnToCenter(){
+        if( !mSpringReturn || getWindowToken() == null
+                || (mStickCenterX == mOriginX && mStickCenterY == mOriginY) ){
+            centerStick();
+            return;
+        }
+
+        if( !mReturning ){
+            mReturning = true;
+            mReturnVelocityX = 0.0f;
+            mReturnVelocityY = 0.0f;
+            mReturnFrameTime = 0;
+            mReturnEmitTime = 0;
+            Choreographer.getInstance().postFrameCallback(mReturnCallback);
+        }
+    }
+
+    /**
+     * Stops a running spring return at the current stick position.
+     */
+    private void stopReturn(){
+        if( mReturning ){
+            Choreographer.getInstance().removeFrameCallback(mReturnCallback);
+            mReturning = false;
+        }
+    }
+
+    /**
+     * Frame callback of spring return. Moves the stick one frame step towards center,
+     * invalidates the view and notifies listeners at most at the return emission rate.
+     */
+    private final Choreographer.FrameCallback mReturnCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if( !mReturning )
+                return;
+
+            // first frame only sets the time base
+            float vDeltaTime = 0.0f;
+            if( mReturnFrameTime != 0 )
+                vDeltaTime = Math.min( (frameTimeNanos - mReturnFrameTime) / 1e9f, 0.05f );
+            mReturnFrameTime = frameTimeNanos;
+
+            // damped spring, semi-implicit euler in steps of at most 4 ms
+            final float vDamping = 2.0f * mSpringDampingRatio * (float) Math.sqrt(mSpringStiffness);
+            float vX = mStickCenterX - mOriginX;
+            float vY = mStickCenterY - mOriginY;
+            while( vDeltaTime > 0.0f ){
+                final float vStep = Math.min(vDeltaTime, 0.004f);
+                mReturnVelocityX += (-mSpringStiffness * vX - vDamping * mReturnVelocityX) * vStep;
+                mReturnVelocityY += (-mSpringStiffness * vY - vDamping * mReturnVelocityY) * vStep;
+                vX += mReturnVelocityX * vStep;
+                vY += mReturnVelocityY * vStep;
+                vDeltaTime -= vStep;
+            }
+
+            mEventTime = frameTimeNanos / 1000000L;
+
+            // finish at rest, centered state is always emitted
+            if( vX*vX + vY*vY < 0.25f
+                    && mReturnVelocityX*mReturnVelocityX + mReturnVelocityY*mReturnVelocityY < 1.0f ){
+                mReturning = false;
+                centerStick();
+                return;
+            }
+
+            final float vOldCenterX = mStickCenterX;
+            final float vOldCenterY = mStickCenterY;
+            updateStickCenter(mOriginX + vX, mOriginY + vY, mEventTime);
+            invalidateStick(vOldCenterX, vOldCenterY);
+
+            if( mReturnEmitTime == 0 || frameTimeNanos - mReturnEmitTime >= mReturnEmitInterval ){
+                mReturnEmitTime = frameTimeNanos;
+                notifyOnPositionChangedListener();
+            }
+
+            Choreographer.getInstance().postFrameCallback(this);
         }
+    };
+
+    /**
+     * Replays all historical samples of a move event and the current position
+     * through {@link #updateStickCenter(float, float, long)}.
+     * The view is invalidated once and listeners are notified with one batch.
+     * @param event			{@link MotionEvent} with historical samples.
+     * @param pointerIndex	Index of active pointer.
+     * @param centerX		Current x position of stick center.
+     * @param centerY		Current y position of stick center.
+     */
+    private void setStickCenterBatch(MotionEvent event, int pointerIndex, float centerX, float centerY){
+        final float vOldCenterX = mStickCenterX;
+        final float vOldCenterY = mStickCenterY;
+        final int vHistorySize = event.getHistorySize();
+
+        // in frame synchronized mode samples are collected until the next frame
+        int vOffset = mFrameSynchronized ? mFrameBatchCount : 0;
+        if( vOffset > 0 && vOffset + vHistorySize + 1 > PositionDispatcher.BATCH_CAPACITY ){
+            mPositionDispatcher.postBatch(mBatch, vOffset);
+            vOffset = 0;
+        }
+        ensureBatchCapacity(vOffset + vHistorySize + 1);
+
+        for( int h = 0; h < vHistorySize; h++ ){
+            updateStickCenter( event.getHistoricalX(pointerIndex, h),
+                    event.getHistoricalY(pointerIndex, h),
+                    event.getHistoricalEventTime(h) );
+            mBatch[vOffset + h].set(mState);
+        }
+        updateStickCenter(centerX, centerY, mEventTime);
+        mBatch[vOffset + vHistorySize].set(mState);
+
+        if( mFrameSynchronized ){
+            mFrameBatchCount = vOffset + vHistorySize + 1;
+            scheduleFrame(vOldCenterX, vOldCenterY);
+            return;
+        }
+
+        invalidateStick(vOldCenterX, vOldCenterY);
+        mPositionDispatcher.postBatch(mBatch, vHistorySize + 1);
+    }
+
+    /**
+     * Grows the batch buffer if needed. Only happens for unusual large batches.
+     * @param capacity	Required number of samples.
+     */
+    private void ensureBatchCapacity(int capacity){
+        if( mBatch.length < capacity ){
+            JoystickState[] vBatch = new JoystickState[ Math.max(capacity, 2*mBatch.length) ];
+            System.arraycopy(mBatch, 0, vBatch, 0, mBatch.length);
+            for( int i = mBatch.length; i < vBatch.length; i++ )
+                vBatch[i] = new JoystickState();
+            mBatch = vBatch;
+        }
+    }
+
+    /**
+     * Schedules a frame callback that invalidates the view and notifies listeners.
+     * Used in frame synchronized mode.
+     * @param oldCenterX	X position of stick center before the update.
+     * @param oldCenterY	Y position of stick center before the update.
+     */
+    private void scheduleFrame(float oldCenterX, float oldCenterY){
+        if( mFramePending )
+            return;
+
+        mFramePending = true;
+        mFrameOldCenterX = oldCenterX;
+        mFrameOldCenterY = oldCenterY;
+        mFrameInputTime = mEventTime;
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    /**
+     * Frame callback of frame synchronized mode.
+     * Invalidates the view and notifies listeners once per frame.
+     */
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if( !mFramePending )
+                return;
+            mFramePending = false;
+
+            // latency from oldest input of this frame to frame callback
+            // difference in long nanoseconds, a float of the absolute time has no sub second precision
+            final float vLatency = (System.nanoTime() - mFrameInputTime * 1000000L) / 1000000.0f;
+            mLastFrameLatency = vLatency;
+            if( vLatency > mMaxFrameLatency )
+                mMaxFrameLatency = vLatency;
+            mTotalFrameLatency += vLatency;
+            mFrameCount++;
+
+            invalidateStick(mFrameOldCenterX, mFrameOldCenterY);
+
+            if( mFrameBatchCount > 0 ){
+                mPositionDispatcher.postBatch(mBatch, mFrameBatchCount);
+                mFrameBatchCount = 0;
+                mInput.markEmitted();
+            } else {
+                notifyOnPositionChangedListener();
+            }
+        }
+    };
+
+    /**
+     * Updates stick position, relative position, orientation and state
+     * without invalidating the view or notifying listeners.
+     * @param centerX	X position of stick center.
+     * @param centerY	Y position of stick center.
+     * @param time		Sample time in milliseconds.
+     */
+    private void updateStickCenter(float centerX, float centerY, long time){
+        // trailing origin follows the finger outside the outer border
+        if( mTrailingOrigin && mFloating && mActivePointer != MotionEvent.INVALID_POINTER_ID ){
+            final float vX = centerX - mOriginX;
+            final float vY = centerY - mOriginY;
+            final float vDistSq = vX*vX + vY*vY;
+            if( vDistSq > mOuterBorderRadius * mOuterBorderRadius ){
+                final float vScale = mOuterBorderRadius / (float) Math.sqrt(vDistSq);
+                placeOrigin( centerX - vX * vScale, centerY - vY * vScale );
+            }
+        }
+
+        // recorded relative to the current origin, replayed around the recorded view center
+        if( mSessionRecording != null )
+            mSessionRecording.record(mViewCenterX + (centerX - mOriginX), mViewCenterY + (centerY - mOriginY), time);
+
+        mInput.process(centerX, centerY, time, mActivePointer != MotionEvent.INVALID_POINTER_ID, this);
 
         // set new stick position
-        mStickCenterX = centerX;
-        mStickCenterY = centerY;
-        invalidate();
+        mStickCenterX = mEngine.getStickX();
+        mStickCenterY = mEngine.getStickY();
+
+        final JoystickStream vStream = mStream;
+        if( vStream != null && vStream.hasCursors() )
+            vStream.publish(mState);
+
+        final PositionPredictor vPredictor = mPredictor;
+        if( vPredictor != null ){
+            vPredictor.addSample(centerX, centerY, time);
+            vPredictor.predict(mPredictionLookAhead);
+            mEngine.project( vPredictor.getPredictedX(), vPredictor.getPredictedY(),
+                    time + (long) mPredictionLookAhead, mPredictedState );
+            mPublishedPrediction.write(mPredictedState);
+        }
+    }
 
-        // Calculte new relative stick position
-        centerX = (centerX - mViewCenterX) / mOuterBorderRadius;
-        centerY = (centerY - mViewCenterY) / mOuterBorderRadius;
-
-        // Check if to invert axis
-        if( mInvertXAxis )
-            centerX = -1.0f * centerX;
-        if( !mInvertYAxis )				// android view direction is from top to bottom!
-            centerY = -1.0f * centerY;
-
-        // round position and scale from -100% to 100%
-        float vAccurency = (float) Math.pow(10, mPositionPrecision);
-        centerX = Math.round( centerX * 100.0f * vAccurency ) / vAccurency;
-        centerY = Math.round( centerY * 100.0f * vAccurency ) / vAccurency;
-
-        mStickRelativeXPos = centerX;
-        mStickRelativeYPos = centerY;
-
-        // get orientation
-        StickOrientation vOrientation = StickOrientation.NONE;
-        if( mStickRelativeXPos == 0.0f && mStickRelativeYPos > 0.0f )
-            vOrientation = StickOrientation.NORTH;
-        else if( mStickRelativeXPos > 0.0f && mStickRelativeYPos > 0.0f )
-            vOrientation = StickOrientation.NORTH_EAST;
-        else if( mStickRelativeXPos > 0.0f && mStickRelativeYPos == 0.0f )
-            vOrientation = StickOrientation.EAST;
-        else if( mStickRelativeXPos > 0.0f && mStickRelativeYPos < 0.0f )
-            vOrientation = StickOrientation.SOUTH_EAST;
-        else if( mStickRelativeXPos == 0.0f && mStickRelativeYPos < 0.0f )
-            vOrientation = StickOrientation.SOUTH;
-        else if( mStickRelativeXPos < 0.0f && mStickRelativeYPos < 0.0f )
-            vOrientation = StickOrientation.SOUT_WEST;
-        else if( mStickRelativeXPos < 0.0f && mStickRelativeYPos == 0.0f )
-            vOrientation = StickOrientation.WEST;
-        else if( mStickRelativeXPos < 0.0f && mStickRelativeYPos > 0.0f )
-            vOrientation = StickOrientation.NORTH_WEST;
-
-        mStickOrientation = vOrientation;
+    /**
+     * Registers a {@link JoystickTrigger}. Triggers are evaluated centrally for every
+     * processed sample. Listeners are only notified when their trigger fires, directly
+     * on the UI thread without waking dispatcher threads, so they must return quickly.
+     * Must be called on the UI thread.
+     * @param trigger	{@link JoystickTrigger} to evaluate.
+     * @param listener	{@link OnJoystickTriggerListener} to notify, or {@code null} if the
+     * 					trigger only performs haptic feedback.
+     */
+    public void addTrigger(JoystickTrigger trigger, OnJoystickTriggerListener listener){
+        mInput.addTrigger(trigger, listener);
+    }
 
-        // notify listener
-        notifyOnPositionChangedListener();
+    /**
+     * Removes a registered {@link JoystickTrigger}. Must be called on the UI thread.
+     * @param trigger	{@link JoystickTrigger} to remove.
+     */
+    public void removeTrigger(JoystickTrigger trigger){
+        mInput.removeTrigger(trigger);
+    }
+
+    /**
+     * Discards samples of the last gesture from the predictor.
+     */
+    private void resetPrediction(){
+        if( mPredictor != null )
+            mPredictor.reset();
     }
 
     /**
@@ -346,8 +886,7 @@ public class JoystickView extends View {
      * @param listener	{@link OnPositionChangedListener} to register.
      */
     public void setOnPositionChangedListener(OnPositionChangedListener listener){
-        if( !mOnPositionChangedListeners.contains(listener) )
-            mOnPositionChangedListeners.add(listener);
+        mPositionDispatcher.addPositionListener(listener);
     }
 
     /**
@@ -355,7 +894,7 @@ public class JoystickView extends View {
      * @param listener	{@link OnPositionChangedListener} to remove.
      */
     public void removeOnPositionChangedListener(OnPositionChangedListener listener){
-        mOnPositionChangedListeners.remove(listener);
+        mPositionDispatcher.removePositionListener(listener);
     }
 
     /**
@@ -363,214 +902,691 @@ public class JoystickView extends View {
      * joystick position.
      */
     private void notifyOnPositionChangedListener(){
-        for( OnPositionChangedListener vListener : mOnPositionChangedListeners ){
-            (new Thread( new PositionChangedNotifier(
-                    getXPosition(), getYPosition(), getOrientation(), vListener) )).start();
+        if( mInput.acceptEmission() )
+            mPositionDispatcher.post(mState);
+    }
+
+    /**
+     * @return	{@link EmissionFilter} deciding which states are emitted to listeners.
+     * 			Not applied to batches of historical samples.
+     */
+    public EmissionFilter getEmissionFilter(){
+        return mInput.mEmissionFilter;
+    }
+
+    /**
+     * Registers a {@link OnOrientationChangedListener}.
+     * @param listener	{@link OnOrientationChangedListener} to register.
+     */
+    public void addOnOrientationChangedListener(OnOrientationChangedListener listener){
+        mPositionDispatcher.addOrientationListener(listener);
+    }
+
+    /**
+     * Removes a registered {@link OnOrientationChangedListener}.
+     * @param listener	{@link OnOrientationChangedListener} to remove.
+     */
+    public void removeOnOrientationChangedListener(OnOrientationChangedListener listener){
+        mPositionDispatcher.removeOrientationListener(listener);
+    }
+
+    /**
+     * Registers a {@link OnDirectionChangedListener}.
+     * Only notified if a {@link DirectionEngine} is set.
+     * @param listener	{@link OnDirectionChangedListener} to register.
+     */
+    public void addOnDirectionChangedListener(OnDirectionChangedListener listener){
+        mPositionDispatcher.addDirectionListener(listener);
+    }
+
+    /**
+     * Removes a registered {@link OnDirectionChangedListener}.
+     * @param listener	{@link OnDirectionChangedListener} to remove.
+     */
+    public void removeOnDirectionChangedListener(OnDirectionChangedListener listener){
+        mPositionDispatcher.removeDirectionListener(listener);
+    }
+
+    /**
+     * Registers a {@link OnJoystickStateListener}.
+     * @param listener	{@link OnJoystickStateListener} to register.
+     */
+    public void addOnJoystickStateListener(OnJoystickStateListener listener){
+        mPositionDispatcher.addStateListener(listener);
+    }
+
+    /**
+     * Removes a registered {@link OnJoystickStateListener}.
+     * @param listener	{@link OnJoystickStateListener} to remove.
+     */
+    public void removeOnJoystickStateListener(OnJoystickStateListener listener){
+        mPositionDispatcher.removeStateListener(listener);
+    }
+
+    /**
+     * Registers a {@link OnJoystickBatchListener}.
+     * @param listener	{@link OnJoystickBatchListener} to register.
+     */
+    public void addOnJoystickBatchListener(OnJoystickBatchListener listener){
+        mPositionDispatcher.addBatchListener(listener);
+    }
+
+    /**
+     * Removes a registered {@link OnJoystickBatchListener}.
+     * @param listener	{@link OnJoystickBatchListener} to remove.
+     */
+    public void removeOnJoystickBatchListener(OnJoystickBatchListener listener){
+        mPositionDispatcher.removeBatchListener(listener);
+    }
+
+    /**
+     * @return	{@code true} if historical samples of move events are processed.
+     */
+    public boolean isHistoricalSampling(){
+        return mHistoricalSampling;
+    }
+
+    /**
+     * Enables processing of historical samples of move events.
+     * If enabled, every sample Android batched into a move event is processed
+     * and delivered to {@link OnJoystickBatchListener}.
+     * Other listeners still receive only the newest position.
+     * @param aHistoricalSampling	{@code true} to enable historical sampling.
+     */
+    public void setHistoricalSampling(boolean aHistoricalSampling){
+        mHistoricalSampling = aHistoricalSampling;
+    }
+
+    /**
+     * @return	{@code true} if static layers are cached in a bitmap.
+     */
+    public boolean isStaticLayerCaching(){
+        return mStaticLayerCaching;
+    }
+
+    /**
+     * Enables caching of static layers (background, outer border and cross) in a bitmap.
+     * If enabled, stick moves only invalidate the area covered by the stick.
+     * @param aStaticLayerCaching	{@code true} to enable static layer caching.
+     */
+    public void setStaticLayerCaching(boolean aStaticLayerCaching){
+        mStaticLayerCaching = aStaticLayerCaching;
+        if( !aStaticLayerCaching )
+            releaseStaticLayer();
+        invalidate();
+    }
+
+    /**
+     * @return	{@code true} if invalidation and listener notification are synchronized to frames.
+     */
+    public boolean isFrameSynchronized(){
+        return mFrameSynchronized;
+    }
+
+    /**
+     * Enables frame synchronized mode.
+     * If enabled, touch events only update the stick state. The view is invalidated
+     * and listeners are notified once per frame by a {@link Choreographer} callback.
+     * @param aFrameSynchronized	{@code true} to enable frame synchronized mode.
+     */
+    public void setFrameSynchronized(boolean aFrameSynchronized){
+        if( !aFrameSynchronized && mFramePending ){
+            // deliver pending state
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameCallback.doFrame( System.nanoTime() );
         }
+        mFrameSynchronized = aFrameSynchronized;
+    }
+
+    /**
+     * Removes a pending frame callback and drops collected samples.
+     */
+    private void cancelFrame(){
+        if( mFramePending ){
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFramePending = false;
+        }
+        mFrameBatchCount = 0;
+    }
+
+    /**
+     * @return	{@code true} if the released stick returns to center animated by a spring.
+     */
+    public boolean isSpringReturn(){
+        return mSpringReturn;
+    }
+
+    /**
+     * Enables spring return. If enabled, the released stick moves back to center
+     * animated by a damped spring instead of jumping to center. During the return
+     * listeners are notified at most at the return emission rate. A cancelled gesture
+     * always re-centers the stick immediately.
+     * @param aSpringReturn	{@code true} to enable spring return.
+     */
+    public void setSpringReturn(boolean aSpringReturn){
+        mSpringReturn = aSpringReturn;
+        if( !aSpringReturn && mReturning ){
+            stopReturn();
+            centerStick();
+        }
+    }
+
+    public float getSpringStiffness(){
+        return mSpringStiffness;
+    }
+
+    /**
+     * @param aSpringStiffness	Spring stiffness per second squared, higher values return faster.
+     */
+    public void setSpringStiffness(float aSpringStiffness){
+        if( !(aSpringStiffness > 0.0f) )
+            throw new IllegalArgumentException("stiffness must be positive");
+        mSpringStiffness = aSpringStiffness;
+    }
+
+    public float getSpringDampingRatio(){
+        return mSpringDampingRatio;
+    }
+
+    /**
+     * @param aSpringDampingRatio	Damping ratio, 1 returns without overshoot,
+     * 								lower values let the stick bounce.
+     */
+    public void setSpringDampingRatio(float aSpringDampingRatio){
+        if( aSpringDampingRatio < 0.0f )
+            throw new IllegalArgumentException("damping ratio must not be negative");
+        mSpringDampingRatio = aSpringDampingRatio;
+    }
 
+    /**
+     * @return	Maximum number of listener notifications per second during spring return.
+     */
+    public float getReturnEmissionRate(){
+        return 1e9f / mReturnEmitInterval;
+    }
+
+    /**
+     * @param aRate	Maximum number of listener notifications per second during spring return.
+     */
+    public void setReturnEmissionRate(float aRate){
+        if( !(aRate > 0.0f) )
+            throw new IllegalArgumentException("emission rate must be positive");
+        mReturnEmitInterval = (long) (1e9f / aRate);
+    }
+
+    /**
+     * @return	Latency in milliseconds from the oldest input event to the last frame callback
+     * 			in frame synchronized mode.
+     */
+    public float getLastFrameLatency(){
+        return mLastFrameLatency;
+    }
+
+    /**
+     * @return	Maximum input to frame latency in milliseconds in frame synchronized mode.
+     */
+    public float getMaxFrameLatency(){
+        return mMaxFrameLatency;
+    }
+
+    /**
+     * @return	Mean input to frame latency in milliseconds in frame synchronized mode.
+     */
+    public float getMeanFrameLatency(){
+        return mFrameCount > 0 ? mTotalFrameLatency / mFrameCount : 0.0f;
+    }
+
+    /**
+     * Resets input to frame latency statistics.
+     */
+    public void resetFrameLatency(){
+        mLastFrameLatency = 0.0f;
+        mMaxFrameLatency = 0.0f;
+        mTotalFrameLatency = 0.0f;
+        mFrameCount = 0;
+    }
+
+    /**
+     * @return	{@link OutputPipeline} processing stick positions or {@code null}.
+     */
+    public OutputPipeline getOutputPipeline(){
+        return mEngine.getOutputPipeline();
+    }
+
+    /**
+     * Sets the {@link OutputPipeline} processing stick positions once per sample
+     * before listeners are notified.
+     * @param aOutputPipeline	{@link OutputPipeline} or {@code null} to disable output processing.
+     */
+    public void setOutputPipeline(OutputPipeline aOutputPipeline){
+        mEngine.setOutputPipeline(aOutputPipeline);
+    }
+
+    /**
+     * @return	{@link DirectionEngine} classifying directions or {@code null}.
+     */
+    public DirectionEngine getDirectionEngine(){
+        return mEngine.getDirectionEngine();
     }
 
     /**
+     * Sets the {@link DirectionEngine} classifying orientations and sectors of
+     * stick states, e.g. {@link DirectionEngine#fourWay()} for D-pad use.
+     * Combine with {@link EmissionFilter#setTransitionsOnly(boolean)} or
+     * {@link OnDirectionChangedListener} to be notified on direction changes only.
+     * @param aDirectionEngine	{@link DirectionEngine} or {@code null} to classify
+     * 							orientations by position signs.
+     */
+    public void setDirectionEngine(DirectionEngine aDirectionEngine){
+        mEngine.setDirectionEngine(aDirectionEngine);
+    }
+
+    /**
+     * Copies metrics of this view into a snapshot.
+     * Metrics are only collected if {@link JoystickMetrics#ENABLED} is set.
+     * @param out	{@link JoystickMetrics.Snapshot} to copy metrics into.
+     * @return		{@code true} if metrics were copied, {@code false} if metrics are disabled.
+     */
+    public boolean getMetrics(JoystickMetrics.Snapshot out){
+        if( !JoystickMetrics.ENABLED )
+            return false;
+
+        mMetrics.snapshot(out);
+        out.mCoalescedCount = mPositionDispatcher.getCoalescedCount();
+        out.mDroppedSampleCount = mPositionDispatcher.getDroppedSampleCount();
+        return true;
+    }
+
+    /**
+     * Resets metrics of this view.
+     */
+    public void resetMetrics(){
+        if( JoystickMetrics.ENABLED )
+            mMetrics.reset();
+    }
+
+    /**
+     * @return	{@link SessionRecording} input samples are recorded to or {@code null}.
+     */
+    public SessionRecording getSessionRecording(){
+        return mSessionRecording;
+    }
+
+    /**
+     * Records all raw input samples processed by this view, e.g. to replay them
+     * later with {@link SessionReplayer}. Samples are recorded relative to the origin
+     * of the stick area, so floating and trailing origins replay like a fixed origin.
+     * @param aSessionRecording	{@link SessionRecording} to record to or {@code null} to stop recording.
+     */
+    public void setSessionRecording(SessionRecording aSessionRecording){
+        mSessionRecording = aSessionRecording;
+        if( aSessionRecording != null )
+            aSessionRecording.setGeometry(mViewCenterX, mViewCenterY, mOuterBorderRadius);
+    }
+
+    public float getHitSlop(){
+        return mHitSlop;
+    }
+
+    /**
+     * @param aHitSlop	Additional touch radius around the stick in percent of the stick radius.
+     */
+    public void setHitSlop(float aHitSlop){
+        if( aHitSlop < 0.0f )
+            throw new IllegalArgumentException("hit slop must not be negative");
+        mHitSlop = aHitSlop;
+        updateHitRadii();
+    }
+
+    public boolean isGrabAnywhere(){
+        return mGrabAnywhere;
+    }
+
+    /**
+     * @param aGrabAnywhere	{@code true} to let touches anywhere in the stick area grab the stick,
+     * 						the stick then jumps to the touch position.
+     */
+    public void setGrabAnywhere(boolean aGrabAnywhere){
+        mGrabAnywhere = aGrabAnywhere;
+    }
+
+    public boolean isFloating(){
+        return mFloating;
+    }
+
+    /**
+     * Enables floating mode. In floating mode a touch anywhere inside the floating bounds
+     * places the stick area at the touch position and stick positions are relative to it.
+     * After release the stick area returns to the view center.
+     * @param aFloating	{@code true} to enable floating mode.
+     */
+    public void setFloating(boolean aFloating){
+        mFloating = aFloating;
+        if( !aFloating && mActivePointer == MotionEvent.INVALID_POINTER_ID && !mReturning ){
+            setOrigin(mViewCenterX, mViewCenterY);
+            invalidate();
+        }
+    }
+
+    public boolean isTrailingOrigin(){
+        return mTrailingOrigin;
+    }
+
+    /**
+     * @param aTrailingOrigin	{@code true} to let the stick area follow the finger in floating mode
+     * 							if the finger moves beyond the outer border.
+     */
+    public void setTrailingOrigin(boolean aTrailingOrigin){
+        mTrailingOrigin = aTrailingOrigin;
+    }
+
+    /**
+     * Sets the bounds the stick area may be placed in, in floating mode.
+     * Bounds are given in fractions of the view size from 0 to 1. Default are the view bounds.
+     * @param left		Left border.
+     * @param top		Top border.
+     * @param right		Right border.
+     * @param bottom	Bottom border.
+     */
+    public void setFloatingBounds(float left, float top, float right, float bottom){
+        if( !(left < right && top < bottom) )
+            throw new IllegalArgumentException("empty floating bounds");
+        mFloatingBounds[0] = left;
+        mFloatingBounds[1] = top;
+        mFloatingBounds[2] = right;
+        mFloatingBounds[3] = bottom;
+    }
+
+    public float getPredictionLookAhead(){
+        return mPredictionLookAhead;
+    }
+
+    /**
+     * Enables position prediction. Velocity and acceleration of the stick are estimated
+     * from the last input samples and the position is extrapolated by the look-ahead time.
+     * Predicted positions are clamped to the outer border circle and can be read
+     * with {@link #readPredictedState(JoystickState)}. They are not passed through the
+     * {@link OutputPipeline} and not delivered to listeners.
+     * @param aLookAhead	Look-ahead time in milliseconds, 0 to disable prediction.
+     */
+    public void setPredictionLookAhead(float aLookAhead){
+        if( aLookAhead < 0.0f )
+            throw new IllegalArgumentException("look-ahead must not be negative");
+        mPredictionLookAhead = aLookAhead;
+        if( aLookAhead == 0.0f )
+            mPredictor = null;
+        else if( mPredictor == null )
+            mPredictor = new PositionPredictor(PREDICTION_SAMPLES);
+    }
+
+    /**
+     * Copies the latest predicted stick state. May be called from any thread.
+     * The timestamp of the state is the sample time plus the look-ahead time.
+     * If prediction is disabled, the state is not changed.
+     * @param out	{@link JoystickState} to copy state into.
+     * @return		Sequence number of the copied state.
+     */
+    public int readPredictedState(JoystickState out){
+        return mPublishedPrediction.read(out);
+    }
+
+    /**
+     * Returns the stream of all processed stick states, e.g. for consumers that
+     * poll states at their own pace with a backpressure strategy:
+     * <pre>
+     * JoystickStream.Cursor cursor = view.getStream().openCursor(JoystickStream.BACKPRESSURE_DROP_OLDEST, 64);
+     * while( cursor.poll(state, 100) )
+     *     log(state);
+     * </pre>
+     * May be called from any thread. The stream is created on first call.
+     * @return	{@link JoystickStream} of this view.
+     */
+    public JoystickStream getStream(){
+        JoystickStream vStream = mStream;
+        if( vStream == null ){
+            synchronized( this ){
+                vStream = mStream;
+                if( vStream == null ){
+                    vStream = new JoystickStream(STREAM_CAPACITY);
+                    mStream = vStream;
+                }
+            }
+        }
+        return vStream;
+    }
+
+    /**
+     * @return	{@link JoystickEngine} calculating stick positions of this view.
+     */
+    public JoystickEngine getEngine(){
+        return mEngine;
+    }
+
+    /**
+     * @return	{@link PositionDispatcher} used to notify listeners.
+     */
+    public PositionDispatcher getPositionDispatcher(){
+        return mPositionDispatcher;
+    }
+
+    /**
+     * Sets the {@link PositionDispatcher} used to notify listeners.
+     * Already registered listeners are not moved to the new dispatcher.
+     * @param dispatcher	{@link PositionDispatcher}, e.g. one created with
+     * 						{@link PositionDispatcher#forHandler(android.os.Handler)}.
+     */
+    public void setPositionDispatcher(PositionDispatcher dispatcher){
+        if( dispatcher == null )
+            throw new IllegalArgumentException("dispatcher must not be null");
+        mPositionDispatcher.release();
+        mPositionDispatcher = dispatcher;
+        if( JoystickMetrics.ENABLED )
+            dispatcher.setMetrics(mMetrics);
+    }
+
+    /**
+     * Copies the latest stick state. May be called from any thread.
+     * The copy is consistent, i.e. x, y, orientation and timestamp always belong
+     * to the same sample. Does not lock and does not allocate.
+     * @param out	{@link JoystickState} to copy state into.
+     * @return		Sequence number of the copied state, see {@link #getStateSequence()}.
+     */
+    public int readState(JoystickState out){
+        return mInput.mPublishedState.read(out);
+    }
+
+    /**
+     * May be called from any thread to check for new states without copying them.
+     * @return	Sequence number of the latest stick state, increases with every state change.
+     */
+    public int getStateSequence(){
+        return mInput.mPublishedState.getSequence();
+    }
+
+    /**
+     * May be called from any thread.
+     * Use {@link #readState(JoystickState)} to get x and y of the same sample.
      * @return	{@link Float} stick x position in range of -100% to 100%.
      */
     public float getXPosition(){
-        return mStickRelativeXPos;
+        return mInput.mPublishedState.getX();
     }
 
     /**
+     * May be called from any thread.
+     * Use {@link #readState(JoystickState)} to get x and y of the same sample.
      * @return	{@link Float} stick y position in range of -100% to 100%.
      */
     public float getYPosition(){
-        return mStickRelativeYPos;
+        return mInput.mPublishedState.getY();
     }
 
     /**
+     * May be called from any thread.
      * @return	{@link StickOrientation} stick orientation.
      * 			See {@link StickOrientation} enum in {@link JoystickView} class for reference.
      */
     public StickOrientation getOrientation(){
-        return mStickOrientation;
+        return JoystickState.orientationOf( mInput.mPublishedState.getOrientation() );
     }
 
     public boolean isOuterBorder() {
-        return mShowOuterBorder;
+        return mStyle.mShowOuterBorder;
     }
 
     public void setShowOuterBorder(boolean aShowOuterBorder) {
-        mShowOuterBorder = aShowOuterBorder;
-        invalidate();
-        requestLayout();
+        editStyle().mShowOuterBorder = aShowOuterBorder;
+        onStyleChanged( JoystickStyle.STYLE_OUTER_BORDER );
     }
 
     public float getOuterBorderWidth() {
-        return mOuterBorderWidth;
+        return mStyle.mOuterBorderWidth;
     }
 
     public void setOuterBorderWidth(float aOuterBorderWidth) {
-        mOuterBorderWidth = aOuterBorderWidth;
-        invalidate();
-        requestLayout();
+        editStyle().mOuterBorderWidth = aOuterBorderWidth;
+        onStyleChanged( JoystickStyle.STYLE_OUTER_BORDER | JoystickStyle.STYLE_GEOMETRY );
     }
 
     public int getOuterBorderColor() {
-        return mOuterBorderColor;
+        return mStyle.mOuterBorderColor;
     }
 
     public void setOuterBorderColor(int aOuterBorderColor) {
-        mOuterBorderColor = aOuterBorderColor;
-        init();
-        invalidate();
-        requestLayout();
+        editStyle().mOuterBorderColor = aOuterBorderColor;
+        onStyleChanged( JoystickStyle.STYLE_OUTER_BORDER );
     }
 
     public boolean isCross() {
-        return mShowCross;
+        return mStyle.mShowCross;
     }
 
     public void setShowCross(boolean aShowCross) {
-        mShowCross = aShowCross;
-        invalidate();
-        requestLayout();
+        editStyle().mShowCross = aShowCross;
+        onStyleChanged( JoystickStyle.STYLE_CROSS );
     }
 
     public float getCrossWidth() {
-        return mCrossWidth;
+        return mStyle.mCrossWidth;
     }
 
     public void setCrossWidth(float aCrossWidth) {
-        mCrossWidth = aCrossWidth;
-        init();
-        invalidate();
-        requestLayout();
+        editStyle().mCrossWidth = aCrossWidth;
+        onStyleChanged( JoystickStyle.STYLE_CROSS );
     }
 
     public int getCrossColor() {
-        return mCrossColor;
+        return mStyle.mCrossColor;
     }
 
     public void setCrossColor(int aCrossColor) {
-        mCrossColor = aCrossColor;
-        init();
-        invalidate();
-        requestLayout();
+        editStyle().mCrossColor = aCrossColor;
+        onStyleChanged( JoystickStyle.STYLE_CROSS );
     }
 
     public float getStickSize() {
-        return mStickSize;
+        return mStyle.mStickSize;
     }
 
     public void setStickSize(float aStickSize) {
-        mStickSize = aStickSize;
-        invalidate();
-        requestLayout();
+        editStyle().mStickSize = aStickSize;
+        onStyleChanged( JoystickStyle.STYLE_GEOMETRY );
     }
 
     public int getStickColor() {
-        return mStickColor;
+        return mStyle.mStickColor;
     }
 
     public void setStickColor(int aStickColor) {
-        mStickColor = aStickColor;
-        init();
-        invalidate();
-        requestLayout();
+        editStyle().mStickColor = aStickColor;
+        onStyleChanged( JoystickStyle.STYLE_STICK );
     }
 
     public int getStickInnerColor() {
-        return mStickInnerColor;
+        return mStyle.mStickInnerColor;
     }
 
     public void setStickInnerColor(int aStickInnerColor) {
-        mStickInnerColor = aStickInnerColor;
-        init();
-        invalidate();
-        requestLayout();
+        editStyle().mStickInnerColor = aStickInnerColor;
+        onStyleChanged( JoystickStyle.STYLE_STICK_INNER );
     }
 
     public boolean isUseGradient() {
-        return mStickUseGradient;
+        return mStyle.mStickUseGradient;
     }
 
     public void setStickUseGradient(boolean aStickUseGradient) {
-        mStickUseGradient = aStickUseGradient;
-        invalidate();
-        requestLayout();
+        editStyle().mStickUseGradient = aStickUseGradient;
+        onStyleChanged( JoystickStyle.STYLE_GRADIENT );
     }
 
     public int getStickGradientOuterColor() {
-        return mStickGradientOuterColor;
+        return mStyle.mStickGradientOuterColor;
     }
 
     public void setStickGradientOuterColor(int aStickGradientOuterColor) {
-        mStickGradientOuterColor = aStickGradientOuterColor;
-        invalidate();
-        requestLayout();
+        editStyle().mStickGradientOuterColor = aStickGradientOuterColor;
+        onStyleChanged( JoystickStyle.STYLE_GRADIENT );
     }
 
     public int getStickGradientInnerColor() {
-        return mStickGradientInnerColor;
+        return mStyle.mStickGradientInnerColor;
     }
 
     public void setStickGradientInnerColor(int aStickGradientInnerColor) {
-        mStickGradientInnerColor = aStickGradientInnerColor;
-        invalidate();
-        requestLayout();
+        editStyle().mStickGradientInnerColor = aStickGradientInnerColor;
+        onStyleChanged( JoystickStyle.STYLE_GRADIENT );
     }
 
     public boolean isStickBorder() {
-        return mShowStickBorder;
+        return mStyle.mShowStickBorder;
     }
 
     public void setShowStickBorder(boolean aShowStickBorder) {
-        mShowStickBorder = aShowStickBorder;
-        invalidate();
-        requestLayout();
+        editStyle().mShowStickBorder = aShowStickBorder;
+        onStyleChanged( JoystickStyle.STYLE_STICK_BORDER );
     }
 
     public float getStickBorderWidth() {
-        return mStickBorderWidth;
+        return mStyle.mStickBorderWidth;
     }
 
     public void setStickBorderWidth(float aStickBorderWidth) {
-        mStickBorderWidth = aStickBorderWidth;
-        init();
-        invalidate();
-        requestLayout();
+        editStyle().mStickBorderWidth = aStickBorderWidth;
+        onStyleChanged( JoystickStyle.STYLE_STICK_BORDER );
     }
 
     public int getStickBorderColor() {
-        return mStickBorderColor;
+        return mStyle.mStickBorderColor;
     }
 
     public void setStickBorderColor(int aStickBorderColor) {
-        mStickBorderColor = aStickBorderColor;
-        init();
-        invalidate();
-        requestLayout();
+        editStyle().mStickBorderColor = aStickBorderColor;
+        onStyleChanged( JoystickStyle.STYLE_STICK_BORDER );
     }
 
     public boolean isInvertXAxis() {
-        return mInvertXAxis;
+        return mEngine.isInvertXAxis();
     }
 
     public void setInvertXAxis(boolean aInvertXAxis) {
-        mInvertXAxis = aInvertXAxis;
+        mEngine.setInvertXAxis(aInvertXAxis);
     }
 
     public boolean isInvertYAxis() {
-        return mInvertYAxis;
+        return mEngine.isInvertYAxis();
     }
 
     public void setInvertYAxis(boolean aInvertYAxis) {
-        mInvertYAxis = aInvertYAxis;
+        mEngine.setInvertYAxis(aInvertYAxis);
     }
 
     public int getPositionPrecision(){
-        return mPositionPrecision;
+        return mEngine.getPositionPrecision();
     }
 
     public void setPositionPrecision(int aPositionPrecision){
-        mPositionPrecision = aPositionPrecision;
+        mEngine.setPositionPrecision(aPositionPrecision);
     }
 
     /**
@@ -583,30 +1599,65 @@ public class JoystickView extends View {
     }
 
     /**
-     * {@link Runnable} implementation class to
-     * notify a {@link OnPositionChangedListener} about a new
-     * joystick position.
+     * Interface for listening to {@link JoystickView} state changes
+     * without allocations. The passed {@link JoystickState} is reused and
+     * only valid during the callback.
      * @author H. Eilers
      *
      */
-    private class PositionChangedNotifier implements Runnable{
-        private OnPositionChangedListener mListener;
-        private float mXPos;
-        private float mYPos;
-        private StickOrientation mOrientation;
+    public interface OnJoystickStateListener{
+        public void onJoystickStateChanged(JoystickState state);
+    }
 
-        public PositionChangedNotifier(float x, float y, StickOrientation orientation, OnPositionChangedListener listener) {
-            mXPos = x;
-            mYPos = y;
-            mOrientation = orientation;
-            mListener = listener;
-        }
+    /**
+     * Interface for listening to {@link JoystickView} orientation changes only.
+     * @author H. Eilers
+     *
+     */
+    public interface OnOrientationChangedListener{
+        public void onJoystickOrientationChanged(StickOrientation orientation);
+    }
 
-        @Override
-        public void run() {
-            mListener.onJoyStickPositionChanged(mXPos, mYPos, mOrientation);
-        }
+    /**
+     * Interface for listening to {@link DirectionEngine} sector changes only.
+     * @author H. Eilers
+     *
+     */
+    public interface OnDirectionChangedListener{
+        /**
+         * @param sector		{@link DirectionEngine} sector or {@link DirectionEngine#NONE}.
+         * @param orientation	{@link StickOrientation} of sector.
+         */
+        public void onJoystickDirectionChanged(int sector, StickOrientation orientation);
+    }
 
+    /**
+     * Interface for listening to fired {@link JoystickTrigger}.
+     * The passed {@link JoystickState} is reused and only valid during the callback.
+     * @author H. Eilers
+     *
+     */
+    public interface OnJoystickTriggerListener{
+        /**
+         * @param trigger	Fired {@link JoystickTrigger}.
+         * @param edge		{@link JoystickTrigger#EDGE_ENTER} or {@link JoystickTrigger#EDGE_LEAVE}.
+         * @param state		{@link JoystickState} that fired the trigger.
+         */
+        public void onJoystickTrigger(JoystickTrigger trigger, int edge, JoystickState state);
+    }
+
+    /**
+     * Interface for receiving all {@link JoystickView} samples in batches.
+     * The passed samples are reused and only valid during the callback.
+     * @author H. Eilers
+     *
+     */
+    public interface OnJoystickBatchListener{
+        /**
+         * @param samples	{@link JoystickState} samples, oldest first.
+         * @param count		Number of valid samples in {@code samples}.
+         */
+        public void onJoystickBatch(JoystickState[] samples, int count);
     }
 
     /**
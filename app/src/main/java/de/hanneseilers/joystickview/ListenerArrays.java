@@ -0,0 +1,58 @@
+package de.hanneseilers.joystickview;
+
+
+import java.lang.reflect.Array;
+
+/**
+ * Helpers for copy on write listener arrays.
+ * Listener arrays are replaced on every change, so they can be iterated
+ * without locking and without allocating an iterator.
+ * @author H. Eilers
+ *
+ */
+final class ListenerArrays {
+
+    private ListenerArrays(){}
+
+    /**
+     * @param listeners	Current listener array.
+     * @param listener	Listener to add.
+     * @return			New array with listener appended, or {@code listeners} if already contained.
+     */
+    static <T> T[] add(T[] listeners, T listener){
+        if( listener == null || indexOf(listeners, listener) >= 0 )
+            return listeners;
+
+        @SuppressWarnings("unchecked")
+        T[] vResult = (T[]) Array.newInstance(listeners.getClass().getComponentType(), listeners.length + 1);
+        System.arraycopy(listeners, 0, vResult, 0, listeners.length);
+        vResult[listeners.length] = listener;
+        return vResult;
+    }
+
+    /**
+     * @param listeners	Current listener array.
+     * @param listener	Listener to remove.
+     * @return			New array without listener, or {@code listeners} if not contained.
+     */
+    static <T> T[] remove(T[] listeners, T listener){
+        final int vIndex = indexOf(listeners, listener);
+        if( vIndex < 0 )
+            return listeners;
+
+        @SuppressWarnings("unchecked")
+        T[] vResult = (T[]) Array.newInstance(listeners.getClass().getComponentType(), listeners.length - 1);
+        System.arraycopy(listeners, 0, vResult, 0, vIndex);
+        System.arraycopy(listeners, vIndex + 1, vResult, vIndex, listeners.length - vIndex - 1);
+        return vResult;
+    }
+
+    private static int indexOf(Object[] listeners, Object listener){
+        for( int i = 0; i < listeners.length; i++ ){
+            if( listeners[i].equals(listener) )
+                return i;
+        }
+        return -1;
+    }
+
+}
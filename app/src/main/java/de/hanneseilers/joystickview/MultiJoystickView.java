@@ -0,0 +1,412 @@
+package de.hanneseilers.joystickview;
+
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.support.v4.view.MotionEventCompat;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import de.hanneseilers.joystickview.JoystickView.OnJoystickStateListener;
+import de.hanneseilers.joystickview.JoystickView.OnPositionChangedListener;
+import de.hanneseilers.joystickview.R;
+
+/**
+ * Multi Joystick View class.
+ * Shows any number of independent joysticks in one view, e.g. for dual stick layouts.
+ * Every stick is placed in a rectangular region given in fractions of the view size
+ * and is controlled by its own touch pointer. Every stick has its own
+ * {@link PositionDispatcher} to notify listeners.
+ * Uses the same attributes as {@link JoystickView} for all sticks, drawn with a shared
+ * {@link JoystickStyle}. Regions are placed inside the view padding.
+ * @author H. Eilers
+ *
+ */
+public class MultiJoystickView extends View {
+
+    // Spatial index grid size
+    private static final int GRID_SIZE = 8;
+
+    // Attributes
+    private final JoystickStyle mStyle;
+    private boolean mInvertXAxis, mInvertYAxis;
+    private int mPositionPrecision;
+
+    // Stick circle paint of this view, carries the gradient shader of each stick
+    private final Paint mPaintStickCircle;
+
+    // Sticks
+    private Stick[] mSticks = new Stick[0];
+
+    // Spatial index: stick indices overlapping each grid cell
+    private final int[][] mGrid = new int[GRID_SIZE * GRID_SIZE][];
+    private float mCellWidth, mCellHeight;
+
+    private long mEventTime;
+
+
+    /**
+     * Constructor
+     * @param context	{@link Context}.
+     * @param attrs		{@link AttributeSet}.
+     */
+    public MultiJoystickView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        // get attributes
+        TypedArray vAttr = context.getTheme().obtainStyledAttributes(
+                attrs, R.styleable.JoystickView, 0 , 0);
+
+        try{
+
+            mStyle = JoystickStyle.obtain(vAttr);
+
+            mInvertXAxis = vAttr.getBoolean(R.styleable.JoystickView_invertXAxis, false);
+            mInvertYAxis = vAttr.getBoolean(R.styleable.JoystickView_invertYAxis, false);
+            mPositionPrecision = vAttr.getInt(R.styleable.JoystickView_positionPrecision, 2);
+
+        } finally {
+            vAttr.recycle();
+        }
+
+        mPaintStickCircle = new Paint( mStyle.mPaintStickCircle );
+    }
+
+    /**
+     * Adds a stick.
+     * The region is given in fractions of the view size from 0 to 1.
+     * @param left		Left border of stick region.
+     * @param top		Top border of stick region.
+     * @param right		Right border of stick region.
+     * @param bottom	Bottom border of stick region.
+     * @return			Index of the new stick.
+     */
+    public int addStick(float left, float top, float right, float bottom){
+        if( !(left < right && top < bottom) )
+            throw new IllegalArgumentException("empty stick region");
+
+        final Stick[] vSticks = new Stick[mSticks.length + 1];
+        System.arraycopy(mSticks, 0, vSticks, 0, mSticks.length);
+        vSticks[mSticks.length] = new Stick(left, top, right, bottom);
+        mSticks = vSticks;
+
+        updateGeometry(getWidth(), getHeight());
+        invalidate();
+        return mSticks.length - 1;
+    }
+
+    /**
+     * @return	Number of sticks.
+     */
+    public int getStickCount(){
+        return mSticks.length;
+    }
+
+    /**
+     * Registers a {@link OnPositionChangedListener} for one stick.
+     * @param stick		Stick index.
+     * @param listener	{@link OnPositionChangedListener} to register.
+     */
+    public void setOnPositionChangedListener(int stick, OnPositionChangedListener listener){
+        mSticks[stick].mDispatcher.addPositionListener(listener);
+    }
+
+    /**
+     * Removes a registered {@link OnPositionChangedListener} of one stick.
+     * @param stick		Stick index.
+     * @param listener	{@link OnPositionChangedListener} to remove.
+     */
+    public void removeOnPositionChangedListener(int stick, OnPositionChangedListener listener){
+        mSticks[stick].mDispatcher.removePositionListener(listener);
+    }
+
+    /**
+     * Registers a {@link OnJoystickStateListener} for one stick.
+     * @param stick		Stick index.
+     * @param listener	{@link OnJoystickStateListener} to register.
+     */
+    public void addOnJoystickStateListener(int stick, OnJoystickStateListener listener){
+        mSticks[stick].mDispatcher.addStateListener(listener);
+    }
+
+    /**
+     * Removes a registered {@link OnJoystickStateListener} of one stick.
+     * @param stick		Stick index.
+     * @param listener	{@link OnJoystickStateListener} to remove.
+     */
+    public void removeOnJoystickStateListener(int stick, OnJoystickStateListener listener){
+        mSticks[stick].mDispatcher.removeStateListener(listener);
+    }
+
+    /**
+     * Sets the {@link PositionDispatcher} of one stick.
+     * Already registered listeners are not moved to the new dispatcher.
+     * @param stick			Stick index.
+     * @param dispatcher	{@link PositionDispatcher}.
+     */
+    public void setPositionDispatcher(int stick, PositionDispatcher dispatcher){
+        if( dispatcher == null )
+            throw new IllegalArgumentException("dispatcher must not be null");
+        mSticks[stick].mDispatcher.release();
+        mSticks[stick].mDispatcher = dispatcher;
+    }
+
+    /**
+     * Copies the latest state of one stick. May be called from any thread.
+     * @param stick	Stick index.
+     * @param out	{@link JoystickState} to copy state into.
+     * @return		Sequence number of the copied state.
+     */
+    public int readState(int stick, JoystickState out){
+        return mSticks[stick].mInput.mPublishedState.read(out);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateGeometry(w, h);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        for( int i = 0; i < mSticks.length; i++ )
+            mSticks[i].mDispatcher.release();
+    }
+
+    /**
+     * Calculates stick dimensions inside the view padding and rebuilds the spatial index.
+     * @param w	View width.
+     * @param h	View height.
+     */
+    private void updateGeometry(int w, int h){
+        final int vPaddingLeft = getPaddingLeft();
+        final int vPaddingTop = getPaddingTop();
+        final int vWidth = Math.max(w - vPaddingLeft - getPaddingRight(), 0);
+        final int vHeight = Math.max(h - vPaddingTop - getPaddingBottom(), 0);
+        for( int i = 0; i < mSticks.length; i++ )
+            mSticks[i].updateGeometry(vPaddingLeft, vPaddingTop, vWidth, vHeight);
+
+        // spatial index
+        mCellWidth = w / (float) GRID_SIZE;
+        mCellHeight = h / (float) GRID_SIZE;
+        final int[] vCandidates = new int[mSticks.length];
+        for( int vRow = 0; vRow < GRID_SIZE; vRow++ ){
+            for( int vColumn = 0; vColumn < GRID_SIZE; vColumn++ ){
+                final float vLeft = vColumn * mCellWidth;
+                final float vTop = vRow * mCellHeight;
+                int vCount = 0;
+                for( int i = 0; i < mSticks.length; i++ ){
+                    final Stick vStick = mSticks[i];
+                    if( vStick.mLeft < vLeft + mCellWidth && vStick.mRight > vLeft
+                            && vStick.mTop < vTop + mCellHeight && vStick.mBottom > vTop )
+                        vCandidates[vCount++] = i;
+                }
+                final int[] vCell = new int[vCount];
+                System.arraycopy(vCandidates, 0, vCell, 0, vCount);
+                mGrid[vRow * GRID_SIZE + vColumn] = vCell;
+            }
+        }
+    }
+
+    /**
+     * Finds the free stick whose region contains a touch point.
+     * @param x	Touch x position.
+     * @param y	Touch y position.
+     * @return	{@link Stick} or {@code null}.
+     */
+    private Stick findStick(float x, float y){
+        if( mCellWidth <= 0.0f || mCellHeight <= 0.0f )
+            return null;
+
+        final int vColumn = Math.min( Math.max((int) (x / mCellWidth), 0), GRID_SIZE - 1 );
+        final int vRow = Math.min( Math.max((int) (y / mCellHeight), 0), GRID_SIZE - 1 );
+        final int[] vCell = mGrid[vRow * GRID_SIZE + vColumn];
+        if( vCell == null )
+            return null;
+
+        for( int i = 0; i < vCell.length; i++ ){
+            final Stick vStick = mSticks[vCell[i]];
+            if( vStick.mActivePointer == MotionEvent.INVALID_POINTER_ID
+                    && x >= vStick.mLeft && x < vStick.mRight
+                    && y >= vStick.mTop && y < vStick.mBottom )
+                return vStick;
+        }
+        return null;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        for( int i = 0; i < mSticks.length; i++ ){
+            final Stick vStick = mSticks[i];
+            mStyle.drawStaticLayers(canvas, vStick.mCenterX, vStick.mCenterY,
+                    vStick.mOuterBorderRadius, vStick.mCrossLines);
+
+            mPaintStickCircle.setShader( vStick.mStickCircleShader );
+            mStyle.drawStick(canvas, vStick.mStickCenterX, vStick.mStickCenterY,
+                    vStick.mStickRadius, vStick.mStickRadius * 0.6f, mPaintStickCircle);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        final int vAction = MotionEventCompat.getActionMasked(event);
+        int vPointerIndex;
+        Stick vStick;
+
+        mEventTime = event.getEventTime();
+
+        switch(vAction){
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // grab free stick in touched region
+                vPointerIndex = MotionEventCompat.getActionIndex(event);
+                final float xPos = MotionEventCompat.getX(event, vPointerIndex);
+                final float yPos = MotionEventCompat.getY(event, vPointerIndex);
+
+                vStick = findStick(xPos, yPos);
+                if( vStick != null ){
+                    vStick.mActivePointer = MotionEventCompat.getPointerId(event, vPointerIndex);
+                    setStickCenter(vStick, xPos, yPos);
+                }
+                break;
+
+            case MotionEvent.ACTION_MOVE:
+                for( int i = 0; i < mSticks.length; i++ ){
+                    vStick = mSticks[i];
+                    if( vStick.mActivePointer != MotionEvent.INVALID_POINTER_ID ){
+                        vPointerIndex = MotionEventCompat.findPointerIndex(event, vStick.mActivePointer);
+                        if( vPointerIndex >= 0 )
+                            setStickCenter(vStick,
+                                    MotionEventCompat.getX(event, vPointerIndex),
+                                    MotionEventCompat.getY(event, vPointerIndex));
+                    }
+                }
+                break;
+
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                for( int i = 0; i < mSticks.length; i++ ){
+                    vStick = mSticks[i];
+                    if( vStick.mActivePointer != MotionEvent.INVALID_POINTER_ID )
+                        centerStick(vStick);
+                }
+                break;
+
+            case MotionEvent.ACTION_POINTER_UP:
+                vPointerIndex = MotionEventCompat.getActionIndex(event);
+                final int vPointerId = MotionEventCompat.getPointerId(event, vPointerIndex);
+                for( int i = 0; i < mSticks.length; i++ ){
+                    vStick = mSticks[i];
+                    if( vStick.mActivePointer == vPointerId )
+                        centerStick(vStick);
+                }
+                break;
+        }
+
+        return true;
+    }
+
+    /**
+     * Releases a stick and moves it back to its center.
+     * The output pipeline is reset and the rest state is always emitted.
+     * @param stick	{@link Stick} to release.
+     */
+    private void centerStick(Stick stick){
+        stick.mActivePointer = MotionEvent.INVALID_POINTER_ID;
+        stick.mInput.reset();
+        setStickCenter(stick, stick.mCenterX, stick.mCenterY);
+    }
+
+    /**
+     * Sets the position of a stick, invalidates it and notifies its listeners.
+     * If the new stick position is outside the outer border circle,
+     * the position will be adjusted to be inside the outer border circle.
+     * @param stick		{@link Stick} to move.
+     * @param centerX	X position of stick center.
+     * @param centerY	Y position of stick center.
+     */
+    private void setStickCenter(Stick stick, float centerX, float centerY){
+        final JoystickInput vInput = stick.mInput;
+        vInput.process(centerX, centerY, mEventTime,
+                stick.mActivePointer != MotionEvent.INVALID_POINTER_ID, this);
+        stick.mStickCenterX = vInput.mEngine.getStickX();
+        stick.mStickCenterY = vInput.mEngine.getStickY();
+        invalidate();
+
+        if( vInput.acceptEmission() )
+            stick.mDispatcher.post(vInput.mState);
+    }
+
+    /**
+     * One stick of a {@link MultiJoystickView}.
+     * @author H. Eilers
+     *
+     */
+    private class Stick {
+        // Region in fractions of view size
+        private final float mRegionLeft, mRegionTop, mRegionRight, mRegionBottom;
+
+        // Dimensions
+        private float mLeft, mTop, mRight, mBottom;
+        private float mCenterX, mCenterY;
+        private float mOuterBorderRadius;
+        private float mStickRadius;
+        private float mStickCenterX, mStickCenterY;
+        private final float[] mCrossLines = new float[8];
+        private Shader mStickCircleShader;
+
+        // Touch and state
+        private int mActivePointer = MotionEvent.INVALID_POINTER_ID;
+        private final JoystickInput mInput = new JoystickInput();
+        private PositionDispatcher mDispatcher = new PositionDispatcher();
+
+        Stick(float left, float top, float right, float bottom){
+            mRegionLeft = left;
+            mRegionTop = top;
+            mRegionRight = right;
+            mRegionBottom = bottom;
+
+            mInput.mEngine.setInvertXAxis(mInvertXAxis);
+            mInput.mEngine.setInvertYAxis(mInvertYAxis);
+            mInput.mEngine.setPositionPrecision(mPositionPrecision);
+        }
+
+        void updateGeometry(int left, int top, int w, int h){
+            mLeft = left + mRegionLeft * w;
+            mTop = top + mRegionTop * h;
+            mRight = left + mRegionRight * w;
+            mBottom = top + mRegionBottom * h;
+            mCenterX = (mLeft + mRight) / 2.0f;
+            mCenterY = (mTop + mBottom) / 2.0f;
+
+            final float vShortestSide = Math.min(mRight - mLeft, mBottom - mTop);
+            mStickRadius = vShortestSide * (mStyle.mStickSize/100.0f);
+            mOuterBorderRadius = (vShortestSide / 2.0f) - mStickRadius - mStyle.mOuterBorderWidth;
+            mStickCenterX = mCenterX;
+            mStickCenterY = mCenterY;
+
+            mCrossLines[0] = mCenterX - mOuterBorderRadius;
+            mCrossLines[1] = mCenterY;
+            mCrossLines[2] = mCenterX + mOuterBorderRadius;
+            mCrossLines[3] = mCenterY;
+            mCrossLines[4] = mCenterX;
+            mCrossLines[5] = mCenterY + mOuterBorderRadius;
+            mCrossLines[6] = mCenterX;
+            mCrossLines[7] = mCenterY - mOuterBorderRadius;
+
+            mStickCircleShader = mStyle.mStickUseGradient && mStickRadius > 0.0f
+                    ? GradientCache.get(mCenterX, mCenterY, mStickRadius,
+                            mStyle.mStickGradientInnerColor, mStyle.mStickGradientOuterColor)
+                    : null;
+
+            mInput.mEngine.setGeometry(mCenterX, mCenterY, mOuterBorderRadius);
+        }
+    }
+
+}
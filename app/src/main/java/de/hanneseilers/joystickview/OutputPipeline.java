@@ -0,0 +1,323 @@
+package de.hanneseilers.joystickview;
+
+
+/**
+ * Output processing of relative stick positions.
+ * Runs once per sample in {@link JoystickEngine} before listeners are notified.
+ * Stages in processing order:
+ * <ol>
+ * <li>Dead zone, radial or per axis.</li>
+ * <li>Response curve (expo or custom), evaluated through a precomputed lookup table.</li>
+ * <li>Filter, exponential moving average or One Euro filter.</li>
+ * <li>Rate limiter.</li>
+ * </ol>
+ * All stages are disabled by default. Processing does not allocate objects.
+ * Instances are not thread safe.
+ * @author H. Eilers
+ *
+ */
+public class OutputPipeline {
+
+    /** Dead zone and curve are applied to the stick magnitude. */
+    public static final int MODE_RADIAL = 0;
+    /** Dead zone and curve are applied to each axis separately. */
+    public static final int MODE_AXIAL = 1;
+
+    public static final int FILTER_NONE = 0;
+    public static final int FILTER_EMA = 1;
+    public static final int FILTER_ONE_EURO = 2;
+
+    private static final int CURVE_TABLE_SIZE = 256;
+
+    // Dead zone and curve
+    private int mMode = MODE_RADIAL;
+    private float mDeadZone;
+    private float mExpo;
+    private float[] mCurveTable;
+
+    // Filter
+    private int mFilter = FILTER_NONE;
+    private float mEmaAlpha = 0.5f;
+    private float mMinCutoff = 1.0f, mBeta = 0.0f, mDerivateCutoff = 1.0f;
+    private final OneEuroAxis mOneEuroX = new OneEuroAxis();
+    private final OneEuroAxis mOneEuroY = new OneEuroAxis();
+
+    // Rate limiter
+    private float mRateLimit;
+
+    // Last output
+    private boolean mHasLast;
+    private long mLastTime;
+    private float mXPos, mYPos;
+
+
+    public int getMode(){
+        return mMode;
+    }
+
+    /**
+     * @param aMode	{@link #MODE_RADIAL} or {@link #MODE_AXIAL}.
+     */
+    public void setMode(int aMode){
+        if( aMode != MODE_RADIAL && aMode != MODE_AXIAL )
+            throw new IllegalArgumentException("unknown mode " + aMode);
+        mMode = aMode;
+    }
+
+    public float getDeadZone(){
+        return mDeadZone * 100.0f;
+    }
+
+    /**
+     * @param aDeadZone	Dead zone in percent from 0 to 100.
+     * 					Positions inside the dead zone are reported as 0,
+     * 					positions outside are rescaled to start at 0.
+     */
+    public void setDeadZone(float aDeadZone){
+        if( aDeadZone < 0.0f || aDeadZone >= 100.0f )
+            throw new IllegalArgumentException("dead zone must be in range of 0 to 100");
+        mDeadZone = aDeadZone / 100.0f;
+    }
+
+    public float getExpo(){
+        return mExpo;
+    }
+
+    /**
+     * Sets an expo response curve {@code expo * x^3 + (1 - expo) * x}.
+     * Replaces a custom curve.
+     * @param aExpo	Expo factor from 0 (linear) to 1 (cubic).
+     */
+    public void setExpo(float aExpo){
+        if( aExpo < 0.0f || aExpo > 1.0f )
+            throw new IllegalArgumentException("expo must be in range of 0 to 1");
+        mExpo = aExpo;
+
+        if( aExpo == 0.0f ){
+            mCurveTable = null;
+            return;
+        }
+
+        final float[] vTable = new float[CURVE_TABLE_SIZE + 1];
+        for( int i = 0; i <= CURVE_TABLE_SIZE; i++ ){
+            final float vX = i / (float) CURVE_TABLE_SIZE;
+            vTable[i] = aExpo * vX * vX * vX + (1.0f - aExpo) * vX;
+        }
+        mCurveTable = vTable;
+    }
+
+    /**
+     * Sets a custom response curve. Replaces an expo curve.
+     * @param points	Output values from 0 to 1 for equally spaced inputs from 0 to 1.
+     * 					At least two points, first point is the output for input 0,
+     * 					last point the output for input 1.
+     * 					{@code null} for a linear curve.
+     */
+    public void setCurve(float[] points){
+        mExpo = 0.0f;
+        if( points == null ){
+            mCurveTable = null;
+            return;
+        }
+        if( points.length < 2 )
+            throw new IllegalArgumentException("curve needs at least two points");
+
+        // resample to lookup table
+        final float[] vTable = new float[CURVE_TABLE_SIZE + 1];
+        final int vSegments = points.length - 1;
+        for( int i = 0; i <= CURVE_TABLE_SIZE; i++ ){
+            final float vPos = i * vSegments / (float) CURVE_TABLE_SIZE;
+            final int vIndex = Math.min( (int) vPos, vSegments - 1 );
+            final float vFraction = vPos - vIndex;
+            vTable[i] = points[vIndex] + (points[vIndex + 1] - points[vIndex]) * vFraction;
+        }
+        mCurveTable = vTable;
+    }
+
+    public int getFilter(){
+        return mFilter;
+    }
+
+    /**
+     * Sets an exponential moving average filter.
+     * @param alpha	Weight of a new sample from 0 (exclusive) to 1 (no filtering).
+     */
+    public void setEmaFilter(float alpha){
+        if( !(alpha > 0.0f && alpha <= 1.0f) )
+            throw new IllegalArgumentException("alpha must be in range of 0 (exclusive) to 1");
+        mEmaAlpha = alpha;
+        mFilter = FILTER_EMA;
+        reset();
+    }
+
+    /**
+     * Sets a One Euro filter (Casiez et al.), which filters strongly at low speeds
+     * and weakly at high speeds.
+     * @param minCutoff			Minimum cutoff frequency in Hz.
+     * @param beta				Speed coefficient.
+     * @param derivateCutoff	Cutoff frequency of the speed estimation in Hz.
+     */
+    public void setOneEuroFilter(float minCutoff, float beta, float derivateCutoff){
+        if( !(minCutoff > 0.0f && derivateCutoff > 0.0f) || beta < 0.0f )
+            throw new IllegalArgumentException("invalid One Euro filter parameters");
+        mMinCutoff = minCutoff;
+        mBeta = beta;
+        mDerivateCutoff = derivateCutoff;
+        mFilter = FILTER_ONE_EURO;
+        reset();
+    }
+
+    /**
+     * Disables filtering.
+     */
+    public void disableFilter(){
+        mFilter = FILTER_NONE;
+    }
+
+    public float getRateLimit(){
+        return mRateLimit * 100.0f;
+    }
+
+    /**
+     * @param aRateLimit	Maximum change of each axis in percent per second.
+     * 						0 to disable rate limiting.
+     */
+    public void setRateLimit(float aRateLimit){
+        if( aRateLimit < 0.0f )
+            throw new IllegalArgumentException("rate limit must not be negative");
+        mRateLimit = aRateLimit / 100.0f;
+    }
+
+    /**
+     * Resets filter and rate limiter state.
+     */
+    public void reset(){
+        mHasLast = false;
+    }
+
+    /**
+     * @return	x position of last processed sample in range of -1 to 1.
+     */
+    public float getX(){
+        return mXPos;
+    }
+
+    /**
+     * @return	y position of last processed sample in range of -1 to 1.
+     */
+    public float getY(){
+        return mYPos;
+    }
+
+    /**
+     * Processes a sample. Results are available through {@link #getX()} and {@link #getY()}.
+     * @param x		Relative x position in range of -1 to 1.
+     * @param y		Relative y position in range of -1 to 1.
+     * @param time	Sample time in milliseconds.
+     */
+    public void process(float x, float y, long time){
+        // dead zone and curve
+        if( mMode == MODE_AXIAL ){
+            x = shapeAxis(x);
+            y = shapeAxis(y);
+        } else {
+            final float vMagnitude = (float) Math.sqrt( x*x + y*y );
+            if( vMagnitude > 0.0f ){
+                final float vScale = shape( Math.min(vMagnitude, 1.0f) ) / vMagnitude;
+                x *= vScale;
+                y *= vScale;
+            }
+        }
+
+        if( !mHasLast ){
+            // first sample initializes filter and rate limiter
+            mHasLast = true;
+            mLastTime = time;
+            mOneEuroX.reset(x);
+            mOneEuroY.reset(y);
+            mXPos = x;
+            mYPos = y;
+            return;
+        }
+
+        final float vDeltaTime = Math.max( (time - mLastTime) / 1000.0f, 0.001f );
+        mLastTime = time;
+
+        // filter
+        if( mFilter == FILTER_EMA ){
+            x = mXPos + mEmaAlpha * (x - mXPos);
+            y = mYPos + mEmaAlpha * (y - mYPos);
+        } else if( mFilter == FILTER_ONE_EURO ){
+            x = mOneEuroX.filter(x, vDeltaTime);
+            y = mOneEuroY.filter(y, vDeltaTime);
+        }
+
+        // rate limiter
+        if( mRateLimit > 0.0f ){
+            final float vMaxDelta = mRateLimit * vDeltaTime;
+            x = mXPos + Math.max( -vMaxDelta, Math.min(vMaxDelta, x - mXPos) );
+            y = mYPos + Math.max( -vMaxDelta, Math.min(vMaxDelta, y - mYPos) );
+        }
+
+        mXPos = x;
+        mYPos = y;
+    }
+
+    /**
+     * Applies dead zone and curve to one axis.
+     */
+    private float shapeAxis(float value){
+        final float vShaped = shape( Math.min(Math.abs(value), 1.0f) );
+        return value < 0.0f ? -vShaped : vShaped;
+    }
+
+    /**
+     * Applies dead zone and curve to a magnitude from 0 to 1.
+     */
+    private float shape(float value){
+        if( value <= mDeadZone )
+            return 0.0f;
+        if( mDeadZone > 0.0f )
+            value = (value - mDeadZone) / (1.0f - mDeadZone);
+
+        final float[] vTable = mCurveTable;
+        if( vTable == null )
+            return value;
+
+        final float vPos = value * CURVE_TABLE_SIZE;
+        final int vIndex = Math.min( (int) vPos, CURVE_TABLE_SIZE - 1 );
+        return vTable[vIndex] + (vTable[vIndex + 1] - vTable[vIndex]) * (vPos - vIndex);
+    }
+
+    /**
+     * @param cutoff		Cutoff frequency in Hz.
+     * @param deltaTime		Time since last sample in seconds.
+     * @return				Smoothing factor of a low pass filter.
+     */
+    private static float alpha(float cutoff, float deltaTime){
+        final float vTau = 1.0f / (2.0f * (float) Math.PI * cutoff);
+        return 1.0f / (1.0f + vTau / deltaTime);
+    }
+
+    /**
+     * One Euro filter state of one axis.
+     */
+    private class OneEuroAxis {
+        private float mValue, mDerivate;
+
+        void reset(float value){
+            mValue = value;
+            mDerivate = 0.0f;
+        }
+
+        float filter(float value, float deltaTime){
+            final float vDerivate = (value - mValue) / deltaTime;
+            mDerivate += alpha(mDerivateCutoff, deltaTime) * (vDerivate - mDerivate);
+
+            final float vCutoff = mMinCutoff + mBeta * Math.abs(mDerivate);
+            mValue += alpha(vCutoff, deltaTime) * (value - mValue);
+            return mValue;
+        }
+    }
+
+}
@@ -0,0 +1,516 @@
+package de.hanneseilers.joystickview;
+
+
+import java.util.concurrent.Executor;
+
+import android.os.Handler;
+import de.hanneseilers.joystickview.JoystickView.OnDirectionChangedListener;
+import de.hanneseilers.joystickview.JoystickView.OnJoystickBatchListener;
+import de.hanneseilers.joystickview.JoystickView.OnJoystickStateListener;
+import de.hanneseilers.joystickview.JoystickView.OnOrientationChangedListener;
+import de.hanneseilers.joystickview.JoystickView.OnPositionChangedListener;
+
+/**
+ * Delivers {@link JoystickView} states to registered {@link OnPositionChangedListener}
+ * and {@link OnJoystickStateListener}.
+ * States are coalesced: if listeners are still busy when a new state arrives,
+ * only the newest state is delivered afterwards (latest value wins).
+ * {@link OnJoystickBatchListener} instead receive all samples posted since their last
+ * notification in one batch, up to {@link #BATCH_CAPACITY} samples.
+ * {@link OnOrientationChangedListener} are only notified if the orientation of a
+ * delivered state differs from the previously delivered one,
+ * {@link OnDirectionChangedListener} likewise only if the {@link DirectionEngine} sector differs.
+ * All listeners are notified serially in registration order, so every listener
+ * receives states in the order they were posted.
+ * By default a single long-lived worker thread is used. Alternatively a
+ * caller supplied {@link Executor} or {@link Handler} can be used.
+ * Posting and delivering states does not allocate objects.
+ * @author H. Eilers
+ *
+ */
+public class PositionDispatcher {
+
+    /** Maximum number of samples delivered in one batch. Older samples are dropped. */
+    public static final int BATCH_CAPACITY = 64;
+
+    private static final String WORKER_NAME = "JoystickView-Dispatcher";
+
+    // Listeners, copy on write
+    private volatile OnPositionChangedListener[] mPositionListeners = new OnPositionChangedListener[0];
+    private volatile OnJoystickStateListener[] mStateListeners = new OnJoystickStateListener[0];
+    private volatile OnJoystickBatchListener[] mBatchListeners = new OnJoystickBatchListener[0];
+    private volatile OnOrientationChangedListener[] mOrientationListeners = new OnOrientationChangedListener[0];
+    private volatile OnDirectionChangedListener[] mDirectionListeners = new OnDirectionChangedListener[0];
+
+    // Pending state, guarded by mLock
+    private final Object mLock = new Object();
+    private boolean mHasPending;
+    private final JoystickState mPendingState = new JoystickState();
+    private SampleBatch mPendingBatch = new SampleBatch();
+
+    // State and batch handed to listeners, guarded by mDeliverLock
+    private final Object mDeliverLock = new Object();
+    private final JoystickState mDeliveredState = new JoystickState();
+    private SampleBatch mDeliveredBatch = new SampleBatch();
+    private int mDeliveredOrientation;
+    private int mDeliveredSector = DirectionEngine.NONE;
+
+    // Metrics, only used if JoystickMetrics.ENABLED
+    private volatile JoystickMetrics mMetrics;
+    private long mPendingPostTime;
+    private long mDeliveredPostTime;
+
+    // Execution
+    private final Executor mExecutor;
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private boolean mDrainScheduled;
+    private Thread mWorker;
+    private long mCoalescedCount;
+    private long mDroppedSampleCount;
+
+
+    /**
+     * Constructor.
+     * Uses a single worker thread, that is started on first post.
+     */
+    public PositionDispatcher(){
+        mExecutor = null;
+    }
+
+    /**
+     * Constructor.
+     * @param executor	{@link Executor} to run listener notifications on.
+     * 					Notifications are never run concurrently, even on multi threaded executors.
+     */
+    public PositionDispatcher(Executor executor){
+        if( executor == null )
+            throw new IllegalArgumentException("executor must not be null");
+        mExecutor = executor;
+    }
+
+    /**
+     * Creates a {@link PositionDispatcher} notifying listeners on a {@link Handler} thread.
+     * @param handler	{@link Handler} to post listener notifications to.
+     * @return			{@link PositionDispatcher}.
+     */
+    public static PositionDispatcher forHandler(final Handler handler){
+        return new PositionDispatcher(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        });
+    }
+
+    /**
+     * Registers a {@link OnPositionChangedListener}.
+     * @param listener	{@link OnPositionChangedListener} to register.
+     */
+    public synchronized void addPositionListener(OnPositionChangedListener listener){
+        mPositionListeners = ListenerArrays.add(mPositionListeners, listener);
+    }
+
+    /**
+     * Removes a registered {@link OnPositionChangedListener}.
+     * @param listener	{@link OnPositionChangedListener} to remove.
+     */
+    public synchronized void removePositionListener(OnPositionChangedListener listener){
+        mPositionListeners = ListenerArrays.remove(mPositionListeners, listener);
+    }
+
+    /**
+     * Registers a {@link OnJoystickStateListener}.
+     * @param listener	{@link OnJoystickStateListener} to register.
+     */
+    public synchronized void addStateListener(OnJoystickStateListener listener){
+        mStateListeners = ListenerArrays.add(mStateListeners, listener);
+    }
+
+    /**
+     * Removes a registered {@link OnJoystickStateListener}.
+     * @param listener	{@link OnJoystickStateListener} to remove.
+     */
+    public synchronized void removeStateListener(OnJoystickStateListener listener){
+        mStateListeners = ListenerArrays.remove(mStateListeners, listener);
+    }
+
+    /**
+     * Registers a {@link OnJoystickBatchListener}.
+     * @param listener	{@link OnJoystickBatchListener} to register.
+     */
+    public synchronized void addBatchListener(OnJoystickBatchListener listener){
+        mBatchListeners = ListenerArrays.add(mBatchListeners, listener);
+    }
+
+    /**
+     * Removes a registered {@link OnJoystickBatchListener}.
+     * @param listener	{@link OnJoystickBatchListener} to remove.
+     */
+    public synchronized void removeBatchListener(OnJoystickBatchListener listener){
+        mBatchListeners = ListenerArrays.remove(mBatchListeners, listener);
+    }
+
+    /**
+     * Registers a {@link OnOrientationChangedListener}.
+     * @param listener	{@link OnOrientationChangedListener} to register.
+     */
+    public synchronized void addOrientationListener(OnOrientationChangedListener listener){
+        mOrientationListeners = ListenerArrays.add(mOrientationListeners, listener);
+    }
+
+    /**
+     * Removes a registered {@link OnOrientationChangedListener}.
+     * @param listener	{@link OnOrientationChangedListener} to remove.
+     */
+    public synchronized void removeOrientationListener(OnOrientationChangedListener listener){
+        mOrientationListeners = ListenerArrays.remove(mOrientationListeners, listener);
+    }
+
+    /**
+     * Registers a {@link OnDirectionChangedListener}.
+     * @param listener	{@link OnDirectionChangedListener} to register.
+     */
+    public synchronized void addDirectionListener(OnDirectionChangedListener listener){
+        mDirectionListeners = ListenerArrays.add(mDirectionListeners, listener);
+    }
+
+    /**
+     * Removes a registered {@link OnDirectionChangedListener}.
+     * @param listener	{@link OnDirectionChangedListener} to remove.
+     */
+    public synchronized void removeDirectionListener(OnDirectionChangedListener listener){
+        mDirectionListeners = ListenerArrays.remove(mDirectionListeners, listener);
+    }
+
+    /**
+     * @return	{@code true} if at least one listener is registered.
+     */
+    public boolean hasListeners(){
+        return mPositionListeners.length > 0 || mStateListeners.length > 0
+                || mBatchListeners.length > 0 || mOrientationListeners.length > 0
+                || mDirectionListeners.length > 0;
+    }
+
+    /**
+     * Posts a new state. Replaces a pending state that was not delivered yet.
+     * The state is copied, so the caller may reuse it.
+     * @param state	{@link JoystickState} to deliver.
+     */
+    public void post(JoystickState state){
+        post(null, 0, state);
+    }
+
+    /**
+     * Posts several samples at once, e.g. historical samples of a {@link android.view.MotionEvent}.
+     * Batch listeners receive all samples, other listeners only the newest one.
+     * The samples are copied, so the caller may reuse them.
+     * @param samples	{@link JoystickState} samples, oldest first.
+     * @param count		Number of valid samples in {@code samples}.
+     */
+    public void postBatch(JoystickState[] samples, int count){
+        if( count > 0 )
+            post(samples, count - 1, samples[count - 1]);
+    }
+
+    /**
+     * Posts a state and optional preceding samples.
+     * @param history	Preceding samples or {@code null}.
+     * @param count		Number of preceding samples.
+     * @param state		Newest {@link JoystickState}.
+     */
+    private void post(JoystickState[] history, int count, JoystickState state){
+        if( !hasListeners() )
+            return;
+
+        boolean vSchedule = false;
+        synchronized( mLock ){
+            if( mHasPending )
+                mCoalescedCount++;
+
+            mPendingState.set(state);
+            if( JoystickMetrics.ENABLED && !mHasPending )
+                mPendingPostTime = System.nanoTime();
+            mHasPending = true;
+
+            if( mBatchListeners.length > 0 ){
+                for( int i = 0; i < count; i++ )
+                    mDroppedSampleCount += mPendingBatch.add(history[i]);
+                mDroppedSampleCount += mPendingBatch.add(state);
+            }
+
+            if( mExecutor == null ){
+                // wake up or start worker
+                if( mWorker == null ){
+                    startWorker();
+                } else {
+                    mLock.notify();
+                }
+            } else if( !mDrainScheduled ){
+                mDrainScheduled = true;
+                vSchedule = true;
+            }
+        }
+
+        if( vSchedule )
+            mExecutor.execute( mDrainTask );
+    }
+
+    /**
+     * @return	Number of states that were replaced by a newer one before delivery.
+     */
+    public long getCoalescedCount(){
+        synchronized( mLock ){
+            return mCoalescedCount;
+        }
+    }
+
+    /**
+     * @return	Number of batch samples dropped because a batch exceeded {@link #BATCH_CAPACITY}.
+     */
+    public long getDroppedSampleCount(){
+        synchronized( mLock ){
+            return mDroppedSampleCount;
+        }
+    }
+
+    /**
+     * Stops the worker thread. Pending states are dropped.
+     * A new worker is started on the next post. It does not deliver states
+     * until a notification still running on the old worker has returned,
+     * the old worker exits afterwards without delivering again.
+     */
+    public void release(){
+        synchronized( mLock ){
+            mHasPending = false;
+            mPendingBatch.clear();
+            if( mWorker != null ){
+                mWorker.interrupt();
+                mWorker = null;
+            }
+        }
+    }
+
+    /**
+     * Starts a new worker thread. Caller must hold mLock.
+     */
+    private void startWorker(){
+        mWorker = new Thread( mWorkerLoop, WORKER_NAME );
+        mWorker.setDaemon( true );
+        mWorker.start();
+    }
+
+    /**
+     * Delivers pending states until no new state is pending.
+     * Used in {@link Executor} mode. If a listener throws, the exception is passed
+     * on to the executor and a new drain is scheduled for states posted meanwhile.
+     */
+    private void drain(){
+        boolean vDrained = false;
+        try {
+            while( true ){
+                synchronized( mDeliverLock ){
+                    synchronized( mLock ){
+                        if( !mHasPending ){
+                            mDrainScheduled = false;
+                            vDrained = true;
+                            return;
+                        }
+                        takePending();
+                    }
+                    deliver();
+                }
+            }
+        } finally {
+            if( !vDrained ){
+                final boolean vSchedule;
+                synchronized( mLock ){
+                    vSchedule = mHasPending;
+                    mDrainScheduled = vSchedule;
+                }
+                if( vSchedule )
+                    mExecutor.execute( mDrainTask );
+            }
+        }
+    }
+
+    /**
+     * Moves pending state and batch to delivery. Caller must hold mDeliverLock and mLock.
+     */
+    private void takePending(){
+        mDeliveredState.set(mPendingState);
+        mHasPending = false;
+        if( JoystickMetrics.ENABLED )
+            mDeliveredPostTime = mPendingPostTime;
+
+        // swap batch buffers
+        final SampleBatch vBatch = mDeliveredBatch;
+        vBatch.clear();
+        mDeliveredBatch = mPendingBatch;
+        mPendingBatch = vBatch;
+    }
+
+    /**
+     * Notifies all listeners about taken state and batch. Caller must hold mDeliverLock.
+     */
+    private void deliver(){
+        final JoystickMetrics vMetrics = JoystickMetrics.ENABLED ? mMetrics : null;
+        long vDeliverTime = 0;
+        if( vMetrics != null ){
+            vDeliverTime = System.nanoTime();
+            vMetrics.record(JoystickMetrics.STAGE_STATE_TO_DISPATCH, vDeliverTime - mDeliveredPostTime);
+            JoystickMetrics.beginSection("JoystickView#dispatch");
+        }
+
+        try {
+            final JoystickState state = mDeliveredState;
+            final OnPositionChangedListener[] vPositionListeners = mPositionListeners;
+            for( int i = 0; i < vPositionListeners.length; i++ ){
+                vPositionListeners[i].onJoyStickPositionChanged(
+                        state.getX(), state.getY(), state.getOrientation());
+            }
+
+            final OnJoystickStateListener[] vStateListeners = mStateListeners;
+            for( int i = 0; i < vStateListeners.length; i++ ){
+                vStateListeners[i].onJoystickStateChanged(state);
+            }
+
+            final int vOrientation = state.getOrientationOrdinal();
+            if( vOrientation != mDeliveredOrientation ){
+                mDeliveredOrientation = vOrientation;
+                final OnOrientationChangedListener[] vOrientationListeners = mOrientationListeners;
+                for( int i = 0; i < vOrientationListeners.length; i++ ){
+                    vOrientationListeners[i].onJoystickOrientationChanged(state.getOrientation());
+                }
+            }
+
+            final int vSector = state.getSector();
+            if( vSector != mDeliveredSector ){
+                mDeliveredSector = vSector;
+                final OnDirectionChangedListener[] vDirectionListeners = mDirectionListeners;
+                for( int i = 0; i < vDirectionListeners.length; i++ ){
+                    vDirectionListeners[i].onJoystickDirectionChanged(vSector, state.getOrientation());
+                }
+            }
+
+            final SampleBatch vBatch = mDeliveredBatch;
+            final OnJoystickBatchListener[] vBatchListeners = mBatchListeners;
+            if( vBatch.mCount > 0 ){
+                for( int i = 0; i < vBatchListeners.length; i++ ){
+                    vBatchListeners[i].onJoystickBatch(vBatch.mSamples, vBatch.mCount);
+                }
+            }
+        } finally {
+            if( vMetrics != null ){
+                JoystickMetrics.endSection();
+                vMetrics.record(JoystickMetrics.STAGE_DISPATCH_TO_RETURN, System.nanoTime() - vDeliverTime);
+            }
+        }
+    }
+
+    /**
+     * Sets metrics to record dispatch latencies to.
+     * Only used if {@link JoystickMetrics#ENABLED} is set.
+     * @param metrics	{@link JoystickMetrics} or {@code null}.
+     */
+    void setMetrics(JoystickMetrics metrics){
+        mMetrics = metrics;
+    }
+
+    /**
+     * Worker thread loop. Waits for pending states and delivers them.
+     * If a listener throws, the worker is replaced before the exception
+     * is passed on to the uncaught exception handler of the thread.
+     */
+    private final Runnable mWorkerLoop = new Runnable() {
+        @Override
+        public void run() {
+            final Thread vSelf = Thread.currentThread();
+            boolean vExited = false;
+            try {
+                loop(vSelf);
+                vExited = true;
+            } finally {
+                if( !vExited ){
+                    synchronized( mLock ){
+                        if( mWorker == vSelf ){
+                            mWorker = null;
+                            if( mHasPending )
+                                startWorker();
+                        }
+                    }
+                }
+            }
+        }
+
+        private void loop(Thread self) {
+            while( true ){
+                synchronized( mLock ){
+                    while( !mHasPending ){
+                        if( mWorker != self )
+                            return;
+                        try {
+                            mLock.wait();
+                        } catch (InterruptedException e) {
+                            // released, check state again
+                        }
+                    }
+                }
+
+                // a released worker may still be delivering, so the check is
+                // repeated after it finished and released the delivery lock
+                synchronized( mDeliverLock ){
+                    synchronized( mLock ){
+                        if( mWorker != self )
+                            return;
+                        if( !mHasPending )
+                            continue;
+                        takePending();
+                    }
+                    deliver();
+                }
+            }
+        }
+    };
+
+    /**
+     * Preallocated buffer of batch samples.
+     */
+    private static class SampleBatch {
+        private final JoystickState[] mSamples = new JoystickState[BATCH_CAPACITY];
+        private int mCount;
+
+        SampleBatch(){
+            for( int i = 0; i < mSamples.length; i++ )
+                mSamples[i] = new JoystickState();
+        }
+
+        /**
+         * Appends a copy of a sample. Drops the oldest sample if full.
+         * @param state	{@link JoystickState} to append.
+         * @return		Number of dropped samples.
+         */
+        int add(JoystickState state){
+            int vDropped = 0;
+            if( mCount == mSamples.length ){
+                // rotate oldest sample to the end and reuse it
+                final JoystickState vOldest = mSamples[0];
+                System.arraycopy(mSamples, 1, mSamples, 0, mCount - 1);
+                mSamples[mCount - 1] = vOldest;
+                mCount--;
+                vDropped = 1;
+            }
+            mSamples[mCount++].set(state);
+            return vDropped;
+        }
+
+        void clear(){
+            mCount = 0;
+        }
+    }
+
+}
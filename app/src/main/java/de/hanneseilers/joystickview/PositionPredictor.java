@@ -0,0 +1,213 @@
+package de.hanneseilers.joystickview;
+
+
+/**
+ * Predicts future stick positions from recent input samples.
+ * Velocity and acceleration of each axis are estimated by a least squares fit of a
+ * quadratic function to the samples in a fixed-size ring buffer. Samples older than a
+ * time window before the newest sample are dropped, so a pause does not bend the fit.
+ * Time is centered on the newest sample and sums are accumulated in double precision.
+ * The fitted function is extrapolated by a look-ahead time.
+ * Adding samples and predicting does not allocate objects. Instances are not thread safe.
+ * @author H. Eilers
+ *
+ */
+public class PositionPredictor {
+
+    private final long[] mTimes;
+    private final float[] mXPos, mYPos;
+    private int mHead;
+    private int mCount;
+    private long mSampleWindow = 100;
+
+    // Fit result, relative to time of newest sample in milliseconds
+    private float mVelocityX, mVelocityY;
+    private float mAccelerationX, mAccelerationY;
+    private float mPredictedX, mPredictedY;
+
+
+    /**
+     * Constructor.
+     * @param capacity	Number of recent samples used for prediction, at least 2.
+     */
+    public PositionPredictor(int capacity){
+        if( capacity < 2 )
+            throw new IllegalArgumentException("capacity must be at least 2");
+        mTimes = new long[capacity];
+        mXPos = new float[capacity];
+        mYPos = new float[capacity];
+    }
+
+    /**
+     * Adds a sample. Samples must be added in time order.
+     * A sample with the same time as the newest sample replaces it.
+     * @param x		X position.
+     * @param y		Y position.
+     * @param time	Sample time in milliseconds.
+     */
+    public void addSample(float x, float y, long time){
+        int vIndex;
+        if( mCount > 0 && mTimes[newest()] == time ){
+            vIndex = newest();
+        } else {
+            vIndex = (mHead + mCount) % mTimes.length;
+            if( mCount < mTimes.length )
+                mCount++;
+            else
+                mHead = (mHead + 1) % mTimes.length;
+        }
+        mTimes[vIndex] = time;
+        mXPos[vIndex] = x;
+        mYPos[vIndex] = y;
+
+        // drop samples outside the time window
+        while( mCount > 1 && time - mTimes[mHead] > mSampleWindow ){
+            mHead = (mHead + 1) % mTimes.length;
+            mCount--;
+        }
+    }
+
+    public long getSampleWindow(){
+        return mSampleWindow;
+    }
+
+    /**
+     * @param aSampleWindow	Maximum age of samples relative to the newest sample in milliseconds.
+     */
+    public void setSampleWindow(long aSampleWindow){
+        if( aSampleWindow <= 0 )
+            throw new IllegalArgumentException("sample window must be positive");
+        mSampleWindow = aSampleWindow;
+    }
+
+    /**
+     * Removes all samples, e.g. when the stick is released.
+     */
+    public void reset(){
+        mHead = 0;
+        mCount = 0;
+        mVelocityX = mVelocityY = 0.0f;
+        mAccelerationX = mAccelerationY = 0.0f;
+    }
+
+    /**
+     * @return	Number of buffered samples.
+     */
+    public int getSampleCount(){
+        return mCount;
+    }
+
+    /**
+     * Predicts the position at a time after the newest sample.
+     * Results are available through {@link #getPredictedX()} and {@link #getPredictedY()}.
+     * @param lookAhead	Time after newest sample in milliseconds.
+     * @return			{@code false} if there are no samples.
+     */
+    public boolean predict(float lookAhead){
+        if( mCount == 0 )
+            return false;
+
+        final int vNewest = newest();
+        final long vBaseTime = mTimes[vNewest];
+
+        // sums for least squares fit of x(t) = a + b*t + c*t^2, t relative to newest sample
+        double vS1 = 0, vS2 = 0, vS3 = 0, vS4 = 0;
+        double vSx = 0, vStx = 0, vSt2x = 0;
+        double vSy = 0, vSty = 0, vSt2y = 0;
+        for( int i = 0; i < mCount; i++ ){
+            final int vIndex = (mHead + i) % mTimes.length;
+            final double vT = mTimes[vIndex] - vBaseTime;
+            final double vT2 = vT * vT;
+            vS1 += vT;
+            vS2 += vT2;
+            vS3 += vT2 * vT;
+            vS4 += vT2 * vT2;
+            vSx += mXPos[vIndex];
+            vStx += vT * mXPos[vIndex];
+            vSt2x += vT2 * mXPos[vIndex];
+            vSy += mYPos[vIndex];
+            vSty += vT * mYPos[vIndex];
+            vSt2y += vT2 * mYPos[vIndex];
+        }
+        final double vN = mCount;
+
+        // quadratic fit with Cramer's rule
+        final double vDet = vN * (vS2*vS4 - vS3*vS3) - vS1 * (vS1*vS4 - vS3*vS2) + vS2 * (vS1*vS3 - vS2*vS2);
+        if( mCount >= 3 && Math.abs(vDet) > 1e-6 ){
+            mVelocityX = (float) (fitB(vN, vS1, vS2, vS3, vS4, vSx, vStx, vSt2x) / vDet);
+            mVelocityY = (float) (fitB(vN, vS1, vS2, vS3, vS4, vSy, vSty, vSt2y) / vDet);
+            mAccelerationX = (float) (2.0 * fitC(vN, vS1, vS2, vS3, vSx, vStx, vSt2x) / vDet);
+            mAccelerationY = (float) (2.0 * fitC(vN, vS1, vS2, vS3, vSy, vSty, vSt2y) / vDet);
+        } else {
+            // linear fit
+            final double vLinearDet = vN * vS2 - vS1 * vS1;
+            if( vLinearDet > 1e-6 ){
+                mVelocityX = (float) ((vN * vStx - vS1 * vSx) / vLinearDet);
+                mVelocityY = (float) ((vN * vSty - vS1 * vSy) / vLinearDet);
+            } else {
+                mVelocityX = mVelocityY = 0.0f;
+            }
+            mAccelerationX = mAccelerationY = 0.0f;
+        }
+
+        // extrapolate from newest sample
+        mPredictedX = mXPos[vNewest] + mVelocityX * lookAhead + 0.5f * mAccelerationX * lookAhead * lookAhead;
+        mPredictedY = mYPos[vNewest] + mVelocityY * lookAhead + 0.5f * mAccelerationY * lookAhead * lookAhead;
+        return true;
+    }
+
+    /**
+     * Numerator of linear coefficient of quadratic least squares fit.
+     */
+    private static double fitB(double n, double s1, double s2, double s3, double s4, double sv, double stv, double st2v){
+        return n * (stv*s4 - s3*st2v) - sv * (s1*s4 - s3*s2) + s2 * (s1*st2v - stv*s2);
+    }
+
+    /**
+     * Numerator of quadratic coefficient of quadratic least squares fit.
+     */
+    private static double fitC(double n, double s1, double s2, double s3, double sv, double stv, double st2v){
+        return n * (s2*st2v - stv*s3) - s1 * (s1*st2v - stv*s2) + sv * (s1*s3 - s2*s2);
+    }
+
+    private int newest(){
+        return (mHead + mCount - 1) % mTimes.length;
+    }
+
+    public float getPredictedX(){
+        return mPredictedX;
+    }
+
+    public float getPredictedY(){
+        return mPredictedY;
+    }
+
+    /**
+     * @return	Estimated x velocity per millisecond at newest sample.
+     */
+    public float getVelocityX(){
+        return mVelocityX;
+    }
+
+    /**
+     * @return	Estimated y velocity per millisecond at newest sample.
+     */
+    public float getVelocityY(){
+        return mVelocityY;
+    }
+
+    /**
+     * @return	Estimated x acceleration per millisecond squared.
+     */
+    public float getAccelerationX(){
+        return mAccelerationX;
+    }
+
+    /**
+     * @return	Estimated y acceleration per millisecond squared.
+     */
+    public float getAccelerationY(){
+        return mAccelerationY;
+    }
+
+}
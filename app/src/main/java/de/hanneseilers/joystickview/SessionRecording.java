@@ -0,0 +1,280 @@
+package de.hanneseilers.joystickview;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Recording of raw stick input samples (view position and time) for later replay
+ * through {@link SessionReplayer}.
+ * Positions are relative to the stick area center stored in the header. A view with a
+ * moving origin records them as header center plus the offset from its current origin.
+ * Samples are stored in a binary log, either in an append-only memory mapped file
+ * or in an in-memory ring buffer that overwrites the oldest samples when full.
+ * Recording does not allocate objects. Instances are not thread safe.
+ * <p>
+ * Log layout in big endian byte order:
+ * <pre>
+ * header (32 bytes):
+ *   int    magic ({@link #MAGIC})
+ *   int    version ({@link #VERSION})
+ *   int    capacity in samples
+ *   int    number of recorded samples
+ *   float  x position of stick area center
+ *   float  y position of stick area center
+ *   float  outer radius of stick area
+ *   int    reserved
+ * sample (16 bytes):
+ *   long   time in milliseconds
+ *   float  x position
+ *   float  y position
+ * </pre>
+ * @author H. Eilers
+ *
+ */
+public class SessionRecording {
+
+    public static final int MAGIC = 0x4A535243;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int SAMPLE_SIZE = 16;
+
+    private static final int OFFSET_COUNT = 12;
+    private static final int OFFSET_GEOMETRY = 16;
+
+    private final ByteBuffer mBuffer;
+    private final FileChannel mChannel;
+    private final int mCapacity;
+    private final boolean mRing;
+    private final boolean mReadOnly;
+
+    // ring buffer state
+    private int mHead;
+    private int mCount;
+    private long mDroppedCount;
+
+
+    private SessionRecording(ByteBuffer buffer, FileChannel channel, int capacity, boolean ring, boolean readOnly){
+        mBuffer = buffer;
+        mBuffer.order( ByteOrder.BIG_ENDIAN );
+        mChannel = channel;
+        mCapacity = capacity;
+        mRing = ring;
+        mReadOnly = readOnly;
+    }
+
+    /**
+     * Creates an in-memory recording. If full, the oldest samples are overwritten.
+     * @param capacity	Maximum number of samples.
+     * @return			{@link SessionRecording}.
+     */
+    public static SessionRecording createInMemory(int capacity){
+        if( capacity <= 0 )
+            throw new IllegalArgumentException("capacity must be positive");
+
+        final SessionRecording vRecording = new SessionRecording(
+                ByteBuffer.allocateDirect(HEADER_SIZE + capacity * SAMPLE_SIZE), null, capacity, true, false );
+        vRecording.writeHeader();
+        return vRecording;
+    }
+
+    /**
+     * Creates an append-only recording in a memory mapped file.
+     * An existing file is overwritten. If full, further samples are dropped.
+     * @param file		{@link File} to record to.
+     * @param capacity	Maximum number of samples.
+     * @return			{@link SessionRecording}.
+     * @throws IOException	If file could not be mapped.
+     */
+    public static SessionRecording createMapped(File file, int capacity) throws IOException{
+        if( capacity <= 0 )
+            throw new IllegalArgumentException("capacity must be positive");
+
+        final long vSize = HEADER_SIZE + (long) capacity * SAMPLE_SIZE;
+        final RandomAccessFile vFile = new RandomAccessFile(file, "rw");
+        try{
+            vFile.setLength(vSize);
+            final FileChannel vChannel = vFile.getChannel();
+            final MappedByteBuffer vBuffer = vChannel.map(FileChannel.MapMode.READ_WRITE, 0, vSize);
+            final SessionRecording vRecording = new SessionRecording(vBuffer, vChannel, capacity, false, false);
+            vRecording.writeHeader();
+            return vRecording;
+        } catch (IOException e) {
+            vFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a recorded file for replay.
+     * @param file	{@link File} written by a mapped recording.
+     * @return		Read only {@link SessionRecording}.
+     * @throws IOException	If file could not be mapped or is no recording.
+     */
+    public static SessionRecording openMapped(File file) throws IOException{
+        final RandomAccessFile vFile = new RandomAccessFile(file, "r");
+        try{
+            final FileChannel vChannel = vFile.getChannel();
+            final MappedByteBuffer vBuffer = vChannel.map(FileChannel.MapMode.READ_ONLY, 0, vChannel.size());
+            vBuffer.order( ByteOrder.BIG_ENDIAN );
+
+            if( vBuffer.capacity() < HEADER_SIZE || vBuffer.getInt(0) != MAGIC )
+                throw new IOException("not a session recording");
+            if( vBuffer.getInt(4) != VERSION )
+                throw new IOException("unsupported recording version " + vBuffer.getInt(4));
+
+            final int vCapacity = vBuffer.getInt(8);
+            final int vCount = vBuffer.getInt(OFFSET_COUNT);
+            if( vCount < 0 || vCount > vCapacity
+                    || HEADER_SIZE + (long) vCapacity * SAMPLE_SIZE > vBuffer.capacity() )
+                throw new IOException("corrupt session recording");
+
+            final SessionRecording vRecording = new SessionRecording(vBuffer, vChannel, vCapacity, false, true);
+            vRecording.mCount = vCount;
+            return vRecording;
+        } catch (IOException e) {
+            vFile.close();
+            throw e;
+        }
+    }
+
+    private void writeHeader(){
+        mBuffer.putInt(0, MAGIC);
+        mBuffer.putInt(4, VERSION);
+        mBuffer.putInt(8, mCapacity);
+        mBuffer.putInt(OFFSET_COUNT, 0);
+    }
+
+    /**
+     * Stores the geometry of the recorded stick area, needed to replay raw positions.
+     * @param centerX		X position of stick area center.
+     * @param centerY		Y position of stick area center.
+     * @param outerRadius	Outer radius of stick area.
+     */
+    public void setGeometry(float centerX, float centerY, float outerRadius){
+        checkWritable();
+        mBuffer.putFloat(OFFSET_GEOMETRY, centerX);
+        mBuffer.putFloat(OFFSET_GEOMETRY + 4, centerY);
+        mBuffer.putFloat(OFFSET_GEOMETRY + 8, outerRadius);
+    }
+
+    public float getCenterX(){
+        return mBuffer.getFloat(OFFSET_GEOMETRY);
+    }
+
+    public float getCenterY(){
+        return mBuffer.getFloat(OFFSET_GEOMETRY + 4);
+    }
+
+    public float getOuterRadius(){
+        return mBuffer.getFloat(OFFSET_GEOMETRY + 8);
+    }
+
+    /**
+     * Records a raw input sample.
+     * @param x		X position in view coordinates.
+     * @param y		Y position in view coordinates.
+     * @param time	Sample time in milliseconds.
+     */
+    public void record(float x, float y, long time){
+        checkWritable();
+
+        int vSlot;
+        if( mCount < mCapacity ){
+            vSlot = mRing ? (mHead + mCount) % mCapacity : mCount;
+            mCount++;
+        } else if( mRing ){
+            // overwrite oldest sample
+            vSlot = mHead;
+            mHead = (mHead + 1) % mCapacity;
+            mDroppedCount++;
+        } else {
+            mDroppedCount++;
+            return;
+        }
+
+        final int vOffset = HEADER_SIZE + vSlot * SAMPLE_SIZE;
+        mBuffer.putLong(vOffset, time);
+        mBuffer.putFloat(vOffset + 8, x);
+        mBuffer.putFloat(vOffset + 12, y);
+        mBuffer.putInt(OFFSET_COUNT, mCount);
+    }
+
+    /**
+     * @return	Number of recorded samples.
+     */
+    public int size(){
+        return mCount;
+    }
+
+    /**
+     * @return	Number of samples dropped or overwritten because the recording was full.
+     */
+    public long getDroppedCount(){
+        return mDroppedCount;
+    }
+
+    /**
+     * @param index	Sample index, 0 is the oldest sample.
+     * @return		Sample time in milliseconds.
+     */
+    public long getTime(int index){
+        return mBuffer.getLong( offsetOf(index) );
+    }
+
+    /**
+     * @param index	Sample index, 0 is the oldest sample.
+     * @return		Sample x position.
+     */
+    public float getX(int index){
+        return mBuffer.getFloat( offsetOf(index) + 8 );
+    }
+
+    /**
+     * @param index	Sample index, 0 is the oldest sample.
+     * @return		Sample y position.
+     */
+    public float getY(int index){
+        return mBuffer.getFloat( offsetOf(index) + 12 );
+    }
+
+    private int offsetOf(int index){
+        if( index < 0 || index >= mCount )
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mCount);
+        return HEADER_SIZE + ((mHead + index) % mCapacity) * SAMPLE_SIZE;
+    }
+
+    /**
+     * Removes all samples.
+     */
+    public void clear(){
+        checkWritable();
+        mHead = 0;
+        mCount = 0;
+        mDroppedCount = 0;
+        mBuffer.putInt(OFFSET_COUNT, 0);
+    }
+
+    /**
+     * Flushes a mapped recording to its file and closes it.
+     * @throws IOException	If file could not be closed.
+     */
+    public void close() throws IOException{
+        if( mChannel != null ){
+            if( !mReadOnly )
+                ((MappedByteBuffer) mBuffer).force();
+            mChannel.close();
+        }
+    }
+
+    private void checkWritable(){
+        if( mReadOnly )
+            throw new IllegalStateException("recording is read only");
+    }
+
+}
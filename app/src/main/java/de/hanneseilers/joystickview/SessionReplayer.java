@@ -0,0 +1,120 @@
+package de.hanneseilers.joystickview;
+
+
+import java.util.concurrent.locks.LockSupport;
+
+import de.hanneseilers.joystickview.JoystickView.OnJoystickStateListener;
+
+/**
+ * Replays a {@link SessionRecording} through a {@link JoystickEngine}, without touch hardware.
+ * The engine is set to the recorded geometry, so clamping, normalization and the
+ * {@link OutputPipeline} process the samples like during recording.
+ * Resulting states carry the recorded timestamps, so replays are deterministic
+ * regardless of replay speed.
+ * @author H. Eilers
+ *
+ */
+public class SessionReplayer {
+
+    /** Replays samples as fast as possible. */
+    public static final float MAX_SPEED = 0.0f;
+
+    private final SessionRecording mRecording;
+    private volatile boolean mStopped;
+
+
+    /**
+     * Constructor.
+     * @param recording	{@link SessionRecording} to replay.
+     */
+    public SessionReplayer(SessionRecording recording){
+        if( recording == null )
+            throw new IllegalArgumentException("recording must not be null");
+        mRecording = recording;
+    }
+
+    /**
+     * Replays all samples on the calling thread.
+     * @param engine	{@link JoystickEngine} to process samples with. Must not be used
+     * 					by another thread, e.g. a {@link JoystickView}, during replay.
+     * @param listener	{@link OnJoystickStateListener} to deliver resulting states to.
+     * @param speed		Replay speed, 1 for recorded speed, 2 for double speed
+     * 					or {@link #MAX_SPEED} to replay without delays.
+     * @return			Number of replayed samples.
+     */
+    public int replayToListener(JoystickEngine engine, final OnJoystickStateListener listener, float speed){
+        return replay(engine, new Target() {
+            @Override
+            public void deliver(JoystickState state) {
+                listener.onJoystickStateChanged(state);
+            }
+        }, speed);
+    }
+
+    /**
+     * Replays all samples on the calling thread and posts the resulting
+     * states to a {@link PositionDispatcher}.
+     * @param engine		{@link JoystickEngine} to process samples with.
+     * @param dispatcher	{@link PositionDispatcher} to post resulting states to.
+     * @param speed			Replay speed, see {@link #replayToListener(JoystickEngine, OnJoystickStateListener, float)}.
+     * @return				Number of replayed samples.
+     */
+    public int replayToDispatcher(JoystickEngine engine, final PositionDispatcher dispatcher, float speed){
+        return replay(engine, new Target() {
+            @Override
+            public void deliver(JoystickState state) {
+                dispatcher.post(state);
+            }
+        }, speed);
+    }
+
+    /**
+     * Stops a running replay.
+     */
+    public void stop(){
+        mStopped = true;
+    }
+
+    private int replay(JoystickEngine engine, Target target, float speed){
+        if( speed < 0.0f )
+            throw new IllegalArgumentException("speed must not be negative");
+
+        mStopped = false;
+        engine.setGeometry( mRecording.getCenterX(), mRecording.getCenterY(), mRecording.getOuterRadius() );
+        engine.reset();
+
+        final int vCount = mRecording.size();
+        if( vCount == 0 )
+            return 0;
+
+        final JoystickState vState = new JoystickState();
+        final long vFirstTime = mRecording.getTime(0);
+        final long vStartNanos = System.nanoTime();
+
+        for( int i = 0; i < vCount; i++ ){
+            if( mStopped )
+                return i;
+
+            final long vTime = mRecording.getTime(i);
+            if( speed > 0.0f ){
+                // wait for scheduled replay time
+                final long vDue = vStartNanos + (long) ((vTime - vFirstTime) * 1000000.0 / speed);
+                long vWait;
+                while( (vWait = vDue - System.nanoTime()) > 0 && !mStopped )
+                    LockSupport.parkNanos(vWait);
+            }
+
+            engine.process( mRecording.getX(i), mRecording.getY(i), vTime, vState );
+            target.deliver(vState);
+        }
+        return vCount;
+    }
+
+    /**
+     * Receiver of replayed states.
+     */
+    private interface Target {
+        void deliver(JoystickState state);
+    }
+
+}
@@ -0,0 +1,100 @@
+package de.hanneseilers.joystickview;
+
+
+/**
+ * Sequence lock holding the latest {@link JoystickState}.
+ * A single writer thread publishes states, any number of reader threads
+ * can read a consistent copy without locking and without allocations.
+ * Readers retry if the writer published a new state while reading.
+ * @author H. Eilers
+ *
+ */
+final class StateSeqLock {
+
+    // odd while writing
+    private volatile int mSequence;
+
+    private volatile float mXPos, mYPos;
+    private volatile float mMagnitude, mAngle;
+    private volatile int mOrientation;
+    private volatile int mSector;
+    private volatile long mTimestamp;
+
+
+    /**
+     * Publishes a state. Must only be called by a single writer thread.
+     * @param state	{@link JoystickState} to publish.
+     */
+    void write(JoystickState state){
+        final int vSequence = mSequence;
+        mSequence = vSequence + 1;
+
+        mXPos = state.getX();
+        mYPos = state.getY();
+        mMagnitude = state.getMagnitude();
+        mAngle = state.getAngle();
+        mOrientation = state.getOrientationOrdinal();
+        mSector = state.getSector();
+        mTimestamp = state.getTimestamp();
+
+        mSequence = vSequence + 2;
+    }
+
+    /**
+     * @return	Sequence number of the latest published state.
+     */
+    int getSequence(){
+        return mSequence >>> 1;
+    }
+
+    /**
+     * @return	Latest published x position. Not consistent with other values.
+     */
+    float getX(){
+        return mXPos;
+    }
+
+    /**
+     * @return	Latest published y position. Not consistent with other values.
+     */
+    float getY(){
+        return mYPos;
+    }
+
+    /**
+     * @return	Latest published orientation ordinal. Not consistent with other values.
+     */
+    int getOrientation(){
+        return mOrientation;
+    }
+
+    /**
+     * Reads a consistent copy of the latest published state.
+     * @param out	{@link JoystickState} to copy state into.
+     * @return		Sequence number of the read state, increases with every publish.
+     */
+    int read(JoystickState out){
+        while( true ){
+            final int vBefore = mSequence;
+            if( (vBefore & 1) != 0 ){
+                // writer active
+                Thread.yield();
+                continue;
+            }
+
+            final float vXPos = mXPos;
+            final float vYPos = mYPos;
+            final float vMagnitude = mMagnitude;
+            final float vAngle = mAngle;
+            final int vOrientation = mOrientation;
+            final int vSector = mSector;
+            final long vTimestamp = mTimestamp;
+
+            if( mSequence == vBefore ){
+                out.set(vXPos, vYPos, vMagnitude, vAngle, vOrientation, vSector, vTimestamp);
+                return vBefore >>> 1;
+            }
+        }
+    }
+
+}
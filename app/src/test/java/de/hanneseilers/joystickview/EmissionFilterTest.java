@@ -0,0 +1,114 @@
+package de.hanneseilers.joystickview;
+
+import de.hanneseilers.joystickview.JoystickView.StickOrientation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link EmissionFilter}.
+ * @author H. Eilers
+ *
+ */
+public class EmissionFilterTest {
+
+    private final EmissionFilter mFilter = new EmissionFilter();
+    private final JoystickState mState = new JoystickState();
+
+    @Before
+    public void setUp(){
+        mFilter.reset();
+    }
+
+    @Test
+    public void acceptsAllByDefault(){
+        assertTrue( mFilter.accept(state(10.0f, 0.0f, 0)) );
+        assertTrue( mFilter.accept(state(10.0f, 0.0f, 1)) );
+        assertEquals(2, mFilter.getEmittedCount());
+        assertEquals(0, mFilter.getSuppressedCount());
+    }
+
+    @Test
+    public void skipsUnchangedAndSmallChanges(){
+        mFilter.setSkipUnchanged(true);
+        mFilter.setMinDelta(5.0f);
+
+        assertTrue( mFilter.accept(state(10.0f, 10.0f, 0)) );
+        assertFalse( mFilter.accept(state(10.0f, 10.0f, 16)) );
+        assertFalse( mFilter.accept(state(14.0f, 12.0f, 32)) );
+        assertTrue( mFilter.accept(state(15.0f, 10.0f, 48)) );
+        assertEquals(2, mFilter.getSuppressedCount());
+    }
+
+    @Test
+    public void minIntervalLimitsRate(){
+        mFilter.setMinInterval(50);
+
+        assertTrue( mFilter.accept(state(10.0f, 0.0f, 0)) );
+        assertFalse( mFilter.accept(state(20.0f, 0.0f, 16)) );
+        assertFalse( mFilter.accept(state(30.0f, 0.0f, 49)) );
+        assertTrue( mFilter.accept(state(40.0f, 0.0f, 50)) );
+    }
+
+    @Test
+    public void returnToCenterAndTransitionsAreAlwaysEmitted(){
+        mFilter.setTransitionsOnly(true);
+
+        assertTrue( mFilter.accept(state(30.0f, 0.0f, StickOrientation.EAST, 0, 0)) );
+        assertFalse( mFilter.accept(state(40.0f, 0.0f, StickOrientation.EAST, 0, 16)) );
+
+        // sector change
+        assertTrue( mFilter.accept(state(0.0f, 40.0f, StickOrientation.EAST, 1, 32)) );
+        // orientation change
+        assertTrue( mFilter.accept(state(0.0f, 40.0f, StickOrientation.NORTH, 1, 48)) );
+        // back to center
+        assertTrue( mFilter.accept(state(0.0f, 0.0f, StickOrientation.NORTH, 1, 64)) );
+        assertFalse( mFilter.accept(state(0.0f, 0.0f, StickOrientation.NORTH, 1, 80)) );
+    }
+
+    @Test
+    public void forcedStateIsRecordedAsEmitted(){
+        mFilter.setSkipUnchanged(true);
+        mFilter.setMinInterval(1000);
+
+        assertTrue( mFilter.accept(state(10.0f, 0.0f, 0)) );
+
+        // state emitted without the filter, e.g. as part of a batch
+        assertFalse( mFilter.accept(state(20.0f, 0.0f, 16)) );
+        mFilter.force(state(20.0f, 0.0f, 16));
+        assertEquals(2, mFilter.getEmittedCount());
+
+        // the forced state is the new reference for following states
+        assertFalse( mFilter.accept(state(20.0f, 0.0f, 2000)) );
+        assertFalse( mFilter.accept(state(25.0f, 0.0f, 500)) );
+        assertTrue( mFilter.accept(state(25.0f, 0.0f, 1016)) );
+    }
+
+    @Test
+    public void forcedRestIsEmittedEvenIfAlreadyReportedAsRest(){
+        mFilter.setSkipUnchanged(true);
+
+        // a dead zone already reported 0,0 while the stick was held
+        assertTrue( mFilter.accept(state(0.0f, 0.0f, 0)) );
+        assertFalse( mFilter.accept(state(0.0f, 0.0f, 16)) );
+
+        // JoystickInput forces the rest state on release instead of asking the filter
+        mFilter.force(state(0.0f, 0.0f, 32));
+        assertEquals(2, mFilter.getEmittedCount());
+        assertEquals(1, mFilter.getSuppressedCount());
+    }
+
+    private JoystickState state(float x, float y, long time){
+        return state(x, y, StickOrientation.NONE, DirectionEngine.NONE, time);
+    }
+
+    private JoystickState state(float x, float y, StickOrientation orientation, int sector, long time){
+        mState.set(x, y, (float) Math.sqrt(x*x + y*y), 0.0f, orientation.ordinal(), sector, time);
+        return mState;
+    }
+
+}
@@ -0,0 +1,118 @@
+package de.hanneseilers.joystickview;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link FixedRateSampler}.
+ * @author H. Eilers
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FixedRateSamplerTest {
+
+    private JoystickView mView;
+    private FixedRateSampler mSampler;
+
+    @Before
+    public void setUp(){
+        mView = new JoystickView(RuntimeEnvironment.application, null);
+        mView.measure(200, 200);
+        mView.layout(0, 0, 200, 200);
+    }
+
+    @After
+    public void tearDown(){
+        if( mSampler != null )
+            mSampler.stop();
+    }
+
+    @Test
+    public void publishesLatestStateAtRate() throws InterruptedException {
+        final long vDownTime = SystemClock.uptimeMillis();
+        touch(vDownTime, MotionEvent.ACTION_DOWN, 100.0f, 100.0f);
+        touch(vDownTime, MotionEvent.ACTION_MOVE, 200.0f, 100.0f);
+
+        final AtomicInteger vTicks = new AtomicInteger();
+        final float[] vLastX = new float[1];
+        mSampler = new FixedRateSampler(mView, 100.0f, new JoystickView.OnJoystickStateListener() {
+            @Override
+            public void onJoystickStateChanged(JoystickState state) {
+                vLastX[0] = state.getX();
+                vTicks.incrementAndGet();
+            }
+        });
+        assertEquals(100.0f, mSampler.getRate(), 0.01f);
+
+        mSampler.start();
+        assertTrue(mSampler.isRunning());
+        Thread.sleep(300);
+        mSampler.stop();
+        assertFalse(mSampler.isRunning());
+
+        // about 30 ticks, generous bounds for loaded machines
+        final int vCount = vTicks.get();
+        assertTrue("ticks: " + vCount, vCount >= 10 && vCount <= 35);
+        assertEquals(100.0f, vLastX[0], 0.0f);
+        assertEquals(mSampler.getTickCount(), vCount);
+
+        // no ticks after stop
+        Thread.sleep(50);
+        final int vStopped = vTicks.get();
+        Thread.sleep(100);
+        assertEquals(vStopped, vTicks.get());
+    }
+
+    @Test
+    public void slowListenerMissesTicks() throws InterruptedException {
+        mSampler = new FixedRateSampler(mView, 200.0f, new JoystickView.OnJoystickStateListener() {
+            @Override
+            public void onJoystickStateChanged(JoystickState state) {
+                // three periods per tick
+                try{
+                    Thread.sleep(15);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        mSampler.start();
+        Thread.sleep(300);
+        mSampler.stop();
+        Thread.sleep(50);
+
+        // ticks are not published late, skipped ticks are counted instead
+        assertTrue(mSampler.getMissedTickCount() >= mSampler.getTickCount());
+        assertTrue(mSampler.getMaxJitterNanos() < 5000000L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveRate(){
+        new FixedRateSampler(mView, 0.0f, new JoystickView.OnJoystickStateListener() {
+            @Override
+            public void onJoystickStateChanged(JoystickState state) {}
+        });
+    }
+
+    private void touch(long downTime, int action, float x, float y){
+        final MotionEvent vEvent = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), action, x, y, 0);
+        mView.onTouchEvent(vEvent);
+        vEvent.recycle();
+    }
+
+}
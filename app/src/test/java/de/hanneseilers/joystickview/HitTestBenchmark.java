@@ -0,0 +1,176 @@
+package de.hanneseilers.joystickview;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JVM benchmark of the per event geometry of {@link JoystickView} and {@link JoystickEngine}:
+ * hit-testing of touch downs and clamping of moves onto the outer border. Compares the
+ * cached squared radii, which only compute a square root if a move is clamped, with the
+ * previous geometry, which computed {@code Math.sqrt(Math.pow(..) + Math.pow(..))} in double
+ * for every event. Runs with the unit tests, where only equal results are asserted, since
+ * timings depend on the machine. For stable numbers run {@link #main(String[])}.
+ * @author H. Eilers
+ *
+ */
+public class HitTestBenchmark {
+
+    private static final int SAMPLE_COUNT = 4096;
+    private static final int WARM_UP_ROUNDS = 200;
+    private static final int ROUNDS = 1000;
+
+    private static final float CENTER = 100.0f;
+    private static final float OUTER_RADIUS = 85.0f;
+    private static final float STICK_RADIUS = 15.0f;
+    private static final float HIT_SLOP = 10.0f;
+
+    private static final int HIT_SQRT_POW = 0;
+    private static final int HIT_SQUARED = 1;
+    private static final int CLAMP_SQRT_POW = 2;
+    private static final int CLAMP_SQUARED = 3;
+
+    private static final float[] sX = new float[SAMPLE_COUNT];
+    private static final float[] sY = new float[SAMPLE_COUNT];
+
+    static {
+        // touches over the whole view, most moves inside the outer border
+        final Random vRandom = new Random(42);
+        for( int i = 0; i < SAMPLE_COUNT; i++ ){
+            sX[i] = vRandom.nextFloat() * 2.0f * CENTER;
+            sY[i] = vRandom.nextFloat() * 2.0f * CENTER;
+        }
+    }
+
+    // cached like JoystickView#updateHitRadii() and JoystickEngine#setGeometry(float, float, float)
+    private final float mStickHitRadiusSq;
+    private final float mOuterRadiusSq = OUTER_RADIUS * OUTER_RADIUS;
+
+    private float mSink;
+
+    public HitTestBenchmark(){
+        final float vStickHitRadius = STICK_RADIUS * (1.0f + HIT_SLOP/100.0f);
+        mStickHitRadiusSq = vStickHitRadius * vStickHitRadius;
+    }
+
+    @Test
+    public void hitTest(){
+        assertEquals(report("hit test, sqrt pow", HIT_SQRT_POW),
+                report("hit test, squared", HIT_SQUARED), 0.0f);
+    }
+
+    @Test
+    public void clamp(){
+        assertEquals(report("clamp, sqrt pow", CLAMP_SQRT_POW),
+                report("clamp, squared", CLAMP_SQUARED), 1.0f);
+    }
+
+    /**
+     * Measures a geometry and prints the result.
+     * @param variant	One of the variant constants.
+     * @return			Checksum of the last round to compare results.
+     */
+    private float report(String name, int variant){
+        for( int i = 0; i < WARM_UP_ROUNDS; i++ )
+            round(variant);
+
+        float vChecksum = 0.0f;
+        final long vStart = System.nanoTime();
+        for( int i = 0; i < ROUNDS; i++ )
+            vChecksum = round(variant);
+        final long vElapsed = System.nanoTime() - vStart;
+
+        System.out.println(String.format("HitTest %-20s %8.2f ns/op", name,
+                vElapsed / ((float) ROUNDS * SAMPLE_COUNT)));
+        mSink += vChecksum;
+        return vChecksum;
+    }
+
+    /**
+     * Runs a round of a variant, each variant in its own loop to keep the profiles
+     * of the variants apart.
+     * @return	Number of hits or sum of clamped stick coordinates.
+     */
+    private float round(int variant){
+        float vChecksum = 0.0f;
+        switch( variant ){
+            case HIT_SQRT_POW:
+                for( int i = 0; i < SAMPLE_COUNT; i++ )
+                    if( hitSqrtPow(sX[i], sY[i]) )
+                        vChecksum++;
+                break;
+            case HIT_SQUARED:
+                for( int i = 0; i < SAMPLE_COUNT; i++ )
+                    if( hitSquared(sX[i], sY[i]) )
+                        vChecksum++;
+                break;
+            case CLAMP_SQRT_POW:
+                for( int i = 0; i < SAMPLE_COUNT; i++ )
+                    vChecksum += clampSqrtPow(sX[i], sY[i]);
+                break;
+            default:
+                for( int i = 0; i < SAMPLE_COUNT; i++ )
+                    vChecksum += clampSquared(sX[i], sY[i]);
+                break;
+        }
+        return vChecksum;
+    }
+
+    /**
+     * Previous ACTION_DOWN hit test in mixed double and float.
+     */
+    private static boolean hitSqrtPow(float x, float y){
+        final double vDist = Math.sqrt( Math.pow(x - CENTER, 2) + Math.pow(y - CENTER, 2) );
+        return vDist <= STICK_RADIUS + HIT_SLOP/100.0 * STICK_RADIUS;
+    }
+
+    /**
+     * Hit test of {@link JoystickView} with cached squared hit radius.
+     */
+    private boolean hitSquared(float x, float y){
+        final float vDX = x - CENTER;
+        final float vDY = y - CENTER;
+        return vDX*vDX + vDY*vDY <= mStickHitRadiusSq;
+    }
+
+    /**
+     * Previous clamping, computes the distance for every move.
+     * @return	Sum of clamped stick coordinates.
+     */
+    private static float clampSqrtPow(float x, float y){
+        float vX = x - CENTER;
+        float vY = y - CENTER;
+        final float vDist = (float) Math.sqrt( Math.pow(vX, 2) + Math.pow(vY, 2) );
+        if( vDist > OUTER_RADIUS ){
+            vX = vX / vDist * OUTER_RADIUS;
+            vY = vY / vDist * OUTER_RADIUS;
+        }
+        return vX + vY;
+    }
+
+    /**
+     * Clamping of {@link JoystickEngine}, computes a square root only outside the outer border.
+     * @return	Sum of clamped stick coordinates.
+     */
+    private float clampSquared(float x, float y){
+        float vX = x - CENTER;
+        float vY = y - CENTER;
+        final float vDistSq = vX*vX + vY*vY;
+        if( vDistSq > mOuterRadiusSq ){
+            final float vScale = OUTER_RADIUS / (float) Math.sqrt(vDistSq);
+            vX *= vScale;
+            vY *= vScale;
+        }
+        return vX + vY;
+    }
+
+    public static void main(String[] args){
+        final HitTestBenchmark vBenchmark = new HitTestBenchmark();
+        vBenchmark.hitTest();
+        vBenchmark.clamp();
+        System.out.println("sink " + vBenchmark.mSink);
+    }
+
+}
@@ -0,0 +1,154 @@
+package de.hanneseilers.joystickview;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of {@link JoystickChannelSink} with {@link JoystickFrameDecoder}.
+ * @author H. Eilers
+ *
+ */
+public class JoystickChannelSinkTest {
+
+    @Test(timeout = 5000)
+    public void datagramLoopback() throws IOException {
+        final DatagramChannel vReceiver = DatagramChannel.open();
+        final DatagramChannel vSender = DatagramChannel.open();
+        try{
+            vReceiver.bind( new InetSocketAddress(InetAddress.getLoopbackAddress(), 0) );
+            vSender.connect( vReceiver.getLocalAddress() );
+
+            final JoystickChannelSink vSink = new JoystickChannelSink(vSender);
+            vSink.onJoystickStateChanged( state(12.34f, -56.78f, 1000) );
+
+            final JoystickState[] vBatch = new JoystickState[3];
+            for( int i = 0; i < vBatch.length; i++ )
+                vBatch[i] = state(i * 10.0f, -i * 5.0f, 2000 + i * 16);
+            vSink.onJoystickBatch(vBatch, vBatch.length);
+
+            assertEquals(2, vSink.getFrameCount());
+            assertEquals(0, vSink.getDroppedFrameCount());
+            assertEquals(0, vSink.getErrorCount());
+
+            final JoystickFrameDecoder vDecoder = new JoystickFrameDecoder();
+            final JoystickState[] vOut = new JoystickState[JoystickFrameEncoder.MAX_SAMPLES];
+            final ByteBuffer vBuffer = ByteBuffer.allocate( JoystickFrameEncoder.frameSize(JoystickFrameEncoder.MAX_SAMPLES) );
+
+            vBuffer.clear();
+            vReceiver.receive(vBuffer);
+            vBuffer.flip();
+            assertEquals(1, vDecoder.decode(vBuffer, vOut));
+            assertState(vOut[0], 12.34f, -56.78f, 1000);
+
+            vBuffer.clear();
+            vReceiver.receive(vBuffer);
+            vBuffer.flip();
+            assertEquals(3, vDecoder.decode(vBuffer, vOut));
+            for( int i = 0; i < 3; i++ )
+                assertState(vOut[i], i * 10.0f, -i * 5.0f, 2000 + i * 16);
+
+            assertEquals(1, vDecoder.getLastSequence());
+            assertEquals(0, vDecoder.getLostFrameCount());
+        } finally {
+            vSender.close();
+            vReceiver.close();
+        }
+    }
+
+    @Test
+    public void fullChannelDropsFrames(){
+        final JoystickChannelSink vSink = new JoystickChannelSink(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                return 0;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        vSink.onJoystickStateChanged( state(1.0f, 2.0f, 0) );
+        vSink.onJoystickStateChanged( state(3.0f, 4.0f, 16) );
+
+        assertEquals(0, vSink.getFrameCount());
+        assertEquals(2, vSink.getDroppedFrameCount());
+        assertEquals(0, vSink.getErrorCount());
+    }
+
+    @Test
+    public void partialWriteKeepsStreamInSync(){
+        final ByteBuffer vStream = ByteBuffer.allocate(1024);
+        // bytes the channel accepts per write call, 0 if full
+        final int[] vAccepted = { 5, 0, 0, Integer.MAX_VALUE };
+        final int[] vCall = new int[1];
+        final JoystickChannelSink vSink = new JoystickChannelSink(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                final int vLimit = vCall[0] < vAccepted.length ? vAccepted[vCall[0]++] : Integer.MAX_VALUE;
+                final int vCount = Math.min(vLimit, src.remaining());
+                for( int i = 0; i < vCount; i++ )
+                    vStream.put(src.get());
+                return vCount;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        // first frame is written partially, second is dropped while the remainder is pending
+        vSink.onJoystickStateChanged( state(1.0f, 2.0f, 0) );
+        assertEquals(0, vSink.getFrameCount());
+        vSink.onJoystickStateChanged( state(3.0f, 4.0f, 16) );
+        assertEquals(1, vSink.getDroppedFrameCount());
+
+        // remainder is written before the third frame
+        vSink.onJoystickStateChanged( state(5.0f, 6.0f, 32) );
+        assertEquals(2, vSink.getFrameCount());
+        assertEquals(1, vSink.getDroppedFrameCount());
+        assertEquals(0, vSink.getErrorCount());
+
+        vStream.flip();
+        final JoystickFrameDecoder vDecoder = new JoystickFrameDecoder();
+        final JoystickState[] vOut = new JoystickState[JoystickFrameEncoder.MAX_SAMPLES];
+        assertEquals(1, vDecoder.decode(vStream, vOut));
+        assertState(vOut[0], 1.0f, 2.0f, 0);
+        assertEquals(1, vDecoder.decode(vStream, vOut));
+        assertState(vOut[0], 5.0f, 6.0f, 32);
+        assertEquals(0, vStream.remaining());
+        assertEquals(1, vDecoder.getLostFrameCount());
+    }
+
+    private static JoystickState state(float x, float y, long time){
+        final JoystickState vState = new JoystickState();
+        vState.set(x, y, 0.0f, 0.0f, JoystickEngine.classifyOrientation(x, y), time);
+        return vState;
+    }
+
+    private static void assertState(JoystickState state, float x, float y, long time){
+        assertEquals(x, state.getX(), 0.005f);
+        assertEquals(y, state.getY(), 0.005f);
+        assertEquals(time, state.getTimestamp());
+        assertEquals(JoystickEngine.classifyOrientation(x, y), state.getOrientationOrdinal());
+    }
+
+}
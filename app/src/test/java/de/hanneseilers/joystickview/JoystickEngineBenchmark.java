@@ -0,0 +1,148 @@
+package de.hanneseilers.joystickview;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JVM benchmark harness of {@link JoystickEngine#process(float, float, long, JoystickState)}.
+ * Runs a warm-up and measured rounds per pipeline configuration and reports nanoseconds and
+ * allocated bytes per call. Runs with the unit tests, where only allocations are asserted,
+ * since timings depend on the machine. For stable numbers run {@link #main(String[])} with a
+ * fixed heap and without other load, e.g. from the test classpath of the IDE.
+ * Allocations are measured with {@code com.sun.management.ThreadMXBean} if available.
+ * @author H. Eilers
+ *
+ */
+public class JoystickEngineBenchmark {
+
+    private static final int SAMPLE_COUNT = 4096;
+    private static final int WARM_UP_ROUNDS = 50;
+    private static final int ROUNDS = 200;
+
+    private static final float[] sX = new float[SAMPLE_COUNT];
+    private static final float[] sY = new float[SAMPLE_COUNT];
+
+    static {
+        // spiral reaching beyond the outer border, so clamping is measured too
+        for( int i = 0; i < SAMPLE_COUNT; i++ ){
+            final float vRadius = 100.0f * (0.1f + (i % 97) / 80.0f);
+            sX[i] = 100.0f + vRadius * (float) Math.cos(i * 0.05);
+            sY[i] = 100.0f + vRadius * (float) Math.sin(i * 0.05);
+        }
+    }
+
+    private long mSink;
+
+    @Test
+    public void plain(){
+        assertNoAllocations(report("plain", new JoystickEngine()));
+    }
+
+    @Test
+    public void deadZoneAndExpo(){
+        final JoystickEngine vEngine = new JoystickEngine();
+        final OutputPipeline vPipeline = new OutputPipeline();
+        vPipeline.setDeadZone(10.0f);
+        vPipeline.setExpo(0.5f);
+        vEngine.setOutputPipeline(vPipeline);
+        assertNoAllocations(report("dead zone, expo", vEngine));
+    }
+
+    @Test
+    public void oneEuroFilter(){
+        final JoystickEngine vEngine = new JoystickEngine();
+        final OutputPipeline vPipeline = new OutputPipeline();
+        vPipeline.setOneEuroFilter(1.0f, 0.01f, 1.0f);
+        vPipeline.setRateLimit(10.0f);
+        vEngine.setOutputPipeline(vPipeline);
+        assertNoAllocations(report("one euro, rate limit", vEngine));
+    }
+
+    @Test
+    public void directions(){
+        final JoystickEngine vEngine = new JoystickEngine();
+        vEngine.setDirectionEngine(new DirectionEngine(8));
+        assertNoAllocations(report("directions", vEngine));
+    }
+
+    /**
+     * Measures an engine and prints the result.
+     * @return	Measured result.
+     */
+    private Result report(String name, JoystickEngine engine){
+        final Result vResult = measure(engine);
+        System.out.println(String.format("JoystickEngine.process %-22s %8.1f ns/op %8.3f bytes/op",
+                name, vResult.mNanosPerOp, vResult.mBytesPerOp));
+        return vResult;
+    }
+
+    /**
+     * Runs warm-up and measured rounds of {@link #SAMPLE_COUNT} calls each.
+     * @return	Measured result.
+     */
+    private Result measure(JoystickEngine engine){
+        engine.setGeometry(100.0f, 100.0f, 50.0f);
+        final JoystickState vState = new JoystickState();
+        for( int i = 0; i < WARM_UP_ROUNDS; i++ )
+            round(engine, vState, i);
+
+        final ThreadMXBean vThreads = ManagementFactory.getThreadMXBean();
+        final long vBytesBefore = getAllocatedBytes(vThreads);
+        final long vStart = System.nanoTime();
+        for( int i = 0; i < ROUNDS; i++ )
+            round(engine, vState, WARM_UP_ROUNDS + i);
+        final long vElapsed = System.nanoTime() - vStart;
+        final long vBytesAfter = getAllocatedBytes(vThreads);
+
+        final float vOps = (float) ROUNDS * SAMPLE_COUNT;
+        return new Result(vElapsed / vOps,
+                vBytesBefore >= 0 ? (vBytesAfter - vBytesBefore) / vOps : -1.0f);
+    }
+
+    private void round(JoystickEngine engine, JoystickState state, int round){
+        final long vTime = (long) round * SAMPLE_COUNT * 16L;
+        for( int i = 0; i < SAMPLE_COUNT; i++ ){
+            engine.process(sX[i], sY[i], vTime + i * 16L, state);
+            mSink += state.getOrientationOrdinal();
+        }
+        engine.reset();
+    }
+
+    private static void assertNoAllocations(Result result){
+        if( result.mBytesPerOp >= 0.0f )
+            assertEquals(0.0f, result.mBytesPerOp, 0.0f);
+    }
+
+    /**
+     * @return	Bytes allocated by the current thread, -1 if not available.
+     */
+    private static long getAllocatedBytes(ThreadMXBean threads){
+        if( !(threads instanceof com.sun.management.ThreadMXBean) )
+            return -1;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void main(String[] args){
+        final JoystickEngineBenchmark vBenchmark = new JoystickEngineBenchmark();
+        vBenchmark.plain();
+        vBenchmark.deadZoneAndExpo();
+        vBenchmark.oneEuroFilter();
+        vBenchmark.directions();
+        System.out.println("sink " + vBenchmark.mSink);
+    }
+
+    private static class Result {
+        private final float mNanosPerOp;
+        private final float mBytesPerOp;
+
+        private Result(float nanosPerOp, float bytesPerOp){
+            mNanosPerOp = nanosPerOp;
+            mBytesPerOp = bytesPerOp;
+        }
+    }
+
+}
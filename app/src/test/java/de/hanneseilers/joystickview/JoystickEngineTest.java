@@ -0,0 +1,134 @@
+package de.hanneseilers.joystickview;
+
+import de.hanneseilers.joystickview.JoystickView.StickOrientation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of {@link JoystickEngine}.
+ * @author H. Eilers
+ *
+ */
+public class JoystickEngineTest {
+
+    private JoystickEngine mEngine;
+    private JoystickState mState;
+
+    @Before
+    public void setUp(){
+        mEngine = new JoystickEngine();
+        mEngine.setGeometry(100.0f, 100.0f, 50.0f);
+        mState = new JoystickState();
+    }
+
+    @Test
+    public void restAfterResetWithEmaFilter(){
+        final OutputPipeline vPipeline = new OutputPipeline();
+        vPipeline.setEmaFilter(0.5f);
+        assertRestAfterReset(vPipeline);
+    }
+
+    @Test
+    public void restAfterResetWithOneEuroFilter(){
+        final OutputPipeline vPipeline = new OutputPipeline();
+        vPipeline.setOneEuroFilter(1.0f, 0.01f, 1.0f);
+        assertRestAfterReset(vPipeline);
+    }
+
+    @Test
+    public void restAfterResetWithRateLimit(){
+        final OutputPipeline vPipeline = new OutputPipeline();
+        vPipeline.setRateLimit(10.0f);
+        assertRestAfterReset(vPipeline);
+    }
+
+    @Test
+    public void restAfterResetWithDeadZoneAndExpo(){
+        final OutputPipeline vPipeline = new OutputPipeline();
+        vPipeline.setDeadZone(10.0f);
+        vPipeline.setExpo(0.5f);
+        vPipeline.setEmaFilter(0.2f);
+        assertRestAfterReset(vPipeline);
+    }
+
+    @Test
+    public void clampsToOuterRadius(){
+        mEngine.process(300.0f, 100.0f, 0, mState);
+        assertEquals(150.0f, mEngine.getStickX(), 0.001f);
+        assertEquals(100.0f, mEngine.getStickY(), 0.001f);
+        assertEquals(100.0f, mState.getX(), 0.001f);
+        assertEquals(0.0f, mState.getY(), 0.001f);
+    }
+
+    @Test
+    public void clampsDiagonalOntoCircle(){
+        mEngine.process(200.0f, 0.0f, 0, mState);
+        final float vDX = mEngine.getStickX() - 100.0f;
+        final float vDY = mEngine.getStickY() - 100.0f;
+        assertEquals(50.0f, (float) Math.sqrt(vDX*vDX + vDY*vDY), 0.001f);
+        assertEquals(100.0f, mState.getMagnitude(), 0.01f);
+        assertEquals(70.71f, mState.getX(), 0.001f);
+        assertEquals(70.71f, mState.getY(), 0.001f);
+        assertEquals(45.0f, mState.getAngle(), 0.01f);
+        assertEquals(StickOrientation.NORTH_EAST, mState.getOrientation());
+    }
+
+    @Test
+    public void insideRadiusIsNotClamped(){
+        mEngine.process(125.0f, 110.0f, 0, mState);
+        assertEquals(125.0f, mEngine.getStickX(), 0.0f);
+        assertEquals(110.0f, mEngine.getStickY(), 0.0f);
+        assertEquals(50.0f, mState.getX(), 0.001f);
+        assertEquals(-20.0f, mState.getY(), 0.001f);
+    }
+
+    @Test
+    public void invertsAxesAfterClamping(){
+        mEngine.setInvertXAxis(true);
+        mEngine.setInvertYAxis(true);
+        mEngine.process(100.0f, 300.0f, 0, mState);
+        assertEquals(150.0f, mEngine.getStickY(), 0.001f);
+        assertEquals(0.0f, mState.getX(), 0.001f);
+        assertEquals(100.0f, mState.getY(), 0.001f);
+    }
+
+    @Test
+    public void roundsToPrecision(){
+        mEngine.setPositionPrecision(0);
+        mEngine.process(112.3456f, 100.0f, 0, mState);
+        assertEquals(25.0f, mState.getX(), 0.0f);
+    }
+
+    @Test
+    public void zeroRadiusReportsCenter(){
+        mEngine.setGeometry(100.0f, 100.0f, 0.0f);
+        mEngine.process(150.0f, 120.0f, 0, mState);
+        assertEquals(100.0f, mEngine.getStickX(), 0.0f);
+        assertEquals(100.0f, mEngine.getStickY(), 0.0f);
+        assertEquals(0.0f, mState.getX(), 0.0f);
+        assertEquals(0.0f, mState.getY(), 0.0f);
+    }
+
+    /**
+     * Moves the stick with a pipeline, resets the engine and
+     * checks that the center is processed as rest state.
+     */
+    private void assertRestAfterReset(OutputPipeline pipeline){
+        mEngine.setOutputPipeline(pipeline);
+        mEngine.process(150.0f, 100.0f, 0, mState);
+        mEngine.process(140.0f, 110.0f, 16, mState);
+        mEngine.process(150.0f, 90.0f, 32, mState);
+
+        mEngine.reset();
+        mEngine.process(100.0f, 100.0f, 48, mState);
+
+        assertEquals(0.0f, mState.getX(), 0.0f);
+        assertEquals(0.0f, mState.getY(), 0.0f);
+        assertEquals(0.0f, mState.getMagnitude(), 0.0f);
+        assertEquals(StickOrientation.NONE, mState.getOrientation());
+    }
+
+}
@@ -0,0 +1,131 @@
+package de.hanneseilers.joystickview;
+
+import de.hanneseilers.joystickview.JoystickView.StickOrientation;
+
+import org.junit.Test;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the input path {@link JoystickInput#process(float, float, long, boolean, android.view.View)}
+ * to {@link PositionDispatcher#post(JoystickState)}, as used by {@link JoystickView#onTouchEvent(android.view.MotionEvent)}.
+ * Listeners are notified on the posting thread, so allocations of the whole path
+ * are measured on one thread with {@code com.sun.management.ThreadMXBean}.
+ * @author H. Eilers
+ *
+ */
+public class JoystickInputTest {
+
+    private static final int ROUND_EVENTS = 10000;
+    private static final int ROUNDS = 10;
+    private static final int MAX_WARM_UP_ROUNDS = 100;
+    private static final int CLEAN_WARM_UP_ROUNDS = 5;
+
+    private final JoystickInput mInput = new JoystickInput();
+    private final PositionDispatcher mDispatcher = new PositionDispatcher(new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    });
+
+    // listener results, read primitives only
+    private float mSum;
+    private int mOrdinalSum;
+    private int mDeliveries;
+
+    @Test
+    public void processAndPostDoNotAllocate(){
+        mInput.mEngine.setGeometry(100.0f, 100.0f, 50.0f);
+        final OutputPipeline vPipeline = new OutputPipeline();
+        vPipeline.setDeadZone(5.0f);
+        vPipeline.setOneEuroFilter(1.0f, 0.01f, 1.0f);
+        mInput.mEngine.setOutputPipeline(vPipeline);
+        mInput.mEngine.setDirectionEngine(new DirectionEngine(8));
+
+        mDispatcher.addStateListener(new JoystickView.OnJoystickStateListener() {
+            @Override
+            public void onJoystickStateChanged(JoystickState state) {
+                mSum += state.getX() + state.getY() + state.getMagnitude() + state.getAngle();
+                mOrdinalSum += state.getOrientationOrdinal() + state.getSector();
+                mDeliveries++;
+            }
+        });
+        mDispatcher.addPositionListener(new JoystickView.OnPositionChangedListener() {
+            @Override
+            public void onJoyStickPositionChanged(float x, float y, StickOrientation orientation) {
+                mSum += x + y;
+                mOrdinalSum += orientation.ordinal();
+            }
+        });
+
+        final ThreadMXBean vThreads = ManagementFactory.getThreadMXBean();
+        if( !(vThreads instanceof com.sun.management.ThreadMXBean) )
+            return;
+        final com.sun.management.ThreadMXBean vAllocations = (com.sun.management.ThreadMXBean) vThreads;
+
+        // replacing compiled code may allocate once, so warm up until several rounds
+        // in a row neither allocate nor finish a compilation
+        final CompilationMXBean vCompiler = ManagementFactory.getCompilationMXBean();
+        final boolean vCompileTime = vCompiler != null && vCompiler.isCompilationTimeMonitoringSupported();
+        int vEvent = 0;
+        int vCleanRounds = 0;
+        for( int i = 0; i < MAX_WARM_UP_ROUNDS && vCleanRounds < CLEAN_WARM_UP_ROUNDS; i++ ){
+            final long vCompileTimeBefore = vCompileTime ? vCompiler.getTotalCompilationTime() : 0;
+            final boolean vClean = measureRound(vAllocations, vEvent) == 0
+                    && (!vCompileTime || vCompiler.getTotalCompilationTime() == vCompileTimeBefore);
+            vCleanRounds = vClean ? vCleanRounds + 1 : 0;
+            vEvent += ROUND_EVENTS;
+        }
+
+        mDeliveries = 0;
+        long vBytes = 0;
+        for( int i = 0; i < ROUNDS; i++ ){
+            vBytes += measureRound(vAllocations, vEvent);
+            vEvent += ROUND_EVENTS;
+        }
+
+        assertTrue(mDeliveries > 0);
+        assertTrue(mSum != 0.0f || mOrdinalSum != 0);
+        assertEquals("allocated bytes", 0, vBytes);
+    }
+
+    /**
+     * Feeds a round of events.
+     * @return	Bytes allocated by the current thread.
+     */
+    private long measureRound(com.sun.management.ThreadMXBean allocations, int start){
+        final long vThreadId = Thread.currentThread().getId();
+        final long vBytesBefore = allocations.getThreadAllocatedBytes(vThreadId);
+        feed(start, ROUND_EVENTS);
+        return allocations.getThreadAllocatedBytes(vThreadId) - vBytesBefore;
+    }
+
+    /**
+     * Feeds positions on a spiral reaching beyond the outer border,
+     * every 50th position releases the stick like pointer up does.
+     * @param start	Index of first event, used as timestamp.
+     * @param count	Number of events.
+     */
+    private void feed(int start, int count){
+        for( int i = start; i < start + count; i++ ){
+            if( i % 50 == 49 ){
+                mInput.reset();
+                mInput.process(100.0f, 100.0f, i, false, null);
+            } else {
+                final float vRadius = 100.0f * (0.05f + (i % 97) / 80.0f);
+                mInput.process(100.0f + vRadius * (float) Math.cos(i * 0.05),
+                        100.0f + vRadius * (float) Math.sin(i * 0.05), i, true, null);
+            }
+            if( mInput.acceptEmission() )
+                mDispatcher.post(mInput.mState);
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package de.hanneseilers.joystickview;
+
+import android.view.MotionEvent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of {@link JoystickMetrics}.
+ * @author H. Eilers
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class JoystickMetricsTest {
+
+    @Test
+    public void eventTimeFromMilliseconds(){
+        final MotionEvent vEvent = MotionEvent.obtain(1000L, 1234L, MotionEvent.ACTION_MOVE, 10.0f, 20.0f, 0);
+        assertEquals(1234000000L, JoystickMetrics.eventTimeNanos(vEvent));
+        vEvent.recycle();
+    }
+
+    @Test
+    public void recordsLatencyInMicrosecondBuckets(){
+        final JoystickMetrics vMetrics = new JoystickMetrics();
+        vMetrics.record(JoystickMetrics.STAGE_INPUT_TO_STATE, 3000000L);
+        vMetrics.record(JoystickMetrics.STAGE_INPUT_TO_STATE, 500L);
+
+        final JoystickMetrics.Snapshot vSnapshot = new JoystickMetrics.Snapshot();
+        vMetrics.snapshot(vSnapshot);
+        assertEquals(2, vSnapshot.getCount(JoystickMetrics.STAGE_INPUT_TO_STATE));
+        assertEquals(1, vSnapshot.getBucket(JoystickMetrics.STAGE_INPUT_TO_STATE, 0));
+        assertEquals(1, vSnapshot.getBucket(JoystickMetrics.STAGE_INPUT_TO_STATE, 11));
+    }
+
+}
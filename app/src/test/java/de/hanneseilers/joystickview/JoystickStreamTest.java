@@ -0,0 +1,88 @@
+package de.hanneseilers.joystickview;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link JoystickStream}.
+ * @author H. Eilers
+ *
+ */
+public class JoystickStreamTest {
+
+    private final JoystickState mState = new JoystickState();
+
+    @Test
+    public void latestSkipsOlderStates(){
+        final JoystickStream vStream = new JoystickStream(16);
+        final JoystickStream.Cursor vCursor = vStream.openCursor(JoystickStream.BACKPRESSURE_LATEST, 0);
+        publish(vStream, 1.0f);
+        publish(vStream, 2.0f);
+        publish(vStream, 3.0f);
+
+        assertTrue(vCursor.poll(mState));
+        assertEquals(3.0f, mState.getX(), 0.0f);
+        assertFalse(vCursor.poll(mState));
+        assertEquals(2, vCursor.getDroppedCount());
+    }
+
+    @Test
+    public void dropNewestKeepsWindow(){
+        final JoystickStream vStream = new JoystickStream(16);
+        final JoystickStream.Cursor vCursor = vStream.openCursor(JoystickStream.BACKPRESSURE_DROP_NEWEST, 2);
+        for( int i = 1; i <= 5; i++ )
+            publish(vStream, i);
+
+        assertTrue(vCursor.poll(mState));
+        assertEquals(1.0f, mState.getX(), 0.0f);
+        assertTrue(vCursor.poll(mState));
+        assertEquals(2.0f, mState.getX(), 0.0f);
+        assertFalse(vCursor.poll(mState));
+        assertEquals(3, vCursor.getDroppedCount());
+    }
+
+    @Test(timeout = 5000)
+    public void sampleWaitDoesNotSpin(){
+        final JoystickStream vStream = new JoystickStream(16);
+        final JoystickStream.Cursor vCursor = vStream.openCursor(JoystickStream.BACKPRESSURE_SAMPLE, 10);
+        publish(vStream, 1.0f);
+        assertTrue(vCursor.poll(mState, 100));
+
+        // no state pending after the interval, consumer must park until the deadline
+        final ThreadMXBean vThreads = ManagementFactory.getThreadMXBean();
+        final long vCpuStart = vThreads.getCurrentThreadCpuTime();
+        final long vStart = System.nanoTime();
+        assertFalse(vCursor.poll(mState, 300));
+        final long vElapsed = System.nanoTime() - vStart;
+        final long vCpu = vThreads.getCurrentThreadCpuTime() - vCpuStart;
+
+        assertTrue(vElapsed >= 290000000L);
+        assertTrue("consumed " + vCpu / 1000000L + " ms cpu time", vCpu < vElapsed / 20);
+    }
+
+    @Test(timeout = 5000)
+    public void sampleWaitsForInterval(){
+        final JoystickStream vStream = new JoystickStream(16);
+        final JoystickStream.Cursor vCursor = vStream.openCursor(JoystickStream.BACKPRESSURE_SAMPLE, 50);
+        publish(vStream, 1.0f);
+        assertTrue(vCursor.poll(mState, 100));
+        publish(vStream, 2.0f);
+
+        final long vStart = System.nanoTime();
+        assertTrue(vCursor.poll(mState, 1000));
+        assertEquals(2.0f, mState.getX(), 0.0f);
+        assertTrue(System.nanoTime() - vStart >= 40000000L);
+    }
+
+    private void publish(JoystickStream stream, float x){
+        mState.set(x, 0.0f, x, 0.0f, JoystickEngine.classifyOrientation(x, 0.0f), 0);
+        stream.publish(mState);
+    }
+
+}
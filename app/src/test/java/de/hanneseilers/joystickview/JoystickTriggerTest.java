@@ -0,0 +1,142 @@
+package de.hanneseilers.joystickview;
+
+import de.hanneseilers.joystickview.JoystickView.StickOrientation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link JoystickTrigger}.
+ * @author H. Eilers
+ *
+ */
+public class JoystickTriggerTest {
+
+    private final JoystickState mState = new JoystickState();
+
+    @Test
+    public void magnitudeAboveFiresEnterAndLeave(){
+        final JoystickTrigger vTrigger = JoystickTrigger.magnitudeAbove(90.0f, JoystickTrigger.EDGE_BOTH);
+
+        assertEquals(0, vTrigger.evaluate(magnitude(50.0f), true));
+        assertEquals(JoystickTrigger.EDGE_ENTER, vTrigger.evaluate(magnitude(90.0f), true));
+        assertTrue(vTrigger.isActive());
+        assertEquals(0, vTrigger.evaluate(magnitude(95.0f), true));
+        assertEquals(JoystickTrigger.EDGE_LEAVE, vTrigger.evaluate(magnitude(89.0f), true));
+        assertFalse(vTrigger.isActive());
+    }
+
+    @Test
+    public void edgesFilterFiredEdges(){
+        final JoystickTrigger vTrigger = JoystickTrigger.magnitudeAbove(90.0f, JoystickTrigger.EDGE_LEAVE);
+
+        // entering changes the condition, but does not fire
+        assertEquals(0, vTrigger.evaluate(magnitude(100.0f), true));
+        assertTrue(vTrigger.isActive());
+        assertEquals(JoystickTrigger.EDGE_LEAVE, vTrigger.evaluate(magnitude(0.0f), false));
+    }
+
+    @Test
+    public void hysteresisSuppressesNoise(){
+        final JoystickTrigger vTrigger = JoystickTrigger.magnitudeAbove(90.0f, JoystickTrigger.EDGE_BOTH);
+        vTrigger.setHysteresis(5.0f);
+
+        assertEquals(JoystickTrigger.EDGE_ENTER, vTrigger.evaluate(magnitude(91.0f), true));
+        assertEquals(0, vTrigger.evaluate(magnitude(88.0f), true));
+        assertEquals(0, vTrigger.evaluate(magnitude(91.0f), true));
+        assertEquals(0, vTrigger.evaluate(magnitude(85.0f), true));
+        assertEquals(JoystickTrigger.EDGE_LEAVE, vTrigger.evaluate(magnitude(84.9f), true));
+
+        // entering again requires the threshold
+        assertEquals(0, vTrigger.evaluate(magnitude(89.0f), true));
+        assertEquals(JoystickTrigger.EDGE_ENTER, vTrigger.evaluate(magnitude(90.0f), true));
+    }
+
+    @Test
+    public void magnitudeBelowStartsActiveAtRest(){
+        final JoystickTrigger vTrigger = JoystickTrigger.magnitudeBelow(10.0f, JoystickTrigger.EDGE_BOTH);
+        vTrigger.setHysteresis(2.0f);
+        assertTrue(vTrigger.isActive());
+
+        assertEquals(0, vTrigger.evaluate(magnitude(11.0f), true));
+        assertEquals(JoystickTrigger.EDGE_LEAVE, vTrigger.evaluate(magnitude(12.0f), true));
+        assertEquals(0, vTrigger.evaluate(magnitude(10.0f), true));
+        assertEquals(JoystickTrigger.EDGE_ENTER, vTrigger.evaluate(magnitude(9.0f), true));
+
+        vTrigger.evaluate(magnitude(50.0f), true);
+        vTrigger.reset();
+        assertTrue(vTrigger.isActive());
+    }
+
+    @Test
+    public void sectorsFireOnEnteringAndLeavingTheSet(){
+        final JoystickTrigger vTrigger = JoystickTrigger.sectors(JoystickTrigger.EDGE_BOTH, 1, 2);
+
+        assertEquals(0, vTrigger.evaluate(sector(DirectionEngine.NONE), true));
+        assertEquals(0, vTrigger.evaluate(sector(0), true));
+        assertEquals(JoystickTrigger.EDGE_ENTER, vTrigger.evaluate(sector(1), true));
+        // moving inside the set does not fire
+        assertEquals(0, vTrigger.evaluate(sector(2), true));
+        assertEquals(JoystickTrigger.EDGE_LEAVE, vTrigger.evaluate(sector(3), true));
+    }
+
+    @Test
+    public void sectorsAboveSixtyThreeAreMatched(){
+        final JoystickTrigger vTrigger = JoystickTrigger.sectors(JoystickTrigger.EDGE_ENTER, 64, 359);
+
+        assertEquals(0, vTrigger.evaluate(sector(0), true));
+        assertEquals(JoystickTrigger.EDGE_ENTER, vTrigger.evaluate(sector(64), true));
+        assertEquals(0, vTrigger.evaluate(sector(63), true));
+        assertEquals(JoystickTrigger.EDGE_ENTER, vTrigger.evaluate(sector(359), true));
+    }
+
+    @Test
+    public void sectorChangeFiresOnEveryChange(){
+        final JoystickTrigger vTrigger = JoystickTrigger.sectorChange();
+
+        assertEquals(0, vTrigger.evaluate(sector(DirectionEngine.NONE), true));
+        assertEquals(JoystickTrigger.EDGE_ENTER, vTrigger.evaluate(sector(0), true));
+        assertEquals(0, vTrigger.evaluate(sector(0), true));
+        assertEquals(JoystickTrigger.EDGE_ENTER, vTrigger.evaluate(sector(1), true));
+        assertEquals(JoystickTrigger.EDGE_ENTER, vTrigger.evaluate(sector(DirectionEngine.NONE), true));
+    }
+
+    @Test
+    public void releaseFiresWhenPointerIsLifted(){
+        final JoystickTrigger vTrigger = JoystickTrigger.release();
+
+        assertEquals(0, vTrigger.evaluate(magnitude(0.0f), true));
+        assertEquals(0, vTrigger.evaluate(magnitude(50.0f), true));
+        assertEquals(JoystickTrigger.EDGE_LEAVE, vTrigger.evaluate(magnitude(0.0f), false));
+        assertEquals(0, vTrigger.evaluate(magnitude(0.0f), false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidEdges(){
+        JoystickTrigger.magnitudeAbove(50.0f, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidSector(){
+        JoystickTrigger.sectors(JoystickTrigger.EDGE_ENTER, 360);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void hysteresisOnlyForMagnitudeTriggers(){
+        JoystickTrigger.sectorChange().setHysteresis(1.0f);
+    }
+
+    private JoystickState magnitude(float magnitude){
+        mState.set(magnitude, 0.0f, magnitude, 0.0f, StickOrientation.EAST.ordinal(), 0);
+        return mState;
+    }
+
+    private JoystickState sector(int sector){
+        mState.set(50.0f, 0.0f, 50.0f, 0.0f, StickOrientation.EAST.ordinal(), sector, 0);
+        return mState;
+    }
+
+}
@@ -0,0 +1,143 @@
+package de.hanneseilers.joystickview;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares creating {@link #VIEW_COUNT} {@link JoystickView}s with equal attributes, like
+ * previews in a list, using the shared {@link JoystickStyle} with a private style per view,
+ * as every view had before styles were shared. Private styles are forced by a style setter.
+ * Reports time and allocated bytes per view for construction and layout, and the number of
+ * style instances kept by the views. Times under Robolectric are only comparable with each
+ * other. Allocations are measured with {@code com.sun.management.ThreadMXBean} if available.
+ * Robolectric allocates slightly more for every further view, so the order of both variants
+ * alternates and allocations are averaged, which cancels the drift.
+ * @author H. Eilers
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class JoystickViewInflationBenchmark {
+
+    private static final int VIEW_COUNT = 50;
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int SIZE = 200;
+
+    private JoystickView[] mViews = new JoystickView[0];
+
+    @After
+    public void tearDown(){
+        release();
+    }
+
+    @Test
+    public void sharedStylesAllocateLess() throws Exception {
+        for( int i = 0; i < WARM_UP_ROUNDS; i++ ){
+            measure(true);
+            measure(false);
+        }
+
+        final Result vShared = new Result();
+        final Result vPrivate = new Result();
+        for( int i = 0; i < ROUNDS; i++ ){
+            // order shared, private, private, shared, ...
+            for( int j = 0; j < 2; j++ ){
+                final boolean vShare = (i + j) % 2 == 0;
+                (vShare ? vShared : vPrivate).add( measure(vShare) );
+                assertEquals(vShare ? 1 : VIEW_COUNT, countStyles());
+            }
+        }
+
+        report("shared style", vShared);
+        report("private style", vPrivate);
+        if( vShared.mBytes >= 0 )
+            assertTrue(vShared.mBytes < vPrivate.mBytes);
+    }
+
+    /**
+     * Creates and lays out {@link #VIEW_COUNT} views.
+     * @param shared	{@code false} to give each view a private style.
+     * @return			Elapsed nanoseconds and allocated bytes, -1 if not available.
+     */
+    private long[] measure(boolean shared){
+        release();
+        mViews = new JoystickView[VIEW_COUNT];
+        System.gc();
+
+        final ThreadMXBean vThreads = ManagementFactory.getThreadMXBean();
+        final long vBytesBefore = getAllocatedBytes(vThreads);
+        final long vStart = System.nanoTime();
+        for( int i = 0; i < VIEW_COUNT; i++ ){
+            final JoystickView vView = new JoystickView(RuntimeEnvironment.application, null);
+            if( !shared )
+                vView.setStickColor( vView.getStickColor() );
+            vView.measure(SIZE, SIZE);
+            vView.layout(0, 0, SIZE, SIZE);
+            mViews[i] = vView;
+        }
+        final long vElapsed = System.nanoTime() - vStart;
+        final long vBytesAfter = getAllocatedBytes(vThreads);
+
+        return new long[]{ vElapsed, vBytesBefore >= 0 ? vBytesAfter - vBytesBefore : -1 };
+    }
+
+    /**
+     * @return	Number of distinct styles of the current views.
+     */
+    private int countStyles() throws Exception {
+        final Field vField = JoystickView.class.getDeclaredField("mStyle");
+        vField.setAccessible(true);
+        final Map<Object, Boolean> vStyles = new IdentityHashMap<Object, Boolean>();
+        for( JoystickView vView : mViews )
+            vStyles.put(vField.get(vView), Boolean.TRUE);
+        return vStyles.size();
+    }
+
+    private void release(){
+        for( JoystickView vView : mViews )
+            vView.getPositionDispatcher().release();
+    }
+
+    private static void report(String name, Result result){
+        System.out.println(String.format("%d JoystickViews, %-14s %8.1f us/view %10.0f bytes/view",
+                VIEW_COUNT, name, result.mMinNanos / 1000.0f / VIEW_COUNT,
+                result.mBytes / (float) ROUNDS / VIEW_COUNT));
+    }
+
+    /**
+     * @return	Bytes allocated by the current thread, -1 if not available.
+     */
+    private static long getAllocatedBytes(ThreadMXBean threads){
+        if( !(threads instanceof com.sun.management.ThreadMXBean) )
+            return -1;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Minimum time and sum of allocated bytes of measured rounds.
+     */
+    private static class Result {
+        private long mMinNanos = Long.MAX_VALUE;
+        private long mBytes;
+
+        private void add(long[] measurement){
+            mMinNanos = Math.min(mMinNanos, measurement[0]);
+            mBytes = mBytes >= 0 && measurement[1] >= 0 ? mBytes + measurement[1] : -1;
+        }
+    }
+
+}
@@ -0,0 +1,370 @@
+package de.hanneseilers.joystickview;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowMotionEvent;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Synthetic touch load through {@link JoystickView#onTouchEvent(MotionEvent)} with many
+ * listeners on the default {@link PositionDispatcher}. Checks that the input path does
+ * not start threads and does not allocate per event, e.g. a dispatcher starting a thread
+ * per event or boxing states. Reports events per second and listener delivery latency.
+ * Events are created before measuring, so allocations of
+ * {@link MotionEvent#obtain(long, long, int, float, float, int)} are not counted.
+ * Robolectric calls through {@link View#invalidate()} with a new proxy per call, so the
+ * view uses static layer caching, which invalidates the stick bounds with the unshadowed
+ * {@link View#invalidate(int, int, int, int)}.
+ * Allocations are measured with {@code com.sun.management.ThreadMXBean} if available.
+ * @author H. Eilers
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class JoystickViewLoadTest {
+
+    private static final int LISTENER_COUNT = 16;
+    private static final int EVENT_COUNT = 20000;
+    private static final int WARM_UP_EVENTS = 5000;
+    private static final int MAX_WARM_UP_ROUNDS = 20;
+    private static final int CLEAN_WARM_UP_ROUNDS = 3;
+    private static final int MEASURE_ATTEMPTS = 3;
+    private static final long DELIVERY_TIMEOUT = 5000000000L;
+
+    // pointer storm: down, second pointer down, move, active pointer up, pointer down again,
+    // move, second pointer up, up
+    private static final int[] STORM_ACTIONS = { MotionEvent.ACTION_DOWN, MotionEvent.ACTION_POINTER_DOWN,
+            MotionEvent.ACTION_MOVE, MotionEvent.ACTION_POINTER_UP, MotionEvent.ACTION_POINTER_DOWN,
+            MotionEvent.ACTION_MOVE, MotionEvent.ACTION_POINTER_UP, MotionEvent.ACTION_UP };
+    private static final int[] STORM_POINTER_COUNTS = { 1, 2, 2, 2, 2, 2, 2, 1 };
+    private static final int[] STORM_ACTION_INDICES = { 0, 1, 0, 0, 0, 0, 1, 0 };
+    private static final boolean[] STORM_POINTER_DOWN = { true, false, false, false, true, false, false, false };
+
+    private JoystickView mView;
+    private final Probe[] mProbes = new Probe[LISTENER_COUNT];
+
+    // feed times of measured events by event index, read by probes
+    private final long[] mFeedTimes = new long[EVENT_COUNT + STORM_ACTIONS.length];
+    private volatile long mBaseTime = Long.MAX_VALUE;
+
+    @Before
+    public void setUp(){
+        mView = new JoystickView(RuntimeEnvironment.application, null);
+        mView.setStaticLayerCaching(true);
+        mView.measure(200, 200);
+        mView.layout(0, 0, 200, 200);
+        for( int i = 0; i < LISTENER_COUNT; i++ ){
+            mProbes[i] = new Probe();
+            mView.addOnJoystickStateListener(mProbes[i]);
+        }
+    }
+
+    @After
+    public void tearDown(){
+        mView.getPositionDispatcher().release();
+    }
+
+    @Test(timeout = 60000)
+    public void moves(){
+        run("moves", new int[]{ MotionEvent.ACTION_MOVE });
+    }
+
+    @Test(timeout = 60000)
+    public void taps(){
+        run("taps", new int[]{ MotionEvent.ACTION_UP });
+    }
+
+    @Test(timeout = 60000)
+    public void cancels(){
+        run("cancels", new int[]{ MotionEvent.ACTION_MOVE, MotionEvent.ACTION_MOVE, MotionEvent.ACTION_CANCEL });
+    }
+
+    @Test(timeout = 60000)
+    public void pointerStorm(){
+        run("pointer storm", null);
+    }
+
+    /**
+     * Runs a warm-up and a measured event sequence, checks threads and
+     * allocations and reports throughput and delivery latency.
+     * @param name		Name of the scenario.
+     * @param gesture	Actions following each pointer down or {@code null} for a pointer storm.
+     */
+    private void run(String name, int[] gesture){
+        // warm-up starts the dispatcher worker and compiles the input path
+        MotionEvent[] vWarmUp = createEvents(gesture, SystemClock.uptimeMillis(), WARM_UP_EVENTS);
+        long vTime = warmUp(vWarmUp);
+        recycle(vWarmUp);
+
+        // input path on this thread, delivery on the dispatcher worker
+        final long[] vThreadIds = { Thread.currentThread().getId(), mProbes[0].mThreadId };
+        final ThreadMXBean vThreads = ManagementFactory.getThreadMXBean();
+        final CompilationMXBean vCompiler = ManagementFactory.getCompilationMXBean();
+        final boolean vCompileTime = vCompiler != null && vCompiler.isCompilationTimeMonitoringSupported();
+        final long vReadBytes = getReadAllocatedBytes(vThreads, vThreadIds);
+
+        // replacing compiled code may allocate once, so warm up until several rounds
+        // in a row neither allocate nor finish a compilation
+        int vCleanRounds = 0;
+        for( int i = 0; i < MAX_WARM_UP_ROUNDS && vCleanRounds < CLEAN_WARM_UP_ROUNDS; i++ ){
+            vWarmUp = createEvents(gesture, vTime, WARM_UP_EVENTS);
+            final long vCompileTimeBefore = vCompileTime ? vCompiler.getTotalCompilationTime() : 0;
+            final long vBytesBefore = getAllocatedBytes(vThreads, vThreadIds);
+            vTime = warmUp(vWarmUp);
+            final boolean vClean = getAllocatedBytes(vThreads, vThreadIds) - vBytesBefore - vReadBytes <= 0
+                    && (!vCompileTime || vCompiler.getTotalCompilationTime() == vCompileTimeBefore);
+            vCleanRounds = vClean ? vCleanRounds + 1 : 0;
+            recycle(vWarmUp);
+        }
+
+        // the JVM may still allocate once, e.g. for a late compilation, so a measurement
+        // is repeated if it allocated; an allocation per event fails every attempt
+        Measurement vMeasurement = null;
+        for( int i = 0; i < MEASURE_ATTEMPTS && (vMeasurement == null || vMeasurement.mBytes > 0); i++ ){
+            vMeasurement = measure(gesture, vTime, vThreads, vThreadIds, vReadBytes);
+            vTime = vMeasurement.mNextTime;
+        }
+
+        final float vBytesPerEvent = vMeasurement.mBytes >= 0 ? vMeasurement.mBytes / (float) vMeasurement.mEvents : -1.0f;
+        System.out.println(String.format("%-14s %9.0f events/s fed, %9.0f events/s delivered, %6d deliveries, "
+                        + "latency mean %7.1f us max %8.1f us, %d threads, %.2f bytes/event",
+                name, vMeasurement.mEvents * 1.0e9 / vMeasurement.mFeedNanos,
+                vMeasurement.mEvents * 1.0e9 / vMeasurement.mDeliveryNanos, vMeasurement.mDeliveries,
+                vMeasurement.mDeliveries > 0 ? vMeasurement.mLatencySum / 1000.0 / vMeasurement.mDeliveries : 0.0,
+                vMeasurement.mMaxLatency / 1000.0, vMeasurement.mThreads, vBytesPerEvent));
+
+        assertEquals(0, vMeasurement.mThreads);
+        assertTrue(vMeasurement.mDeliveries >= LISTENER_COUNT);
+        if( vBytesPerEvent >= 0.0f )
+            assertEquals("allocated bytes per event", 0.0f, vBytesPerEvent, 0.0f);
+    }
+
+    /**
+     * Feeds a measured event sequence and waits for its delivery.
+     * @param gesture		Actions following each pointer down or {@code null} for a pointer storm.
+     * @param downTime		Down time of the first event.
+     * @param threads		{@link ThreadMXBean}.
+     * @param threadIds		Ids of measured threads.
+     * @param readBytes		Bytes allocated by reading allocated bytes.
+     * @return				{@link Measurement}.
+     */
+    private Measurement measure(int[] gesture, long downTime, ThreadMXBean threads, long[] threadIds, long readBytes){
+        final MotionEvent[] vEvents = createEvents(gesture, downTime, EVENT_COUNT);
+        for( int i = 0; i < mProbes.length; i++ )
+            mProbes[i].reset();
+        mBaseTime = downTime;
+
+        final long vThreadsBefore = threads.getTotalStartedThreadCount();
+        final long vBytesBefore = getAllocatedBytes(threads, threadIds);
+        final long vStart = System.nanoTime();
+
+        feed(vEvents, true);
+
+        final long vFed = System.nanoTime();
+        final long vLastTime = vEvents[vEvents.length - 1].getEventTime();
+        assertTrue( awaitDelivery(vLastTime) );
+        final long vEnd = System.nanoTime();
+        final long vBytesAfter = getAllocatedBytes(threads, threadIds);
+        final long vThreadsAfter = threads.getTotalStartedThreadCount();
+
+        final Measurement vMeasurement = new Measurement();
+        vMeasurement.mEvents = vEvents.length;
+        vMeasurement.mFeedNanos = vFed - vStart;
+        vMeasurement.mDeliveryNanos = vEnd - vStart;
+        vMeasurement.mThreads = vThreadsAfter - vThreadsBefore;
+        vMeasurement.mBytes = vBytesBefore >= 0 ? vBytesAfter - vBytesBefore - readBytes : -1;
+        vMeasurement.mNextTime = vLastTime + 1;
+        for( int i = 0; i < mProbes.length; i++ ){
+            vMeasurement.mDeliveries += mProbes[i].mCount;
+            vMeasurement.mLatencySum += mProbes[i].mLatencySum;
+            vMeasurement.mMaxLatency = Math.max(vMeasurement.mMaxLatency, mProbes[i].mMaxLatency);
+        }
+        recycle(vEvents);
+        return vMeasurement;
+    }
+
+    /**
+     * Feeds warm-up events and waits for their delivery.
+     * @param events	Warm-up events.
+     * @return			Down time for following events.
+     */
+    private long warmUp(MotionEvent[] events){
+        final long vLastTime = events[events.length - 1].getEventTime();
+        feed(events, false);
+        assertTrue( awaitDelivery(vLastTime) );
+        return vLastTime + 1;
+    }
+
+    private static void recycle(MotionEvent[] events){
+        for( int i = 0; i < events.length; i++ )
+            events[i].recycle();
+    }
+
+    /**
+     * Creates gestures of pointer down and following actions or pointer storms,
+     * with positions on a spiral reaching beyond the outer border.
+     * The last gesture is completed, so the last event always centers the stick.
+     * Event times are {@code downTime} plus the event index.
+     */
+    private static MotionEvent[] createEvents(int[] gesture, long downTime, int count){
+        final int vGestureLength = gesture != null ? gesture.length + 1 : STORM_ACTIONS.length;
+        final int vCount = (count + vGestureLength - 1) / vGestureLength * vGestureLength;
+        final MotionEvent[] vEvents = new MotionEvent[vCount];
+        for( int i = 0; i < vCount; i++ ){
+            final int vStep = i % vGestureLength;
+            // pointer 0 goes down at the center, to grab the stick
+            final boolean vDown = gesture != null ? vStep == 0 : STORM_POINTER_DOWN[vStep];
+            final float vRadius = vDown ? 0.0f : 100.0f * (0.2f + (i % 97) / 80.0f);
+            final float vX = 100.0f + vRadius * (float) Math.cos(i * 0.05);
+            final float vY = 100.0f + vRadius * (float) Math.sin(i * 0.05);
+
+            if( gesture != null ){
+                final int vAction = vStep == 0 ? MotionEvent.ACTION_DOWN : gesture[vStep - 1];
+                vEvents[i] = MotionEvent.obtain(downTime, downTime + i, vAction, vX, vY, 0);
+            } else {
+                vEvents[i] = obtainStormEvent(downTime, downTime + i, vStep, vX, vY);
+            }
+        }
+        return vEvents;
+    }
+
+    /**
+     * Creates an event of the pointer storm. Pointer 0 moves the stick, pointer 1 rests
+     * in a corner. Robolectric does not support
+     * {@link MotionEvent#obtain(long, long, int, int, MotionEvent.PointerProperties[], MotionEvent.PointerCoords[], int, int, float, float, int, int, int, int)},
+     * so the second pointer is set on the {@link ShadowMotionEvent}.
+     */
+    private static MotionEvent obtainStormEvent(long downTime, long time, int step, float x, float y){
+        final int vIndex = STORM_ACTION_INDICES[step];
+        final int vAction = STORM_ACTIONS[step] | (vIndex << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+        final MotionEvent vEvent = MotionEvent.obtain(downTime, time, vAction, x, y, 0);
+        final ShadowMotionEvent vShadow = Shadows.shadowOf(vEvent);
+        vShadow.setPointerIndex(vIndex);
+        if( STORM_POINTER_COUNTS[step] == 2 ){
+            vShadow.setPointer2(10.0f, 10.0f);
+            vShadow.setPointerIds(0, 1);
+        }
+        return vEvent;
+    }
+
+    /**
+     * Feeds events to the view.
+     * @param events	{@link MotionEvent} events.
+     * @param measured	{@code true} to record feed times for latency measurement.
+     */
+    private void feed(MotionEvent[] events, boolean measured){
+        for( int i = 0; i < events.length; i++ ){
+            if( measured )
+                mFeedTimes[i] = System.nanoTime();
+            mView.onTouchEvent(events[i]);
+        }
+    }
+
+    /**
+     * Waits until all listeners received a state.
+     * @param time	Timestamp of the state.
+     * @return		{@code false} on timeout.
+     */
+    private boolean awaitDelivery(long time){
+        final long vDeadline = System.nanoTime() + DELIVERY_TIMEOUT;
+        for( int i = 0; i < mProbes.length; i++ ){
+            while( mProbes[i].mLastTime != time ){
+                if( System.nanoTime() > vDeadline )
+                    return false;
+                LockSupport.parkNanos(100000L);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reading allocated bytes of other threads allocates an array itself.
+     * @return	Bytes allocated by {@link #getAllocatedBytes(ThreadMXBean, long[])}, to subtract from measurements.
+     */
+    private static long getReadAllocatedBytes(ThreadMXBean threads, long[] threadIds){
+        long vMin = Long.MAX_VALUE;
+        for( int i = 0; i < 3; i++ ){
+            final long vBefore = getAllocatedBytes(threads, threadIds);
+            vMin = Math.min(vMin, getAllocatedBytes(threads, threadIds) - vBefore);
+        }
+        return vMin;
+    }
+
+    /**
+     * Only the measured threads are read, since other threads, e.g. finalizers of
+     * Robolectric objects, allocate independently of the input path.
+     * @return	Bytes allocated by the threads, -1 if not available.
+     */
+    private static long getAllocatedBytes(ThreadMXBean threads, long[] threadIds){
+        if( !(threads instanceof com.sun.management.ThreadMXBean) )
+            return -1;
+        final long[] vBytes = ((com.sun.management.ThreadMXBean) threads)
+                .getThreadAllocatedBytes(threadIds);
+        long vSum = 0;
+        for( int i = 0; i < vBytes.length; i++ ){
+            if( vBytes[i] > 0 )
+                vSum += vBytes[i];
+        }
+        return vSum;
+    }
+
+    /**
+     * Result of a measured event sequence.
+     */
+    private static class Measurement {
+        private int mEvents;
+        private long mFeedNanos, mDeliveryNanos;
+        private long mThreads, mBytes;
+        private long mDeliveries, mLatencySum, mMaxLatency;
+        private long mNextTime;
+    }
+
+    /**
+     * Listener recording delivery latencies of measured events and
+     * publishing the timestamp of the last received state and the delivering thread.
+     * Notified serially by the dispatcher, results are published by the volatile last time.
+     */
+    private class Probe implements JoystickView.OnJoystickStateListener {
+        private long mLatencySum, mMaxLatency;
+        private long mCount;
+        private volatile long mLastTime = -1;
+        private volatile long mThreadId;
+
+        @Override
+        public void onJoystickStateChanged(JoystickState state) {
+            final long vIndex = state.getTimestamp() - mBaseTime;
+            if( vIndex >= 0 && vIndex < mFeedTimes.length ){
+                final long vLatency = System.nanoTime() - mFeedTimes[(int) vIndex];
+                mLatencySum += vLatency;
+                mMaxLatency = Math.max(mMaxLatency, vLatency);
+                mCount++;
+            }
+            mThreadId = Thread.currentThread().getId();
+            mLastTime = state.getTimestamp();
+        }
+
+        void reset(){
+            mLatencySum = 0;
+            mMaxLatency = 0;
+            mCount = 0;
+        }
+    }
+
+}
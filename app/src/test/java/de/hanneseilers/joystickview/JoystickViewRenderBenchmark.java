@@ -0,0 +1,164 @@
+package de.hanneseilers.joystickview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares full redraws with static layer caching and partial invalidation
+ * ({@link JoystickView#setStaticLayerCaching(boolean)}) for stick moves.
+ * Reports per frame the invalidated area, which bounds the pixels redrawn by the
+ * renderer, and the draw calls of {@link JoystickView#onDraw(Canvas)}.
+ * Frame times depend on the device renderer and are not measured on the JVM,
+ * Robolectric does not rasterize.
+ * @author H. Eilers
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class JoystickViewRenderBenchmark {
+
+    private static final int SIZE = 400;
+    private static final int MOVE_COUNT = 1000;
+
+    private DirtyAreaView mView;
+    private CountingCanvas mCanvas;
+
+    @Before
+    public void setUp(){
+        mView = new DirtyAreaView();
+        mView.measure(SIZE, SIZE);
+        mView.layout(0, 0, SIZE, SIZE);
+        mCanvas = new CountingCanvas( Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888) );
+    }
+
+    @After
+    public void tearDown(){
+        mView.getPositionDispatcher().release();
+    }
+
+    @Test
+    public void partialInvalidationRedrawsLess(){
+        final Result vFull = report("full redraw", false);
+        final Result vCached = report("static layer cache", true);
+
+        assertEquals(1.0f, vFull.mDirtyFraction, 0.0f);
+        assertTrue(vCached.mDirtyFraction < 0.25f * vFull.mDirtyFraction);
+        assertTrue(vCached.mDrawCalls < vFull.mDrawCalls);
+    }
+
+    /**
+     * Moves the stick and draws a frame after each move.
+     * @return	Measured result.
+     */
+    private Result report(String name, boolean cached){
+        mView.setStaticLayerCaching(cached);
+        final long vDownTime = SystemClock.uptimeMillis();
+        touch(vDownTime, MotionEvent.ACTION_DOWN, SIZE / 2.0f, SIZE / 2.0f);
+        mView.onDraw(mCanvas);
+
+        mView.mDirtyPixels = 0;
+        mCanvas.mDrawCalls = 0;
+        for( int i = 0; i < MOVE_COUNT; i++ ){
+            // circles inside the outer border, like steering input
+            final double vAngle = i * 0.1;
+            final float vRadius = SIZE * (0.1f + (i % 50) / 200.0f);
+            touch(vDownTime + i, MotionEvent.ACTION_MOVE, SIZE / 2.0f + vRadius * (float) Math.cos(vAngle),
+                    SIZE / 2.0f + vRadius * (float) Math.sin(vAngle));
+            mView.onDraw(mCanvas);
+        }
+        final Result vResult = new Result( mView.mDirtyPixels / ((float) MOVE_COUNT * SIZE * SIZE),
+                mCanvas.mDrawCalls / (float) MOVE_COUNT );
+        touch(vDownTime + MOVE_COUNT, MotionEvent.ACTION_UP, SIZE / 2.0f, SIZE / 2.0f);
+
+        System.out.println(String.format("JoystickView %-20s %6.1f %% of view invalidated/frame %5.1f draw calls/frame",
+                name, vResult.mDirtyFraction * 100.0f, vResult.mDrawCalls));
+        return vResult;
+    }
+
+    private void touch(long downTime, int action, float x, float y){
+        final MotionEvent vEvent = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), action, x, y, 0);
+        mView.onTouchEvent(vEvent);
+        vEvent.recycle();
+    }
+
+    private static class Result {
+        private final float mDirtyFraction;
+        private final float mDrawCalls;
+
+        private Result(float dirtyFraction, float drawCalls){
+            mDirtyFraction = dirtyFraction;
+            mDrawCalls = drawCalls;
+        }
+    }
+
+    /**
+     * Counts the draw calls used by {@link JoystickView}.
+     */
+    private static class CountingCanvas extends Canvas {
+        private int mDrawCalls;
+
+        private CountingCanvas(Bitmap bitmap){
+            super(bitmap);
+        }
+
+        @Override
+        public void drawCircle(float cx, float cy, float radius, Paint paint) {
+            mDrawCalls++;
+            super.drawCircle(cx, cy, radius, paint);
+        }
+
+        @Override
+        public void drawLines(float[] pts, Paint paint) {
+            mDrawCalls++;
+            super.drawLines(pts, paint);
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+            mDrawCalls++;
+            super.drawBitmap(bitmap, left, top, paint);
+        }
+    }
+
+    /**
+     * Sums the invalidated area. Overrides instead of a Robolectric shadow,
+     * since a custom shadow needs its own sandbox.
+     */
+    private static class DirtyAreaView extends JoystickView {
+        private long mDirtyPixels;
+
+        private DirtyAreaView(){
+            super(RuntimeEnvironment.application, null);
+        }
+
+        @Override
+        public void invalidate() {
+            mDirtyPixels += (long) getWidth() * getHeight();
+            super.invalidate();
+        }
+
+        @Override
+        public void invalidate(int l, int t, int r, int b) {
+            final int vWidth = Math.min(r, getWidth()) - Math.max(l, 0);
+            final int vHeight = Math.min(b, getHeight()) - Math.max(t, 0);
+            if( vWidth > 0 && vHeight > 0 )
+                mDirtyPixels += (long) vWidth * vHeight;
+            super.invalidate(l, t, r, b);
+        }
+    }
+
+}
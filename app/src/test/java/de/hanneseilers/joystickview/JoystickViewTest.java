@@ -0,0 +1,211 @@
+package de.hanneseilers.joystickview;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowMotionEvent;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link JoystickView} touch handling.
+ * @author H. Eilers
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class JoystickViewTest {
+
+    private JoystickView mView;
+    private final JoystickState mState = new JoystickState();
+    private long mDownTime;
+
+    @Before
+    public void setUp(){
+        mView = new JoystickView(RuntimeEnvironment.application, null);
+        final OutputPipeline vPipeline = new OutputPipeline();
+        vPipeline.setEmaFilter(0.3f);
+        mView.setOutputPipeline(vPipeline);
+        mView.measure(200, 200);
+        mView.layout(0, 0, 200, 200);
+        mDownTime = SystemClock.uptimeMillis();
+    }
+
+    @Test
+    public void releaseEmitsRest(){
+        grabAndMove();
+        touch(MotionEvent.ACTION_UP, 190.0f, 100.0f, 48);
+        assertRest();
+    }
+
+    @Test
+    public void cancelEmitsRest(){
+        grabAndMove();
+        touch(MotionEvent.ACTION_CANCEL, 190.0f, 100.0f, 48);
+        assertRest();
+    }
+
+    @Test
+    public void outerBorderVisibilityDoesNotRequestLayout(){
+        assertFalse(mView.isLayoutRequested());
+        mView.setShowOuterBorder(false);
+        assertFalse(mView.isLayoutRequested());
+
+        // geometry changes still do
+        mView.setOuterBorderWidth(4.0f);
+        assertTrue(mView.isLayoutRequested());
+    }
+
+    @Test
+    public void pointerUpEmitsRest(){
+        grabAndMove();
+
+        // second pointer goes down and the active pointer is lifted. Robolectric does not support
+        // multi pointer MotionEvent#obtain(..), so the second pointer is set on the shadow
+        final MotionEvent vEvent = MotionEvent.obtain(mDownTime, mDownTime + 48,
+                MotionEvent.ACTION_POINTER_UP | (0 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 190.0f, 100.0f, 0);
+        final ShadowMotionEvent vShadow = Shadows.shadowOf(vEvent);
+        vShadow.setPointer2(10.0f, 10.0f);
+        vShadow.setPointerIds(0, 1);
+        vShadow.setPointerIndex(0);
+        mView.onTouchEvent(vEvent);
+        vEvent.recycle();
+
+        assertRest();
+    }
+
+    @Test
+    public void cancelBypassesEmissionFilter(){
+        final OutputPipeline vPipeline = new OutputPipeline();
+        vPipeline.setDeadZone(50.0f);
+        mView.setOutputPipeline(vPipeline);
+        mView.getEmissionFilter().setSkipUnchanged(true);
+        mView.getEmissionFilter().setMinInterval(1000);
+
+        final JoystickState vLast = new JoystickState();
+        final int[] vCount = new int[1];
+        mView.setPositionDispatcher(new PositionDispatcher(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }));
+        mView.addOnJoystickStateListener(new JoystickView.OnJoystickStateListener() {
+            @Override
+            public void onJoystickStateChanged(JoystickState state) {
+                vLast.set(state);
+                vCount[0]++;
+            }
+        });
+
+        // moves inside the dead zone are already reported as 0,0
+        touch(MotionEvent.ACTION_DOWN, 100.0f, 100.0f, 0);
+        touch(MotionEvent.ACTION_MOVE, 110.0f, 100.0f, 16);
+        final int vCountBeforeCancel = vCount[0];
+
+        touch(MotionEvent.ACTION_CANCEL, 110.0f, 100.0f, 32);
+        assertEquals(vCountBeforeCancel + 1, vCount[0]);
+        assertEquals(0.0f, vLast.getX(), 0.0f);
+        assertEquals(0.0f, vLast.getY(), 0.0f);
+    }
+
+    @Test
+    public void resizeKeepsHeldStickPosition(){
+        mView.setOutputPipeline(null);
+        mView.setPositionDispatcher(new PositionDispatcher(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }));
+        final JoystickState vLast = new JoystickState();
+        final int[] vCount = new int[1];
+        mView.addOnJoystickStateListener(new JoystickView.OnJoystickStateListener() {
+            @Override
+            public void onJoystickStateChanged(JoystickState state) {
+                vLast.set(state);
+                vCount[0]++;
+            }
+        });
+
+        grabAndMove();
+        final JoystickState vBefore = new JoystickState();
+        vBefore.set(mState);
+        final int vCountBeforeResize = vCount[0];
+
+        mView.measure(400, 400);
+        mView.layout(0, 0, 400, 400);
+
+        mView.readState(mState);
+        assertEquals(vBefore.getX(), mState.getX(), 0.5f);
+        assertEquals(vBefore.getY(), mState.getY(), 0.5f);
+        assertEquals(vCountBeforeResize + 1, vCount[0]);
+        assertEquals(mState.getX(), vLast.getX(), 0.0f);
+        assertEquals(mState.getY(), vLast.getY(), 0.0f);
+    }
+
+    @Test
+    public void floatingRecordingReplaysSameStates(){
+        mView = new JoystickView(RuntimeEnvironment.application, null);
+        mView.setFloating(true);
+        mView.setTrailingOrigin(true);
+        mView.measure(600, 200);
+        mView.layout(0, 0, 600, 200);
+        final SessionRecording vRecording = SessionRecording.createInMemory(16);
+        mView.setSessionRecording(vRecording);
+
+        // origin is placed off the view center and trails the finger
+        final float[] vRecorded = new float[8];
+        final float[][] vTouches = { {400.0f, 100.0f}, {440.0f, 80.0f}, {560.0f, 60.0f}, {520.0f, 120.0f} };
+        for( int i = 0; i < vTouches.length; i++ ){
+            touch(i == 0 ? MotionEvent.ACTION_DOWN : MotionEvent.ACTION_MOVE, vTouches[i][0], vTouches[i][1], i * 16);
+            mView.readState(mState);
+            vRecorded[2*i] = mState.getX();
+            vRecorded[2*i + 1] = mState.getY();
+        }
+
+        final int[] vIndex = new int[1];
+        new SessionReplayer(vRecording).replayToListener(new JoystickEngine(), new JoystickView.OnJoystickStateListener() {
+            @Override
+            public void onJoystickStateChanged(JoystickState state) {
+                assertEquals(vRecorded[2*vIndex[0]], state.getX(), 0.01f);
+                assertEquals(vRecorded[2*vIndex[0] + 1], state.getY(), 0.01f);
+                vIndex[0]++;
+            }
+        }, SessionReplayer.MAX_SPEED);
+        assertEquals(vTouches.length, vIndex[0]);
+    }
+
+    private void grabAndMove(){
+        touch(MotionEvent.ACTION_DOWN, 100.0f, 100.0f, 0);
+        touch(MotionEvent.ACTION_MOVE, 190.0f, 100.0f, 16);
+        touch(MotionEvent.ACTION_MOVE, 180.0f, 120.0f, 32);
+        mView.readState(mState);
+        assertEquals(true, mState.getMagnitude() > 0.0f);
+    }
+
+    private void touch(int action, float x, float y, long offset){
+        final MotionEvent vEvent = MotionEvent.obtain(mDownTime, mDownTime + offset, action, x, y, 0);
+        mView.onTouchEvent(vEvent);
+        vEvent.recycle();
+    }
+
+    private void assertRest(){
+        mView.readState(mState);
+        assertEquals(0.0f, mState.getX(), 0.0f);
+        assertEquals(0.0f, mState.getY(), 0.0f);
+        assertEquals(0.0f, mState.getMagnitude(), 0.0f);
+    }
+
+}
@@ -0,0 +1,103 @@
+package de.hanneseilers.joystickview;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowMotionEvent;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of {@link MultiJoystickView} touch handling.
+ * @author H. Eilers
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MultiJoystickViewTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private MultiJoystickView mView;
+    private final JoystickState[] mLast = { new JoystickState(), new JoystickState() };
+    private final int[] mCount = new int[2];
+    private long mDownTime;
+
+    @Before
+    public void setUp(){
+        mView = new MultiJoystickView(RuntimeEnvironment.application, null);
+        mView.addStick(0.0f, 0.0f, 0.5f, 1.0f);
+        mView.addStick(0.5f, 0.0f, 1.0f, 1.0f);
+        for( int i = 0; i < 2; i++ ){
+            final int vStick = i;
+            mView.setPositionDispatcher(i, new PositionDispatcher(DIRECT));
+            mView.addOnJoystickStateListener(i, new JoystickView.OnJoystickStateListener() {
+                @Override
+                public void onJoystickStateChanged(JoystickState state) {
+                    mLast[vStick].set(state);
+                    mCount[vStick]++;
+                }
+            });
+        }
+        mView.measure(400, 200);
+        mView.layout(0, 0, 400, 200);
+        mDownTime = SystemClock.uptimeMillis();
+    }
+
+    @Test
+    public void cancelCentersAllSticks(){
+        touch(MotionEvent.ACTION_DOWN, 1, 100.0f, 100.0f, 0.0f, 0.0f, 0);
+        touch(MotionEvent.ACTION_POINTER_DOWN | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 2,
+                100.0f, 100.0f, 300.0f, 100.0f, 8);
+        touch(MotionEvent.ACTION_MOVE, 2, 160.0f, 100.0f, 300.0f, 40.0f, 16);
+
+        final JoystickState vState = new JoystickState();
+        for( int i = 0; i < 2; i++ ){
+            mView.readState(i, vState);
+            assertEquals(true, vState.getMagnitude() > 0.0f);
+        }
+        final int[] vCountBeforeCancel = mCount.clone();
+
+        touch(MotionEvent.ACTION_CANCEL, 2, 160.0f, 100.0f, 300.0f, 40.0f, 24);
+
+        for( int i = 0; i < 2; i++ ){
+            assertEquals(vCountBeforeCancel[i] + 1, mCount[i]);
+            assertEquals(0.0f, mLast[i].getX(), 0.0f);
+            assertEquals(0.0f, mLast[i].getY(), 0.0f);
+            mView.readState(i, vState);
+            assertEquals(0.0f, vState.getMagnitude(), 0.0f);
+        }
+    }
+
+    /**
+     * Robolectric does not support multi pointer {@code MotionEvent#obtain(..)},
+     * so the second pointer is set on the {@link ShadowMotionEvent}.
+     * Pointer ids equal pointer indices.
+     */
+    private void touch(int action, int pointerCount, float x0, float y0, float x1, float y1, long offset){
+        final MotionEvent vEvent = MotionEvent.obtain(mDownTime, mDownTime + offset, action, x0, y0, 0);
+        final ShadowMotionEvent vShadow = Shadows.shadowOf(vEvent);
+        if( pointerCount == 2 ){
+            vShadow.setPointer2(x1, y1);
+            vShadow.setPointerIds(0, 1);
+        }
+        vShadow.setPointerIndex( (action & MotionEvent.ACTION_POINTER_INDEX_MASK) >> MotionEvent.ACTION_POINTER_INDEX_SHIFT );
+        mView.onTouchEvent(vEvent);
+        vEvent.recycle();
+    }
+
+}
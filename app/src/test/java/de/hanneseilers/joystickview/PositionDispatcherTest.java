@@ -0,0 +1,193 @@
+package de.hanneseilers.joystickview;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link PositionDispatcher}.
+ * @author H. Eilers
+ *
+ */
+public class PositionDispatcherTest {
+
+    @Test(timeout = 5000)
+    public void releaseDoesNotDeliverConcurrently() throws InterruptedException {
+        final PositionDispatcher vDispatcher = new PositionDispatcher();
+        final CountDownLatch vFirstEntered = new CountDownLatch(1);
+        final CountDownLatch vUnblockFirst = new CountDownLatch(1);
+        final CountDownLatch vSecondDelivered = new CountDownLatch(1);
+        final AtomicInteger vActive = new AtomicInteger();
+        final AtomicInteger vMaxActive = new AtomicInteger();
+        final AtomicInteger vCalls = new AtomicInteger();
+        final float[] vLastX = new float[1];
+
+        vDispatcher.addStateListener(new JoystickView.OnJoystickStateListener() {
+            @Override
+            public void onJoystickStateChanged(JoystickState state) {
+                final int vNow = vActive.incrementAndGet();
+                if( vNow > vMaxActive.get() )
+                    vMaxActive.set(vNow);
+                final int vCall = vCalls.incrementAndGet();
+                if( vCall == 1 ){
+                    vFirstEntered.countDown();
+                    try {
+                        vUnblockFirst.await();
+                    } catch (InterruptedException e) {
+                        // released worker, keep blocking until unblocked
+                        try {
+                            vUnblockFirst.await();
+                        } catch (InterruptedException e2) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+                vLastX[0] = state.getX();
+                vActive.decrementAndGet();
+                if( vCall == 2 )
+                    vSecondDelivered.countDown();
+            }
+        });
+
+        vDispatcher.post(state(10.0f));
+        assertTrue(vFirstEntered.await(1, TimeUnit.SECONDS));
+
+        // old worker is still inside the listener
+        vDispatcher.release();
+        vDispatcher.post(state(20.0f));
+        Thread.sleep(100);
+        assertEquals(1, vCalls.get());
+
+        vUnblockFirst.countDown();
+        assertTrue(vSecondDelivered.await(1, TimeUnit.SECONDS));
+        Thread.sleep(50);
+
+        assertEquals(2, vCalls.get());
+        assertEquals(1, vMaxActive.get());
+        assertEquals(20.0f, vLastX[0], 0.0f);
+        vDispatcher.release();
+    }
+
+    @Test
+    public void coalescesOnExecutor(){
+        final Runnable[] vTask = new Runnable[1];
+        final PositionDispatcher vDispatcher = new PositionDispatcher(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                vTask[0] = command;
+            }
+        });
+        final AtomicInteger vCalls = new AtomicInteger();
+        final float[] vLastX = new float[1];
+        vDispatcher.addStateListener(new JoystickView.OnJoystickStateListener() {
+            @Override
+            public void onJoystickStateChanged(JoystickState state) {
+                vCalls.incrementAndGet();
+                vLastX[0] = state.getX();
+            }
+        });
+
+        vDispatcher.post(state(10.0f));
+        vDispatcher.post(state(20.0f));
+        vDispatcher.post(state(30.0f));
+        vTask[0].run();
+
+        assertEquals(1, vCalls.get());
+        assertEquals(30.0f, vLastX[0], 0.0f);
+        assertEquals(2, vDispatcher.getCoalescedCount());
+    }
+
+    @Test
+    public void throwingListenerDoesNotStallExecutor(){
+        final AtomicInteger vScheduled = new AtomicInteger();
+        final Runnable[] vTask = new Runnable[1];
+        final PositionDispatcher vDispatcher = new PositionDispatcher(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                vScheduled.incrementAndGet();
+                vTask[0] = command;
+            }
+        });
+        final float[] vLastX = new float[1];
+        vDispatcher.addStateListener(new JoystickView.OnJoystickStateListener() {
+            @Override
+            public void onJoystickStateChanged(JoystickState state) {
+                vLastX[0] = state.getX();
+                if( state.getX() == 10.0f ){
+                    // posted while delivering, before the listener throws
+                    vDispatcher.post(state(20.0f));
+                    throw new IllegalStateException("listener failure");
+                }
+            }
+        });
+
+        vDispatcher.post(state(10.0f));
+        assertEquals(1, vScheduled.get());
+        try {
+            vTask[0].run();
+            fail();
+        } catch (IllegalStateException e) {
+            // passed on to the executor
+        }
+
+        // state posted during the failed delivery is scheduled again
+        assertEquals(2, vScheduled.get());
+        vTask[0].run();
+        assertEquals(20.0f, vLastX[0], 0.0f);
+
+        vDispatcher.post(state(30.0f));
+        assertEquals(3, vScheduled.get());
+        vTask[0].run();
+        assertEquals(30.0f, vLastX[0], 0.0f);
+    }
+
+    @Test(timeout = 5000)
+    public void throwingListenerDoesNotStopWorker() throws InterruptedException {
+        final Thread.UncaughtExceptionHandler vDefaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        final AtomicInteger vUncaught = new AtomicInteger();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                vUncaught.incrementAndGet();
+            }
+        });
+
+        final PositionDispatcher vDispatcher = new PositionDispatcher();
+        final CountDownLatch vSecondDelivered = new CountDownLatch(1);
+        vDispatcher.addStateListener(new JoystickView.OnJoystickStateListener() {
+            @Override
+            public void onJoystickStateChanged(JoystickState state) {
+                if( state.getX() == 10.0f )
+                    throw new IllegalStateException("listener failure");
+                vSecondDelivered.countDown();
+            }
+        });
+
+        try {
+            vDispatcher.post(state(10.0f));
+            while( vUncaught.get() == 0 )
+                Thread.sleep(10);
+
+            vDispatcher.post(state(20.0f));
+            assertTrue(vSecondDelivered.await(1, TimeUnit.SECONDS));
+            assertEquals(1, vUncaught.get());
+        } finally {
+            vDispatcher.release();
+            Thread.setDefaultUncaughtExceptionHandler(vDefaultHandler);
+        }
+    }
+
+    private static JoystickState state(float x){
+        final JoystickState vState = new JoystickState();
+        vState.set(x, 0.0f, x, 0.0f, JoystickEngine.classifyOrientation(x, 0.0f), 0);
+        return vState;
+    }
+
+}
@@ -0,0 +1,151 @@
+package de.hanneseilers.joystickview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link PositionPredictor}, including an offline evaluation
+ * of prediction accuracy on recorded sessions.
+ * @author H. Eilers
+ *
+ */
+public class PositionPredictorTest {
+
+    @Test
+    public void quadraticMotionIsExtrapolatedExactly(){
+        final PositionPredictor vPredictor = new PositionPredictor(8);
+        for( int i = 0; i < 8; i++ ){
+            final long vTime = 1000 + i * 8;
+            vPredictor.addSample(x(i * 8), y(i * 8), vTime);
+        }
+        vPredictor.predict(16.0f);
+
+        assertEquals(x(7 * 8 + 16), vPredictor.getPredictedX(), 0.01f);
+        assertEquals(y(7 * 8 + 16), vPredictor.getPredictedY(), 0.01f);
+    }
+
+    @Test
+    public void largeTimestampsKeepPrecision(){
+        // uptime of about 30 days in milliseconds
+        final long vBase = 30L * 24 * 3600 * 1000;
+        final PositionPredictor vPredictor = new PositionPredictor(8);
+        for( int i = 0; i < 8; i++ )
+            vPredictor.addSample(x(i * 8), y(i * 8), vBase + i * 8);
+        vPredictor.predict(16.0f);
+
+        assertEquals(x(7 * 8 + 16), vPredictor.getPredictedX(), 0.01f);
+        assertEquals(y(7 * 8 + 16), vPredictor.getPredictedY(), 0.01f);
+    }
+
+    @Test
+    public void samplesOutsideWindowAreDropped(){
+        final PositionPredictor vPredictor = new PositionPredictor(8);
+        vPredictor.setSampleWindow(50);
+
+        // stick held still, then a pause and a linear move
+        vPredictor.addSample(0.0f, 0.0f, 0);
+        vPredictor.addSample(0.0f, 0.0f, 8);
+        for( int i = 0; i < 4; i++ )
+            vPredictor.addSample(100.0f + i * 16.0f, 0.0f, 500 + i * 8);
+
+        assertEquals(4, vPredictor.getSampleCount());
+        vPredictor.predict(8.0f);
+        assertEquals(2.0f, vPredictor.getVelocityX(), 0.001f);
+        assertEquals(164.0f, vPredictor.getPredictedX(), 0.01f);
+    }
+
+    @Test
+    public void predictionBeatsBaselineOnSmoothSession(){
+        final SessionRecording vRecording = SessionRecording.createInMemory(256);
+        for( int i = 0; i < 256; i++ ){
+            final double vAngle = i * 0.02;
+            vRecording.record( (float) (100.0 * Math.cos(vAngle)), (float) (100.0 * Math.sin(vAngle)), i * 8L );
+        }
+
+        final Evaluation vEvaluation = evaluate(vRecording, 8, 24.0f);
+        assertTrue(vEvaluation.mSampleCount > 200);
+        assertTrue(vEvaluation.toString(), vEvaluation.mMeanError < vEvaluation.mBaselineMeanError / 10.0f);
+    }
+
+    private static float x(long t){
+        return 10.0f + 0.5f * t + 0.01f * t * t;
+    }
+
+    private static float y(long t){
+        return -5.0f - 0.25f * t + 0.02f * t * t;
+    }
+
+    /**
+     * Evaluates prediction accuracy offline on a recorded session.
+     * For every sample the position after the look-ahead time is predicted and
+     * compared to the recorded position at that time (linearly interpolated).
+     * The baseline error is the error of using the current position without prediction,
+     * so the difference shows the gain of prediction.
+     * @param recording	{@link SessionRecording} to evaluate.
+     * @param capacity	Number of samples used for prediction.
+     * @param lookAhead	Look-ahead time in milliseconds.
+     * @return			{@link Evaluation}.
+     */
+    static Evaluation evaluate(SessionRecording recording, int capacity, float lookAhead){
+        final PositionPredictor vPredictor = new PositionPredictor(capacity);
+        final Evaluation vResult = new Evaluation();
+        final int vSize = recording.size();
+
+        int vFuture = 0;
+        for( int i = 0; i < vSize; i++ ){
+            final long vTime = recording.getTime(i);
+            vPredictor.addSample(recording.getX(i), recording.getY(i), vTime);
+
+            // find recorded samples around target time
+            final float vTarget = vTime + lookAhead;
+            while( vFuture < vSize - 1 && recording.getTime(vFuture + 1) < vTarget )
+                vFuture++;
+            if( vFuture >= vSize - 1 || recording.getTime(vFuture) > vTarget )
+                continue;
+
+            final long vT0 = recording.getTime(vFuture);
+            final long vT1 = recording.getTime(vFuture + 1);
+            final float vFraction = vT1 > vT0 ? (vTarget - vT0) / (vT1 - vT0) : 0.0f;
+            final float vActualX = recording.getX(vFuture) + (recording.getX(vFuture + 1) - recording.getX(vFuture)) * vFraction;
+            final float vActualY = recording.getY(vFuture) + (recording.getY(vFuture + 1) - recording.getY(vFuture)) * vFraction;
+
+            vPredictor.predict(lookAhead);
+            final float vError = distance(vPredictor.getPredictedX() - vActualX, vPredictor.getPredictedY() - vActualY);
+            final float vBaselineError = distance(recording.getX(i) - vActualX, recording.getY(i) - vActualY);
+
+            vResult.mSampleCount++;
+            vResult.mMeanError += vError;
+            vResult.mMaxError = Math.max(vResult.mMaxError, vError);
+            vResult.mBaselineMeanError += vBaselineError;
+        }
+
+        if( vResult.mSampleCount > 0 ){
+            vResult.mMeanError /= vResult.mSampleCount;
+            vResult.mBaselineMeanError /= vResult.mSampleCount;
+        }
+        return vResult;
+    }
+
+    private static float distance(float dx, float dy){
+        return (float) Math.sqrt( dx*dx + dy*dy );
+    }
+
+    /**
+     * Result of {@link #evaluate(SessionRecording, int, float)}.
+     * Errors are in the units of the recorded positions.
+     */
+    static class Evaluation {
+        int mSampleCount;
+        float mMeanError, mMaxError;
+        float mBaselineMeanError;
+
+        @Override
+        public String toString() {
+            return "Evaluation[samples=" + mSampleCount + ", meanError=" + mMeanError
+                    + ", maxError=" + mMaxError + ", baselineMeanError=" + mBaselineMeanError + "]";
+        }
+    }
+
+}
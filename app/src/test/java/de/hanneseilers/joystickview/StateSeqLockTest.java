@@ -0,0 +1,123 @@
+package de.hanneseilers.joystickview;
+
+import de.hanneseilers.joystickview.JoystickView.StickOrientation;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link StateSeqLock} and {@link JoystickState}.
+ * @author H. Eilers
+ *
+ */
+public class StateSeqLockTest {
+
+    private static final int WRITES = 500000;
+    private static final int READERS = 3;
+
+    @Test
+    public void stateCopiesAllFields(){
+        final JoystickState vState = new JoystickState();
+        vState.set(12.5f, -40.0f, 42.0f, 287.0f, StickOrientation.SOUTH.ordinal(), 6, 1234L);
+
+        final JoystickState vCopy = new JoystickState();
+        vCopy.set(vState);
+        assertEquals(12.5f, vCopy.getX(), 0.0f);
+        assertEquals(-40.0f, vCopy.getY(), 0.0f);
+        assertEquals(42.0f, vCopy.getMagnitude(), 0.0f);
+        assertEquals(287.0f, vCopy.getAngle(), 0.0f);
+        assertEquals(StickOrientation.SOUTH, vCopy.getOrientation());
+        assertEquals(6, vCopy.getSector());
+        assertEquals(1234L, vCopy.getTimestamp());
+    }
+
+    @Test
+    public void readReturnsLatestWrite(){
+        final StateSeqLock vLock = new StateSeqLock();
+        final JoystickState vState = new JoystickState();
+        final JoystickState vRead = new JoystickState();
+
+        assertEquals(0, vLock.read(vRead));
+        fill(vState, 7);
+        vLock.write(vState);
+        fill(vState, 8);
+        vLock.write(vState);
+
+        assertEquals(2, vLock.read(vRead));
+        assertConsistent(vRead);
+        assertEquals(8L, vRead.getTimestamp());
+    }
+
+    @Test
+    public void concurrentReadsAreConsistent() throws InterruptedException {
+        final StateSeqLock vLock = new StateSeqLock();
+        final AtomicReference<Throwable> vFailure = new AtomicReference<Throwable>();
+        final Thread[] vReaders = new Thread[READERS];
+        final int[] vReads = new int[READERS];
+
+        for( int r = 0; r < READERS; r++ ){
+            final int vReader = r;
+            vReaders[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final JoystickState vRead = new JoystickState();
+                    int vLastSequence = 0;
+                    try{
+                        while( vLastSequence < WRITES ){
+                            final int vSequence = vLock.read(vRead);
+                            assertTrue("sequence went backwards", vSequence >= vLastSequence);
+                            if( vSequence > 0 ){
+                                assertConsistent(vRead);
+                                assertEquals(vSequence, vRead.getTimestamp());
+                            }
+                            vLastSequence = vSequence;
+                            vReads[vReader]++;
+                        }
+                    } catch (Throwable e) {
+                        vFailure.compareAndSet(null, e);
+                    }
+                }
+            });
+            vReaders[r].start();
+        }
+
+        // single writer
+        final JoystickState vState = new JoystickState();
+        for( int i = 1; i <= WRITES; i++ ){
+            fill(vState, i);
+            vLock.write(vState);
+        }
+
+        for( int r = 0; r < READERS; r++ )
+            vReaders[r].join(10000);
+        assertNull(String.valueOf(vFailure.get()), vFailure.get());
+        for( int r = 0; r < READERS; r++ )
+            assertTrue(vReads[r] > 0);
+    }
+
+    /**
+     * Fills all fields of a state from one value, so torn reads can be detected.
+     */
+    private static void fill(JoystickState state, int value){
+        final float vValue = value % 100000;
+        state.set(vValue, -vValue, vValue * 0.5f, value % 360,
+                value % StickOrientation.values().length, value % 8, value);
+    }
+
+    private static void assertConsistent(JoystickState state){
+        final long vValue = state.getTimestamp();
+        final float vExpected = vValue % 100000;
+        assertEquals(vExpected, state.getX(), 0.0f);
+        assertEquals(-vExpected, state.getY(), 0.0f);
+        assertEquals(vExpected * 0.5f, state.getMagnitude(), 0.0f);
+        assertEquals(vValue % 360, state.getAngle(), 0.0f);
+        assertEquals(vValue % StickOrientation.values().length, state.getOrientationOrdinal());
+        assertEquals(vValue % 8, state.getSector());
+    }
+
+}